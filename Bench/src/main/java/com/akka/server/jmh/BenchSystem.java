@@ -0,0 +1,19 @@
+package com.akka.server.jmh;
+
+import akka.actor.ActorSystem;
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * in-JVM actor system for the benchmarks, with the server configuration from bench.conf
+ */
+class BenchSystem {
+    static ActorSystem create(String name){
+        return ActorSystem.create(name, ConfigFactory.load("bench"));
+    }
+
+    static void terminate(ActorSystem system) throws Exception {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,110 @@
+package com.akka.server.jmh;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import com.akka.protocols.ClientServerProtocol.*;
+import com.akka.server.Server;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * connect and disconnect of users against the server actors of one node (Server.startNode).
+ * each session do the full client procedure: ConnectMessage to the registry, drain the active users
+ * of ConnectedSuccessfullyMessage, DisconnectMessage, "yes", DisconnectFinalStage and DisconnectFinished.
+ * 'cycle' is one session at a time, 'concurrentCycles' is 'sessions' sessions at once.
+ * the Connector shards create their 'tmpfile', 'journal' and 'mailbox' directories in the working directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectorBenchmark {
+    static private final int SESSIONS = 100;
+
+    /**
+     * client user stub, run one connect/disconnect cycle for each Cycle message
+     */
+    static public class Session extends AbstractActor {
+        static public class Cycle {
+            public final CompletableFuture<Void> done;
+            public Cycle(CompletableFuture<Void> done){this.done = done;}
+        }
+
+        private final String name;
+        private final ActorRef registry;
+        private final Materializer mat;
+        private CompletableFuture<Void> done;
+        private ActorRef serverRef;
+
+        public Session(String name, ActorRef registry){
+            this.name = name;
+            this.registry = registry;
+            this.mat = ActorMaterializer.create(getContext());
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Cycle.class, m -> {
+                        done = m.done;
+                        registry.tell(new ConnectMessage(name, getSelf(), getSelf()), getSelf());
+                    })
+                    .match(ConnectedSuccessfullyMessage.class, m -> {
+                        m.sorceSupp.getSource().runWith(Sink.ignore(), mat);
+                        serverRef = m.serverRef;
+                        serverRef.tell(new DisconnectMessage(name), getSelf());
+                    })
+                    .match(ConnectedFailedMessage.class, m -> done.completeExceptionally(new IllegalStateException(name + " connect failed")))
+                    .matchEquals("yes", m -> serverRef.tell(new DisconnectFinalStage(name), getSelf()))
+                    .match(DisconnectFinished.class, m -> done.complete(null))
+                    .matchAny(m -> {}) //presence deltas
+                    .build();
+        }
+    }
+
+    private ActorSystem system;
+    private ActorRef[] sessions;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        system = BenchSystem.create("bench");
+        ActorRef registry = Server.startNode(system);
+        sessions = new ActorRef[SESSIONS];
+        for(int i = 0; i < SESSIONS; i++) {
+            String name = String.format("user%d", i);
+            sessions[i] = system.actorOf(Props.create(Session.class, () -> new Session(name, registry)), name);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchSystem.terminate(system);
+    }
+
+    @Benchmark
+    public void cycle() throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        sessions[0].tell(new Session.Cycle(done), ActorRef.noSender());
+        done.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSIONS)
+    public void concurrentCycles() throws Exception {
+        CompletableFuture<?>[] done = new CompletableFuture<?>[SESSIONS];
+        for(int i = 0; i < SESSIONS; i++) {
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            done[i] = f;
+            sessions[i].tell(new Session.Cycle(f), ActorRef.noSender());
+        }
+        CompletableFuture.allOf(done).get(30, TimeUnit.SECONDS);
+    }
+}
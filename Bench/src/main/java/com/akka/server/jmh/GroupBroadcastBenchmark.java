@@ -0,0 +1,102 @@
+package com.akka.server.jmh;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.serialization.Serialization;
+import akka.stream.ActorMaterializer;
+import com.akka.protocols.ClientServerGroupsProtocol.GroupAckMessage;
+import com.akka.protocols.ClientServerGroupsProtocol.GroupMarkMessage;
+import com.akka.protocols.ClientServerGroupsProtocol.TextGroupMessage;
+import com.akka.server.GroupRouter;
+import com.akka.server.journal.GroupEvent;
+import com.akka.server.journal.GroupJournal;
+import com.akka.server.util;
+import org.openjdk.jmh.annotations.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * text broadcast of GroupRouter to group of 'members' members, one op is one TextGroupMessage
+ * until all the members got it (including the journal write of the text).
+ * the group is restored from journal that written in the setup, like passivated group,
+ * so big groups don't need 'members' add messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupBroadcastBenchmark {
+    static private final String GROUP = "group";
+
+    /**
+     * group member that count down the latch of the current op and ack the group marks like the client
+     */
+    static public class Member extends AbstractActor {
+        private final AtomicReference<CountDownLatch> received;
+
+        public Member(AtomicReference<CountDownLatch> received){
+            this.received = received;
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(TextGroupMessage.class, m -> received.get().countDown())
+                    .match(GroupMarkMessage.class, m -> getSender().tell(new GroupAckMessage(m.mark), getSelf()))
+                    .build();
+        }
+    }
+
+    @Param({"10", "1000", "10000"})
+    public int members;
+
+    private ActorSystem system;
+    private Path tmpFileRoot;
+    private Path journalRoot;
+    private ActorRef group;
+    private final AtomicReference<CountDownLatch> received = new AtomicReference<>(new CountDownLatch(0));
+    private final TextGroupMessage text = new TextGroupMessage("user0", "see you at 8, don't be late");
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        system = BenchSystem.create("bench");
+        tmpFileRoot = Files.createTempDirectory("bench-tmpfile");
+        journalRoot = Files.createTempDirectory("bench-journal");
+        long segmentBytes = system.settings().config().getBytes("whatsapp.groups.journal.segment-size");
+        int indexInterval = system.settings().config().getInt("whatsapp.groups.journal.index-interval");
+
+        try(GroupJournal journal = new GroupJournal(journalRoot.resolve(GROUP), segmentBytes, indexInterval)) {
+            for(int i = 0; i < members; i++) {
+                ActorRef mem = system.actorOf(Props.create(Member.class, () -> new Member(received)), String.format("member%d", i));
+                if(i == 0)
+                    journal.append(GroupEvent.CREATE, "", Serialization.serializedActorPath(mem));
+                journal.append(GroupEvent.ADD, String.format("user%d", i), Serialization.serializedActorPath(mem));
+            }
+        }
+        group = system.actorOf(GroupRouter.restoreProps(tmpFileRoot.toString(), journalRoot.toString(),
+                ActorMaterializer.create(system)), GROUP);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchSystem.terminate(system);
+        util.deleteFileIfExsits(tmpFileRoot.toString());
+        util.deleteFileIfExsits(journalRoot.toString());
+    }
+
+    @Benchmark
+    public void broadcast() throws Exception {
+        CountDownLatch latch = new CountDownLatch(members);
+        received.set(latch);
+        group.tell(text, ActorRef.noSender());
+        if(!latch.await(30, TimeUnit.SECONDS))
+            throw new IllegalStateException(String.format("%d members didn't get the text", latch.getCount()));
+    }
+}
@@ -0,0 +1,88 @@
+package com.akka.server.jmh;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.akka.server.AbstractLogActor;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the log calls of AbstractLogActor with DEBUG disabled (the system log level is INFO),
+ * they should not allocate, run with '-prof gc' and check gc.alloc.rate.norm (0 B/op).
+ * 'formatPerCall' is the old named template (String.format on every call) for comparison.
+ * the log calls are made from the benchmark thread on the actor instance, like log from stream callback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+    /**
+     * actor that expose its log calls to the benchmark
+     */
+    static public class LogActor extends AbstractLogActor {
+        public LogActor(CompletableFuture<LogActor> self){
+            self.complete(this);
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().build();
+        }
+
+        public void debug(String template, Object arg1){
+            logDebug(template, arg1);
+        }
+
+        public void debug(String template, Object arg1, Object arg2){
+            logDebug(template, arg1, arg2);
+        }
+
+        public String name(){
+            return getSelf().path().name();
+        }
+    }
+
+    private ActorSystem system;
+    private LogActor actor;
+    private ActorRef dst;
+    private final String userName = "user1";
+    private final Object message = new Object();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        system = ActorSystem.create("bench", ConfigFactory.parseString("akka.loglevel = INFO").withFallback(ConfigFactory.load("bench")));
+        CompletableFuture<LogActor> self = new CompletableFuture<>();
+        system.actorOf(Props.create(LogActor.class, () -> new LogActor(self)), "logActor");
+        actor = self.get(10, TimeUnit.SECONDS);
+        dst = system.deadLetters();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchSystem.terminate(system);
+    }
+
+    @Benchmark
+    public void debugOneArg() {
+        actor.debug("user {} disconnecting", userName);
+    }
+
+    /**
+     * the log line of logAndTell
+     */
+    @Benchmark
+    public void debugSendLine() {
+        actor.debug("send {} to {}", message.getClass().getName(), dst.path().name());
+    }
+
+    @Benchmark
+    public String formatPerCall() {
+        return String.format("[%s][%s] %s", system.name(), actor.name(), "user {} disconnecting");
+    }
+}
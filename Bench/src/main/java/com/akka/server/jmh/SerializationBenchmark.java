@@ -0,0 +1,99 @@
+package com.akka.server.jmh;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Props;
+import akka.serialization.Serializer;
+import com.akka.protocols.ClientServerGroupsProtocol.TextGroupMessage;
+import com.akka.protocols.ClientServerProtocol.*;
+import com.akka.protocols.ProtocolSerializer;
+import com.akka.protocols.UserToUserProtocol.TextMessage;
+import com.romix.akka.serialization.kryo.KryoSerializer;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * serialization of the protocol messages with the protocol serializer and with kryo (the server to server serializer),
+ * serialize and deserialize are measured apart.
+ * see also com.akka.server.bench.SerializerBench for the sizes and the allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    static public class Nop extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().build();
+        }
+    }
+
+    @Param({"text", "groupText", "connect", "presence100"})
+    public String message;
+
+    private ActorSystem system;
+    private ProtocolSerializer protocol;
+    private Serializer kryo;
+    private Object m;
+    private String manifest;
+    private byte[] protocolBytes;
+    private byte[] kryoBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        system = BenchSystem.create("bench");
+        protocol = new ProtocolSerializer((ExtendedActorSystem) system);
+        kryo = new KryoSerializer((ExtendedActorSystem) system);
+        ActorRef mainRef = system.actorOf(Props.create(Nop.class), "userActor");
+        ActorRef receiveRef = system.actorOf(Props.create(Nop.class), "messageReseiver");
+        switch (message) {
+            case "text":
+                m = new TextMessage("user1", "see you at 8, don't be late");
+                break;
+            case "groupText":
+                m = new TextGroupMessage("user1", "see you at 8, don't be late");
+                break;
+            case "connect":
+                m = new ConnectMessage("user1", mainRef, receiveRef);
+                break;
+            default:
+                AddUserMessage[] added = new AddUserMessage[100];
+                for(int i = 0; i < added.length; i++)
+                    added[i] = new AddUserMessage("user" + i, receiveRef);
+                m = new PresenceDeltaMessage(added, new String[]{"user100", "user101"}, 12345);
+        }
+        manifest = protocol.manifest(m);
+        protocolBytes = protocol.toBinary(m);
+        kryoBytes = kryo.toBinary(m);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchSystem.terminate(system);
+    }
+
+    @Benchmark
+    public byte[] protocolSerialize() {
+        return protocol.toBinary(m);
+    }
+
+    @Benchmark
+    public Object protocolDeserialize() {
+        return protocol.fromBinary(protocolBytes, manifest);
+    }
+
+    @Benchmark
+    public byte[] kryoSerialize() {
+        return kryo.toBinary(m);
+    }
+
+    @Benchmark
+    public Object kryoDeserialize() {
+        return kryo.fromBinary(kryoBytes, m.getClass());
+    }
+}
@@ -0,0 +1,53 @@
+package com.akka.server.jmh;
+
+import com.akka.server.util;
+import org.openjdk.jmh.annotations.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * util.findUnusedName in directory with 'copies' files of the same name already received,
+ * and util.GetCurrTime
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+    static private final String FILE_NAME = "video.mp4";
+
+    /**
+     * temp directory with the file and 'copies' copies of it
+     */
+    @State(Scope.Benchmark)
+    static public class Dir {
+        @Param({"0", "10", "100"})
+        public int copies;
+
+        private Path dir;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            dir = Files.createTempDirectory("bench-files");
+            for(int i = 0; i < copies; i++)
+                Files.createFile(util.findUnusedName(dir.toString(), FILE_NAME));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            util.deleteFileIfExsits(dir.toString());
+        }
+    }
+
+    @Benchmark
+    public Path findUnusedName(Dir d) {
+        return util.findUnusedName(d.dir.toString(), FILE_NAME);
+    }
+
+    @Benchmark
+    public String getCurrTime() {
+        return util.GetCurrTime();
+    }
+}
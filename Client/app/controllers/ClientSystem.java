@@ -0,0 +1,66 @@
+package controllers;
+
+import akka.actor.ActorPath;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Environment;
+import play.inject.ApplicationLifecycle;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the one actor system of all the users (browser sessions) of this play server.
+ * each session is actor subtree under /user/session-<n>, so the remote identity of session
+ * is its path in the shared system address and not a system of its own.
+ * the session subtree is stopped when the websocket of the session is closed, see InputActor.
+ * the system is created with the application class loader (creating it in the websocket
+ * request thread cause class load problems) and terminated when the application stop.
+ */
+@Singleton
+public class ClientSystem {
+    private final ActorSystem system;
+    private final AtomicLong sessionCounter; //for unique session name
+
+    @Inject
+    public ClientSystem(Environment env, ApplicationLifecycle lifecycle){
+        this.system = ActorSystem.create("client", ConfigFactory.load(env.classLoader()), env.classLoader());
+        this.sessionCounter = new AtomicLong(0);
+        lifecycle.addStopHook(() -> {
+            system.terminate();
+            return system.getWhenTerminated().thenApply(t -> null);
+        });
+    }
+
+    /**
+     * create the actors of new session
+     * @param serverPath: base path of the server actors
+     * @return the session InputActor, it wait for the websocket printer ActorRef
+     */
+    public ActorRef newSession(ActorPath serverPath){
+        return system.actorOf(InputActor.props(serverPath),String.format("session-%d",sessionCounter.getAndIncrement()));
+    }
+
+    /**
+     * @return base path of the server actors, by 'whatsapp.server' and the transport in use (classic or artery)
+     */
+    public ActorPath serverPath(){
+        return serverPath(system.settings().config());
+    }
+
+    /**
+     * @param conf: the client system configuration
+     * @return base path of the server actors by the configuration
+     */
+    static public ActorPath serverPath(Config conf){
+        String protocol = conf.getBoolean("akka.remote.artery.enabled") ? "akka" : "akka.tcp";
+        return ActorPath.fromString(String.format("%s://systemServer@%s:%d/user/",protocol,
+                conf.getString("whatsapp.server.hostname"),conf.getInt("whatsapp.server.port")));
+    }
+
+    public ActorSystem system(){
+        return system;
+    }
+}
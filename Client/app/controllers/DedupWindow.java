@@ -0,0 +1,85 @@
+package controllers;
+
+import java.util.Arrays;
+
+/**
+ * the reliable text ids that arrived from one sender, to ignore the texts that sent again.
+ * the last SIZE ids (up to the highest id) are kept in ring bitmap, id older than that is duplicate,
+ * the sender never has text older than SIZE ids that not acked (see UserMessageSender max-pending).
+ * new sender epoch (the sender connected again) start new window, the window of the previous epoch is kept
+ * until the next epoch so its texts that still sent again are checked too.
+ * id of epoch older than the previous one is rejected, its texts expired long ago (see max-attempts).
+ */
+class DedupWindow {
+    static final int SIZE = 1024;
+
+    /**
+     * the ids of one epoch
+     */
+    static private class Window {
+        private final long[] bits;
+        private final long epoch;
+        private long top; //the highest id that arrived
+
+        Window(long epoch){
+            this.bits = new long[SIZE / 64];
+            this.epoch = epoch;
+            this.top = 0;
+        }
+
+        boolean accept(long id){
+            if(id > top) {
+                if(id - top >= SIZE)
+                    Arrays.fill(bits, 0);
+                else
+                    for(long i = top + 1; i < id; i++)
+                        clear(i);
+                top = id;
+                set(id);
+                return true;
+            }
+            if(id <= top - SIZE || isSet(id))
+                return false;
+            set(id);
+            return true;
+        }
+
+        private boolean isSet(long id){
+            int i = (int) (id % SIZE);
+            return (bits[i >> 6] & (1L << i)) != 0;
+        }
+
+        private void set(long id){
+            int i = (int) (id % SIZE);
+            bits[i >> 6] |= 1L << i;
+        }
+
+        private void clear(long id){
+            int i = (int) (id % SIZE);
+            bits[i >> 6] &= ~(1L << i);
+        }
+    }
+
+    private Window current;
+    private Window previous; //the epoch before current, null if there is none
+
+    DedupWindow(){
+        this.current = new Window(0);
+        this.previous = null;
+    }
+
+    /**
+     * @return true if the id arrived first time
+     */
+    boolean accept(long epoch, long id){
+        if(epoch > current.epoch) {
+            previous = current;
+            current = new Window(epoch);
+        }
+        if(epoch == current.epoch)
+            return current.accept(id);
+        if(previous != null && epoch == previous.epoch)
+            return previous.accept(id);
+        return false;
+    }
+}
@@ -0,0 +1,159 @@
+package controllers;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
+import akka.actor.Status;
+import akka.pattern.Patterns;
+import akka.stream.Materializer;
+import akka.stream.SourceRef;
+import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.StreamRefs;
+import akka.util.ByteString;
+import com.typesafe.config.Config;
+import controllers.logging.AbstractLogActor;
+import com.akka.protocols.UserToUserProtocol.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * this actor class send one file to other user in chunks that the receiver verify and acknowledge.
+ * the receiver ask for the chunks from the last chunk he verified, so broken transfer
+ * is resumed and not sent again from the start, see FileTransferReceiver.
+ * the actor stop when all the chunks acked or when the receiver didn't ask for data for 'transfer-timeout'
+ */
+public class FileTransfer extends AbstractLogActor {
+    static public Props props(String myName, Path path, ActorRef target, ActorRef printer, Materializer mat) {
+        return Props.create(FileTransfer.class, () -> new FileTransfer(myName,path,target,printer,mat));
+    }
+
+    /**
+     * the file checksums are ready
+     */
+    static private class Offer {
+        public final long fileSize;
+        public final int[] checksums;
+        public Offer(long fileSize, int[] checksums){
+            this.fileSize = fileSize;
+            this.checksums = checksums;
+        }
+    }
+
+    private final String myName;
+    private final String transferId;
+    private final Path path;
+    private final ActorRef target;
+    private final ActorRef printer;
+    private final Materializer mat;
+    private final int chunkSize;
+    private int chunks;
+
+    public FileTransfer(String myName, Path path, ActorRef target, ActorRef printer, Materializer mat){
+        super("fileTransfer");
+        Config conf = getContext().getSystem().settings().config().getConfig("whatsapp.files");
+        this.myName = myName;
+        this.transferId = UUID.randomUUID().toString();
+        this.path = path;
+        this.target = target;
+        this.printer = printer;
+        this.mat = mat;
+        this.chunkSize = conf.getBytes("chunk-size").intValue();
+        getContext().setReceiveTimeout(conf.getDuration("transfer-timeout"));
+    }
+
+    /**
+     * the checksums are calculated on the blocking io dispatcher and the offer is sent when they are ready
+     */
+    @Override
+    public void preStart() {
+        Executor blocking = getContext().getSystem().dispatchers().lookup("akka.stream.default-blocking-io-dispatcher");
+        CompletionStage<Offer> offer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new Offer(path.toFile().length(), chunkChecksums(path, chunkSize));
+            }catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }, blocking);
+        Patterns.pipe(offer, getContext().dispatcher()).to(getSelf());
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Offer.class, this::offerHandler)
+                .match(Status.Failure.class, m -> {
+                    logAndTell(printer,String.format("can't read %s!",path),null);
+                    getContext().stop(getSelf());
+                })
+                .match(FileChunkRequest.class, this::chunkRequestHandler)
+                .match(FileChunkAck.class, this::ackHandler)
+                .match(ReceiveTimeout.class, m -> {
+                    logAndTell(printer,String.format("sending %s timed out!",path.getFileName()),null);
+                    getContext().stop(getSelf());
+                })
+                .build();
+    }
+
+    private void offerHandler(Offer m){
+        chunks = m.checksums.length;
+        logAndTell(target,new ResumableFileMessage(myName,transferId,path.getFileName().toString(),m.fileSize,chunkSize,m.checksums),getSelf());
+    }
+
+    /**
+     * send sourceRef of the file from the requested chunk to the end
+     * @param m: FileChunkRequest
+     */
+    private void chunkRequestHandler(FileChunkRequest m){
+        logDebug("send {} from chunk {}",transferId,m.fromChunk);
+        CompletionStage<SourceRef<ByteString>> chunksRef = FileIO.fromPath(path,chunkSize,(long) m.fromChunk * chunkSize)
+                .runWith(StreamRefs.sourceRef(),mat);
+        Patterns.pipe(chunksRef.thenApply(s -> new FileChunksMessage(transferId,m.fromChunk,s)),getContext().dispatcher())
+                .to(getSender(),getSelf());
+    }
+
+    private void ackHandler(FileChunkAck m){
+        if(m.acked >= chunks) {
+            logDebug("{} sent",transferId);
+            getContext().stop(getSelf());
+        }
+    }
+
+    /**
+     * crc32 of each chunk of the file
+     * @param path: file path
+     * @param chunkSize: chunk size, the last chunk can be smaller
+     * @return the checksums of the chunks by order
+     */
+    static public int[] chunkChecksums(Path path, int chunkSize) throws IOException {
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            int[] checksums = new int[(int) ((ch.size() + chunkSize - 1) / chunkSize)];
+            ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+            CRC32 crc = new CRC32();
+            for(int i = 0; i < checksums.length; i++) {
+                buf.clear();
+                while(buf.hasRemaining() && ch.read(buf) > 0);
+                buf.flip();
+                crc.reset();
+                crc.update(buf);
+                checksums[i] = (int) crc.getValue();
+            }
+            return checksums;
+        }
+    }
+
+    static public int checksum(ByteString chunk){
+        CRC32 crc = new CRC32();
+        for(ByteBuffer buf : chunk.getByteBuffers())
+            crc.update(buf);
+        return (int) crc.getValue();
+    }
+}
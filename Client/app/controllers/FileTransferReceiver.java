@@ -0,0 +1,251 @@
+package controllers;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.stream.KillSwitches;
+import akka.stream.Materializer;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.util.ByteString;
+import com.typesafe.config.Config;
+import controllers.logging.AbstractLogActorWithTimers;
+import com.akka.protocols.UserToUserProtocol.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * this actor class receive one resumable file from other user.
+ * the chunks are verified with the checksums of the offer and written to '<transfer id>.part',
+ * every verified chunk is acked to the sender.
+ * if the stream failed, stalled or a chunk is corrupted the transfer is resumed from the
+ * last verified chunk, after 'max-retries' failures in a row the transfer is given up and the part deleted.
+ * when all the chunks verified the part is renamed to the file name and the parent get Done.
+ */
+public class FileTransferReceiver extends AbstractLogActorWithTimers {
+    static public Props props(ResumableFileMessage offer, ActorRef transfer, String filesDir, Materializer mat) {
+        return Props.create(FileTransferReceiver.class, () -> new FileTransferReceiver(offer,transfer,filesDir,mat));
+    }
+
+    /**
+     * message to the parent when the transfer is over, msg should be printed
+     */
+    static public class Done {
+        public final String senderName;
+        public final String msg;
+        public Done(String senderName, String msg){
+            this.senderName = senderName;
+            this.msg = msg;
+        }
+    }
+
+    //stream messages, gen is the number of the stream so messages of old streams are ignored
+    static private class StreamInit {
+        public final int gen;
+        public StreamInit(int gen){this.gen = gen;}
+    }
+    static private class Data {
+        public final int gen;
+        public final ByteString bytes;
+        public Data(int gen, ByteString bytes){
+            this.gen = gen;
+            this.bytes = bytes;
+        }
+    }
+    static private class StreamDone {
+        public final int gen;
+        public StreamDone(int gen){this.gen = gen;}
+    }
+    static private class StreamFailed {
+        public final int gen;
+        public final Throwable cause;
+        public StreamFailed(int gen, Throwable cause){
+            this.gen = gen;
+            this.cause = cause;
+        }
+    }
+    static private class Ack{}
+    static private final Ack ACK = new Ack(); //the sink match the ack by equality
+    static private class Stall{}
+    static private class Resume{}
+
+    private final ResumableFileMessage offer;
+    private final ActorRef transfer;
+    private final String filesDir;
+    private final Materializer mat;
+    private final Path part;
+    private final FileChannel ch;
+    private final int maxRetries;
+    private final Duration stallTimeout;
+    private ByteString pending; //bytes of the current chunk
+    private UniqueKillSwitch killSwitch;
+    private int acked;
+    private int gen;
+    private int retries;
+    private boolean finished;
+
+    public FileTransferReceiver(ResumableFileMessage offer, ActorRef transfer, String filesDir, Materializer mat) throws IOException {
+        super("fileTransferReceiver");
+        Config conf = getContext().getSystem().settings().config().getConfig("whatsapp.files");
+        this.offer = offer;
+        this.transfer = transfer;
+        this.filesDir = filesDir;
+        this.mat = mat;
+        this.maxRetries = conf.getInt("max-retries");
+        this.stallTimeout = conf.getDuration("stall-timeout");
+        this.part = Paths.get(filesDir,offer.transferId + ".part");
+        this.ch = FileChannel.open(part,StandardOpenOption.CREATE,StandardOpenOption.WRITE);
+        this.pending = ByteString.empty();
+        this.acked = 0;
+        this.gen = 0;
+        this.retries = 0;
+        this.finished = false;
+    }
+
+    @Override
+    public void preStart() throws IOException {
+        if(offer.checksums.length == 0)
+            finish();
+        else
+            request();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(FileChunksMessage.class,this::chunksHandler)
+                .match(StreamInit.class,m -> getSender().tell(ACK,getSelf()))
+                .match(Data.class,this::dataHandler)
+                .match(StreamDone.class,m -> m.gen == gen,m -> {
+                    if(acked == offer.checksums.length)
+                        finish();
+                    else
+                        resume("the stream ended before the end of the file");
+                })
+                .match(StreamFailed.class,m -> m.gen == gen,m -> resume(m.cause.getMessage()))
+                .match(Stall.class,m -> {
+                    if(killSwitch != null)
+                        killSwitch.abort(new TimeoutException("no data for " + stallTimeout));
+                    else
+                        resume("no answer from the sender");
+                })
+                .match(Resume.class,m -> request())
+                .matchAny(m -> {}) //messages of old streams
+                .build();
+    }
+
+    /**
+     * ask the sender for the chunks from the last verified chunk
+     */
+    private void request(){
+        logAndTell(transfer,new FileChunkRequest(offer.transferId,acked),getSelf());
+        getTimers().startSingleTimer(Stall.class,new Stall(),stallTimeout);
+    }
+
+    /**
+     * consume the chunks stream, the elements are sent to this actor with backpressure
+     * @param m: FileChunksMessage
+     */
+    private void chunksHandler(FileChunksMessage m){
+        if(m.fromChunk != acked || killSwitch != null)
+            return;
+        getTimers().cancel(Resume.class);
+        final int g = ++gen;
+        pending = ByteString.empty();
+        killSwitch = m.chunksRef.getSource()
+                .viaMat(KillSwitches.single(),Keep.right())
+                .map(b -> new Data(g,b))
+                .toMat(Sink.actorRefWithAck(getSelf(),new StreamInit(g),ACK,new StreamDone(g),e -> new StreamFailed(g,e)),Keep.left())
+                .run(mat);
+        getTimers().startSingleTimer(Stall.class,new Stall(),stallTimeout);
+    }
+
+    /**
+     * collect the bytes to chunks, verify and write each complete chunk.
+     * corrupted chunk abort the stream and the transfer is resumed from it
+     * @param m: Data
+     */
+    private void dataHandler(Data m) throws IOException {
+        getSender().tell(ACK,getSelf());
+        if(m.gen != gen)
+            return;
+        getTimers().startSingleTimer(Stall.class,new Stall(),stallTimeout);
+        pending = pending.concat(m.bytes);
+        while(acked < offer.checksums.length && pending.size() >= chunkLength(acked)) {
+            ByteString chunk = pending.take(chunkLength(acked));
+            if(FileTransfer.checksum(chunk) != offer.checksums[acked]) {
+                killSwitch.abort(new IOException("chunk " + acked + " is corrupted"));
+                return;
+            }
+            pending = pending.drop(chunk.size());
+            write(chunk,(long) acked * offer.chunkSize);
+            acked++;
+            retries = 0;
+            transfer.tell(new FileChunkAck(offer.transferId,acked),getSelf());
+        }
+        if(acked == offer.checksums.length && !pending.isEmpty())
+            killSwitch.abort(new IOException("the file is longer than expected"));
+    }
+
+    /**
+     * resume the transfer after backoff, or give up after maxRetries failures in a row
+     * @param reason: the failure reason
+     */
+    private void resume(String reason){
+        logDebug("transfer {} failed at chunk {}: {}",offer.transferId,acked,reason);
+        killSwitch = null;
+        gen++;
+        getTimers().cancel(Stall.class);
+        if(++retries > maxRetries) {
+            getContext().getParent().tell(new Done(offer.senderName,String.format("File %s failed: %s",offer.fileName,reason)),getSelf());
+            getContext().stop(getSelf());
+            return;
+        }
+        long backoff = Math.min(30000,500L << retries);
+        getTimers().startSingleTimer(Resume.class,new Resume(),Duration.ofMillis(backoff));
+    }
+
+    /**
+     * move the part to the final name and inform the parent
+     */
+    private void finish() throws IOException {
+        finished = true;
+        getTimers().cancelAll();
+        ch.close();
+        Path dst = util.findUnusedName(filesDir,offer.fileName);
+        Files.move(part,dst);
+        transfer.tell(new FileChunkAck(offer.transferId,offer.checksums.length),getSelf());
+        getContext().getParent().tell(new Done(offer.senderName,String.format("File received: %s",dst.toString())),getSelf());
+        getContext().stop(getSelf());
+    }
+
+    private int chunkLength(int chunk){
+        return (int) Math.min(offer.chunkSize,offer.fileSize - (long) chunk * offer.chunkSize);
+    }
+
+    private void write(ByteString chunk,long position) throws IOException {
+        for(ByteBuffer buf : chunk.getByteBuffers())
+            while(buf.hasRemaining())
+                position += ch.write(buf,position);
+    }
+
+    /**
+     * unfinished transfer delete its part
+     */
+    @Override
+    public void postStop() throws IOException {
+        if(killSwitch != null)
+            killSwitch.shutdown();
+        if(!finished) {
+            ch.close();
+            Files.deleteIfExists(part);
+        }
+    }
+}
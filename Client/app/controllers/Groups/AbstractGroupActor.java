@@ -4,30 +4,53 @@ import akka.actor.ActorRef;
 import akka.pattern.Patterns;
 import akka.stream.Materializer;
 import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Sink;
 import controllers.logging.AbstractLogActorWithTimers;
-import controllers.protocols.ClientServerGroupsProtocol.*;
+import com.akka.protocols.ClientServerGroupsProtocol.*;
 import controllers.IO.InputParser.*;
-import controllers.protocols.UserToUserGroupProtocol.*;
+import com.akka.protocols.UserToUserGroupProtocol.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import controllers.util;
+import scala.PartialFunction;
+import scala.runtime.BoxedUnit;
 
 /**
  * this class is the for the admin and every group member
  * and contain there common property and actions
  * in addition this class extends AbstractLogActorWithTimers
- * for logging and timer usage
+ * for logging and timer usage.
+ * the group send GroupMarkMessage every few messages and wait to GroupAckMessage with
+ * the mark before it send more, the ack sent in every stage (see aroundReceive).
+ * the group texts and files has seqNr and the seqNr of the one before them, when the previous
+ * one didn't arrive the missing range is asked from the group with GroupCatchUpMessage
+ * after CATCH_UP_DELAY (files are not ordered with the texts so they can arrive a bit later),
+ * file that still arrive after it was asked again is received only once (see receivedFiles).
+ * when the group is restored on the server it has new ActorRef and send GroupRestoredMessage,
+ * from then the messages are sent to the new ref.
  */
 public abstract class AbstractGroupActor extends AbstractLogActorWithTimers {
+    static private final Duration CATCH_UP_DELAY = Duration.ofSeconds(1);
+    static private final int RECEIVED_FILES = 256; //max seqNr of received files that are kept
+
+    static private class CatchUpTick{}
 
     protected final HashMap<String,ActorRef> members;
     protected final ActorRef printer;
     protected final String userName;
-    protected final ActorRef groupRef;
+    protected ActorRef groupRef; //changed when the group restored, see GroupRestoredMessage
     protected final Materializer mat;
     private String filesDir;
+    private long historyCursor; //'before' of the next history page, 0 when there are no more pages
+    private final GroupSequence seqNrs; //the group seqNr that arrived and the gaps
+    private final TreeSet<Long> receivedFiles; //seqNr of the last files that arrived
 
     public AbstractGroupActor(String userName, ActorRef groupRef, ActorRef printer, Materializer mat){
         super();
@@ -36,14 +59,40 @@ public abstract class AbstractGroupActor extends AbstractLogActorWithTimers {
         this.userName = userName;
         this.groupRef = groupRef;
         this.mat = mat;
+        this.historyCursor = Long.MAX_VALUE;
+        this.seqNrs = new GroupSequence();
+        this.receivedFiles = new TreeSet<>();
         groupRef.tell(new AddToGroupMessage(userName),getSelf());
+        groupRef.tell(new GroupAckMessage(0),getSelf()); //enable the group flow control
         filesDir = util.createdir(Paths.get("files",userName,"groupsFile",getGroupName()));
 
     }
 
+    /**
+     * ack the group marks, ask the missing messages and follow the restored group before the stage behavior,
+     * so they handled also in the init stage
+     */
+    @Override
+    public void aroundReceive(PartialFunction<Object, BoxedUnit> receive, Object msg) {
+        if(msg instanceof GroupMarkMessage)
+            groupRef.tell(new GroupAckMessage(((GroupMarkMessage) msg).mark),getSelf());
+        else if(msg instanceof GroupRestoredMessage) {
+            logDebug("group {} restored",getGroupName());
+            groupRef = getSender();
+            groupRef.tell(new GroupAckMessage(0),getSelf()); //the restored group has new flow control
+        }
+        else if(msg instanceof CatchUpTick)
+            catchUp();
+        else
+            super.aroundReceive(receive,msg);
+    }
+
     protected Receive basicReceive(){
         return receiveBuilder()
-                .match(TextGroupMessage.class, m -> printGroupFormat(m.sender,m.msg))
+                .match(TextGroupMessage.class, m -> {
+                    sequence(m.seqNr,m.prevSeqNr);
+                    printGroupFormat(m.sender,m.msg);})
+                .match(GroupGapMessage.class,this::gapHandler)
                 .match(FileGroupMessage.class,this::receiveFileHandler)
                 .match(AddToGroupMessage.class,m -> members.put(m.senderName,getSender()))
                 .match(RemoveFromGroupMessage.class, m ->
@@ -51,6 +100,8 @@ public abstract class AbstractGroupActor extends AbstractLogActorWithTimers {
                 .match(LeaveGroupMessage.class,m ->
                         printSomeoneleft(removeMember(m.senderName)))
                 .match(ActionNotAllowedMassage.class, m -> logAndTell(printer,m.msg,null))
+                .match(GroupHistoryInput.class, m -> historyInputHandler())
+                .match(HistoryMessage.class,this::historyHandler)
                 .build();
     }
 
@@ -121,12 +172,19 @@ public abstract class AbstractGroupActor extends AbstractLogActorWithTimers {
         repeatActionNotAllowed(String.format("%s is not muted!",userName));
     }
 
+    /**
+     * send the file to the group with its content hash, the hash read the whole file so it is computed
+     * on the blocking io dispatcher (like FileTransfer), and the file sourceRef is created after it
+     * @param m: GroupFileInput
+     */
     private void sendFileHandler(GroupFileInput m){
         if(util.fileExsits(m.filePath)) {
             Path path = Paths.get(m.filePath);
             String fileName = path.getFileName().toString();
-            Patterns.pipe(util.createFSRef(path,mat).thenApply(s -> new FileGroupMessage(userName, fileName, s)), context().dispatcher())
-                    .to(groupRef).future();
+            Executor blocking = getContext().getSystem().dispatchers().lookup("akka.stream.default-blocking-io-dispatcher");
+            CompletionStage<FileGroupMessage> file = CompletableFuture.supplyAsync(() -> util.contentHash(path), blocking)
+                    .thenCompose(hash -> util.createFSRef(path,mat).thenApply(s -> new FileGroupMessage(userName, fileName, hash, s)));
+            Patterns.pipe(file, context().dispatcher()).to(groupRef).future();
         }
         else {
             logAndTell(printer,String.format("%s does not exist!",m.filePath),null);
@@ -134,7 +192,16 @@ public abstract class AbstractGroupActor extends AbstractLogActorWithTimers {
     }
 
     private void receiveFileHandler(FileGroupMessage m){
+        sequence(m.seqNr,m.prevSeqNr);
         ActorRef fileCounter = getSender();
+        if(m.seqNr != 0 && !receivedFiles.add(m.seqNr)) { //the file arrived both by catch up and the original send
+            logDebug("file {} already received",m.seqNr);
+            m.fileRef.getSource().runWith(Sink.cancelled(),mat);
+            fileCounter.tell("ok",null);
+            return;
+        }
+        if(receivedFiles.size() > RECEIVED_FILES)
+            receivedFiles.pollFirst();
         Path dst = util.findUnusedName(filesDir,m.fileName);
         m.fileRef.getSource().runWith(FileIO.toPath(dst),mat)
                 .thenRun(() -> {
@@ -143,6 +210,55 @@ public abstract class AbstractGroupActor extends AbstractLogActorWithTimers {
                     fileCounter.tell("ok",null);});
     }
 
+    /**
+     * ask the group for the previous history page, every call go one page back
+     */
+    private void historyInputHandler(){
+        if(historyCursor == 0)
+            logAndTell(printer,String.format("no more history in %s!",getGroupName()),null);
+        else
+            logAndTell(groupRef,new HistoryRequestMessage(historyCursor),getSelf());
+    }
+
+    /**
+     * print the history page texts and save the position of the previous page
+     * @param m: HistoryMessage with sourceRef of the page texts
+     */
+    private void historyHandler(HistoryMessage m){
+        historyCursor = m.nextBefore;
+        m.sorceSupp.getSource().runForeach(t -> printer.tell(String.format("[history][%s][%s] %s",getGroupName(),t.sender,t.msg),null),mat);
+    }
+
+    /**
+     * check that the message before seqNr arrived, if not schedule catch-up (see GroupSequence)
+     * @param seqNr: the message group seqNr, 0 if not stamped
+     * @param prevSeqNr: the seqNr of the message before it, 0 if not known
+     */
+    private void sequence(long seqNr,long prevSeqNr){
+        if(seqNrs.arrived(seqNr,prevSeqNr)) {
+            logDebug("missing messages in the group before {}",seqNr);
+            getContext().getSystem().scheduler().scheduleOnce(CATCH_UP_DELAY,getSelf(),new CatchUpTick(),getContext().dispatcher(),ActorRef.noSender());
+        }
+    }
+
+    /**
+     * ask the group for the messages that still missing
+     */
+    private void catchUp(){
+        for(Map.Entry<Long,Long> e : seqNrs.takeGaps().entrySet())
+            logAndTell(groupRef,new GroupCatchUpMessage(e.getValue(),e.getKey() + 1),getSelf());
+    }
+
+    /**
+     * the group skipped messages (or can't send again missing messages), the seqNr are not checked until the next message
+     * @param m: GroupGapMessage
+     */
+    private void gapHandler(GroupGapMessage m){
+        seqNrs.skipped();
+        String skipped = m.skipped > 0 ? String.format("%d messages",m.skipped) : "messages";
+        logAndTell(printer,String.format("%s skipped in %s, use: group history %s",skipped,getGroupName(),getGroupName()),null);
+    }
+
     ///////////////////PRINTERS///////////////////////////
 
     private void printSomeoneRemoved(String name){
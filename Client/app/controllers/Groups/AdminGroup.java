@@ -3,9 +3,9 @@ package controllers.Groups;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.stream.Materializer;
-import controllers.protocols.ClientServerGroupsProtocol.*;
+import com.akka.protocols.ClientServerGroupsProtocol.*;
 import controllers.IO.InputParser.*;
-import controllers.protocols.UserToUserGroupProtocol.*;
+import com.akka.protocols.UserToUserGroupProtocol.*;
 
 
 public class AdminGroup extends AbstractGroupActor {
@@ -0,0 +1,75 @@
+package controllers.Groups;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * the group seqNr that arrived to member, to find the texts and files he missed.
+ * each stamped message has its seqNr and the seqNr of the message before it (prevSeqNr),
+ * message with prevSeqNr after the highest seqNr that arrived open gap, message that arrive
+ * later with seqNr of gap (late file or catch-up message) close it.
+ * the highest seqNr never go back, so the old messages that sent again by catch-up
+ * don't make the next live message look like after gap.
+ * not thread safe, used by the group actor only.
+ */
+class GroupSequence {
+    private long top; //the highest seqNr that arrived, 0 if not known
+    private boolean unchecked; //the group skipped messages, the prevSeqNr of the next new message is not checked
+    private final TreeMap<Long,Long> gaps; //missing seqNr -> the seqNr that arrived before it
+
+    GroupSequence(){
+        this.top = 0;
+        this.unchecked = false;
+        this.gaps = new TreeMap<>();
+    }
+
+    /**
+     * @param seqNr: the message group seqNr, 0 if not stamped
+     * @param prevSeqNr: the seqNr of the message before it, 0 if not known
+     * @return true if this message opened the first gap (the catch-up should be scheduled)
+     */
+    boolean arrived(long seqNr, long prevSeqNr){
+        if(seqNr == 0)
+            return false;
+        if(seqNr > top) {
+            boolean check = top > 0 && !unchecked;
+            long after = top;
+            top = seqNr;
+            unchecked = false;
+            return check && prevSeqNr > after && addGap(prevSeqNr, after);
+        }
+        Long after = gaps.remove(seqNr);
+        return after != null && prevSeqNr > after && addGap(prevSeqNr, after);
+    }
+
+    /**
+     * the group skipped messages or can't send again the missing messages,
+     * the gaps are dropped and the next new message is not checked
+     */
+    void skipped(){
+        gaps.clear();
+        unchecked = true;
+    }
+
+    /**
+     * @return the gaps (missing seqNr -> the seqNr before it) to ask from the group, the gaps are removed
+     */
+    Map<Long,Long> takeGaps(){
+        Map<Long,Long> res = new TreeMap<>(gaps);
+        gaps.clear();
+        return res;
+    }
+
+    long top(){
+        return top;
+    }
+
+    /**
+     * @return true if there were no gaps before
+     */
+    private boolean addGap(long missing, long after){
+        boolean first = gaps.isEmpty();
+        gaps.put(missing, after);
+        return first;
+    }
+}
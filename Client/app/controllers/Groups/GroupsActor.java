@@ -4,9 +4,9 @@ import akka.actor.*;
 import akka.japi.pf.DeciderBuilder;
 import akka.stream.Materializer;
 import controllers.logging.AbstractLogActor;
-import controllers.protocols.ClientServerGroupsProtocol.*;
+import com.akka.protocols.ClientServerGroupsProtocol.*;
 import controllers.IO.InputParser.*;
-import controllers.protocols.UserToUserGroupProtocol.InviteAnsOkMessage;
+import com.akka.protocols.UserToUserGroupProtocol.InviteAnsOkMessage;
 
 import java.time.Duration;
 
@@ -48,6 +48,7 @@ public class GroupsActor extends AbstractLogActor {
                 .match(GroupLeaveInput.class,this::LeaveGroupHandler )
                 .match(GroupTextInput.class,this::checkAndForward)
                 .match(GroupFileInput.class,this::checkAndForward)
+                .match(GroupHistoryInput.class,this::checkAndForward)
                 .match(GroupInviteInput.class,this::checkAndForward)
                 .match(GroupRemoveInput.class,this::checkAndForward)
                 .match(GroupCoadminAddInput.class,this::checkAndForward)
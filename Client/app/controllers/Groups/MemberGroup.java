@@ -4,9 +4,9 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.stream.Materializer;
 import akka.stream.SourceRef;
-import controllers.protocols.Abstracts.AbstractNamedMessage;
-import controllers.protocols.ClientServerGroupsProtocol.*;
-import controllers.protocols.UserToUserGroupProtocol.*;
+import com.akka.protocols.Abstracts.AbstractNamedMessage;
+import com.akka.protocols.ClientServerGroupsProtocol.*;
+import com.akka.protocols.UserToUserGroupProtocol.*;
 import controllers.IO.InputParser.*;
 import java.time.Duration;
 
@@ -0,0 +1,195 @@
+package controllers.IO;
+
+import controllers.IO.InputParser.*;
+
+/**
+ * decoder of the JSON commands of the websocket, for bots and scripts that don't want to build text commands.
+ * command is JSON array of the command name and its arguments (strings, the mute time can be number):
+ *  ["connect","bob"] ["disconnect"] ["text","bob","hi"] ["file","bob","/tmp/a.txt"] ["yes"] ["no"]
+ *  ["watch","bob alice"] ["unwatch","bob alice"]
+ *  ["group.create","g"] ["group.leave","g"] ["group.history","g"] ["group.text","g","hi"] ["group.file","g","/tmp/a.txt"]
+ *  ["group.invite","g","bob"] ["group.remove","g","bob"] ["group.mute","g","bob",30] ["group.unmute","g","bob"]
+ *  ["group.coadmin.add","g","bob"] ["group.coadmin.remove","g","bob"]
+ * the result is the same input class that InputParser.parseInput return for the text command
+ * (IllegalInput for bad command).
+ * the frame is decoded in one pass, the only allocations are the argument strings and the input object.
+ * not thread safe, one decoder for each PlayConnector.
+ */
+public class CommandDecoder {
+    static private final String[] COMMANDS = {
+            "connect", "disconnect", "text", "file", "yes", "no",
+            "group.create", "group.leave", "group.history", "group.text", "group.file",
+            "group.invite", "group.remove", "group.mute", "group.unmute", "group.coadmin.add", "group.coadmin.remove",
+            "watch", "unwatch"};
+    static private final int[] ARGS = {1, 0, 2, 2, 0, 0, 1, 1, 1, 2, 2, 2, 2, 3, 2, 2, 2, 1, 1};
+    static private final int MAX_ARGS = 3;
+
+    private final String[] args;
+    private final StringBuilder escaped; //for strings with escapes
+    private String frame;
+    private int pos;
+
+    public CommandDecoder(){
+        this.args = new String[MAX_ARGS];
+        this.escaped = new StringBuilder();
+    }
+
+    /**
+     * @param frame: JSON command
+     * @return the input class of the command, IllegalInput if the command is not valid
+     */
+    public Object decode(String frame){
+        this.frame = frame;
+        this.pos = 0;
+        try {
+            expect('[');
+            int command = command();
+            int count = 0;
+            while(skipSpaces() == ',') {
+                pos++;
+                if(count == MAX_ARGS)
+                    throw new IllegalArgumentException("too many arguments");
+                args[count++] = value();
+            }
+            expect(']');
+            if(skipSpaces() != -1)
+                throw new IllegalArgumentException("data after the command");
+            if(count != ARGS[command])
+                throw new IllegalArgumentException(String.format("%s take %d arguments", COMMANDS[command], ARGS[command]));
+            return create(command);
+        } catch (IllegalArgumentException e) {
+            return new IllegalInput(frame, "CommandDecoder.decode\n" + e.getMessage());
+        } finally {
+            args[0] = args[1] = args[2] = null;
+            this.frame = null;
+        }
+    }
+
+    private Object create(int command){
+        switch (command) {
+            case 0: return new ConnectInput(args[0]);
+            case 1: return new DisconnectInput();
+            case 2: return new UserTextInput(args[0], args[1]);
+            case 3: return new UserFileInput(args[0], args[1]);
+            case 4: return "yes";
+            case 5: return "no";
+            case 6: return new GroupCreateInput(args[0]);
+            case 7: return new GroupLeaveInput(args[0]);
+            case 8: return new GroupHistoryInput(args[0]);
+            case 9: return new GroupTextInput(args[0], args[1]);
+            case 10: return new GroupFileInput(args[0], args[1]);
+            case 11: return new GroupInviteInput(args[0], args[1]);
+            case 12: return new GroupRemoveInput(args[0], args[1]);
+            case 13: return new GroupMuteInput(args[0], args[1], positive(args[2]));
+            case 14: return new GroupUnmuteInput(args[0], args[1]);
+            case 15: return new GroupCoadminAddInput(args[0], args[1]);
+            case 16: return new GroupCoadminRemoveInput(args[0], args[1]);
+            case 17: return new WatchInput(InputParser.userNames(args[0]));
+            default: return new UnwatchInput(InputParser.userNames(args[0]));
+        }
+    }
+
+    /**
+     * match the command name in place, without creating string
+     * @return index in COMMANDS
+     */
+    private int command(){
+        if(skipSpaces() != '"')
+            throw new IllegalArgumentException("missing command name");
+        int start = ++pos;
+        int end = frame.indexOf('"', start);
+        if(end < 0)
+            throw new IllegalArgumentException("unterminated command name");
+        pos = end + 1;
+        for(int i = 0; i < COMMANDS.length; i++)
+            if(COMMANDS[i].length() == end - start && frame.startsWith(COMMANDS[i], start))
+                return i;
+        throw new IllegalArgumentException("unknown command " + frame.substring(start, end));
+    }
+
+    /**
+     * @return string argument, number argument is returned as its text
+     */
+    private String value(){
+        int c = skipSpaces();
+        if(c == '"')
+            return string();
+        int start = pos;
+        while(pos < frame.length() && (Character.isDigit(frame.charAt(pos)) || frame.charAt(pos) == '-'))
+            pos++;
+        if(start == pos)
+            throw new IllegalArgumentException("argument must be string or number");
+        return frame.substring(start, pos);
+    }
+
+    private String string(){
+        int start = ++pos;
+        for(; pos < frame.length(); pos++) {
+            char c = frame.charAt(pos);
+            if(c == '"')
+                return frame.substring(start, pos++);
+            if(c == '\\')
+                return escapedString(start);
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    /**
+     * the slow path of string with escapes, pos is at the first backslash
+     */
+    private String escapedString(int start){
+        escaped.setLength(0);
+        escaped.append(frame, start, pos);
+        while(pos < frame.length()) {
+            char c = frame.charAt(pos++);
+            if(c == '"')
+                return escaped.toString();
+            if(c != '\\') {
+                escaped.append(c);
+                continue;
+            }
+            if(pos >= frame.length())
+                break;
+            char e = frame.charAt(pos++);
+            switch (e) {
+                case 'n': escaped.append('\n'); break;
+                case 't': escaped.append('\t'); break;
+                case 'r': escaped.append('\r'); break;
+                case 'b': escaped.append('\b'); break;
+                case 'f': escaped.append('\f'); break;
+                case 'u':
+                    if(pos + 4 > frame.length())
+                        throw new IllegalArgumentException("bad unicode escape");
+                    escaped.append((char) Integer.parseInt(frame.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default: escaped.append(e); //" \ /
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    /**
+     * @return the next not space char, -1 at the end
+     */
+    private int skipSpaces(){
+        while(pos < frame.length() && Character.isWhitespace(frame.charAt(pos)))
+            pos++;
+        return pos < frame.length() ? frame.charAt(pos) : -1;
+    }
+
+    private void expect(char c){
+        if(skipSpaces() != c)
+            throw new IllegalArgumentException(String.format("expected '%c' at %d", c, pos));
+        pos++;
+    }
+
+    static private int positive(String s){
+        try {
+            int time = Integer.parseInt(s);
+            if(time > 0)
+                return time;
+        } catch (NumberFormatException e) {}
+        throw new IllegalArgumentException(String.format("given time = %s : time must be a positive number!", s));
+    }
+}
@@ -57,6 +57,19 @@ public class InputParser {
         }
     }
 
+    /**
+     * get the presence only of the watched users
+     */
+    static public class WatchInput {
+        public final String[] userNames;
+        public WatchInput(String[] userNames){this.userNames = userNames;}
+    }
+
+    static public class UnwatchInput {
+        public final String[] userNames;
+        public UnwatchInput(String[] userNames){this.userNames = userNames;}
+    }
+
     //////////Group/////////////
     static public class GroupCreateInput extends GroupInput {
         public GroupCreateInput(String groupName){super(groupName);}
@@ -84,6 +97,10 @@ public class InputParser {
         }
     }
 
+    static public class GroupHistoryInput extends GroupInput {
+        public GroupHistoryInput(String groupName){super(groupName);}
+    }
+
     static public class GroupInviteInput extends GroupToUserInput {
         public GroupInviteInput(String groupName, String toUser){super(groupName,toUser);}
     }
@@ -127,6 +144,10 @@ public class InputParser {
         }
     }
     static private Object parseUseInput(String input) throws IllegalArgumentException {
+        if(input.startsWith("watch "))
+            return new WatchInput(userNames(input.substring(6)));
+        if(input.startsWith("unwatch "))
+            return new UnwatchInput(userNames(input.substring(8)));
         String[] splited = input.split(" ",3);
 
         switch (splited.length) {
@@ -149,11 +170,23 @@ public class InputParser {
 
         throw new IllegalArgumentException("InputParser.parseUseInput");
     }
+    /**
+     * @param input: user names separated by spaces
+     */
+    static public String[] userNames(String input) throws IllegalArgumentException {
+        String[] names = input.trim().split(" +");
+        if(names[0].isEmpty())
+            throw new IllegalArgumentException("InputParser.userNames");
+        return names;
+    }
+
     static private GroupInput parseGroupInput(String input) throws IllegalArgumentException {
         if(input.startsWith("create "))
             return new GroupCreateInput(input.substring(7));
         if(input.startsWith("leave "))
             return new GroupLeaveInput(input.substring(6));
+        if(input.startsWith("history "))
+            return new GroupHistoryInput(input.substring(8));
         if(input.startsWith("send "))
             return parseGroupSendInput(input.substring(5));
         if(input.startsWith("user "))
@@ -1,17 +1,44 @@
 package controllers.IO;
 
+import akka.NotUsed;
 import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
 import akka.actor.Props;
+import akka.actor.Status;
+import akka.actor.Terminated;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.SourceQueueWithComplete;
 import controllers.logging.AbstractLogActorWithTimers;
 import java.time.Duration;
 
 /**
- *this actor class used as ActorFlow to connect between the js code
- * and the user program actors using websocket
+ *this actor class used as the websocket flow to connect between the js code
+ * and the user program actors, the input commands come to this actor and the output
+ * go through its child WebSocketPrinter, see flow.
  */
 public class PlayConnector extends AbstractLogActorWithTimers {
-    static public Props props(ActorRef printer, ActorRef supervise) {
-        return Props.create(PlayConnector.class, () -> new PlayConnector(printer, supervise));
+    static public Props props(SourceQueueWithComplete<String> out, ActorRef supervise) {
+        return Props.create(PlayConnector.class, () -> new PlayConnector(out, supervise));
+    }
+
+    /**
+     * create the websocket flow of session: the input strings are sent to new PlayConnector
+     * and the printer output is sent to the websocket with backpressure (see WebSocketPrinter).
+     * when the websocket closed the PlayConnector stop, and with it the printer and the session.
+     * @param supervise: the session InputActor
+     * @return the websocket flow
+     */
+    static public Flow<String, String, NotUsed> flow(ActorRef supervise, ActorSystem system, Materializer mat) {
+        Pair<SourceQueueWithComplete<String>, Source<String, NotUsed>> out =
+                Source.<String>queue(1, OverflowStrategy.backpressure()).preMaterialize(mat);
+        ActorRef connector = system.actorOf(props(out.first(), supervise), supervise.path().name() + "-connector");
+        return Flow.fromSinkAndSource(Sink.actorRef(connector, PoisonPill.getInstance()), out.second());
     }
 
     /**
@@ -19,42 +46,41 @@ public class PlayConnector extends AbstractLogActorWithTimers {
      */
     static public class ping{}
 
-    private final ActorRef printer; //ActorRef that used as a channel to send messages to the js
+    private final ActorRef printer; //the session printer, send the lines to the js
     private final ActorRef supervise; //user program supervise
+    private final CommandDecoder decoder; //for the JSON commands
 
-
-    public PlayConnector(ActorRef printer, ActorRef supervise) {
+    public PlayConnector(SourceQueueWithComplete<String> out, ActorRef supervise) {
         super("PlayConnector");
-        this.printer = printer;
+        this.printer = getContext().actorOf(WebSocketPrinter.props(out), "printer");
         this.supervise = supervise;
-        //getContext().watch(printer);
+        this.decoder = new CommandDecoder();
+        getContext().watch(printer);
         this.supervise.tell(this.printer,null); //message to the user program supervise to inform that websocket established
         getTimers().startPeriodicTimer(new Object(),new ping(), Duration.ofSeconds(20)); //to keep websocket alive
     }
 
     /**
      * @return Receive that handle:
-     *  - input commend by parsing them ans send to user program supervise.
+     *  - input commend by parsing them ans send to user program supervise,
+     *    JSON command (starts with '[') is decoded by CommandDecoder and text command by InputParser.
      *  - ping by sending ping to the websocket to keep him alive.
+     *  - websocket failure or closed printer by stopping.
      */
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-                //.match(Terminated.class, r -> getContext().stop(self()))
+                .match(Terminated.class, r -> getContext().stop(self()))
+                .match(Status.Failure.class, f -> getContext().stop(self()))
                 .match(ping.class,m -> printer.tell("ping",null))
                 .matchEquals("",m-> {})
                 .match(String.class, s ->{
-                    Object o = InputParser.parseInput(s);
-                    supervise.tell(InputParser.parseInput(s),null);
+                    Object o = s.charAt(0) == '[' ? decoder.decode(s) : InputParser.parseInput(s);
+                    supervise.tell(o,null);
                     logger.debug("{} to {}",s,o.getClass().getName());
                 })
                 .matchAny(o -> logger.warning("unexpected mail {}",o))
                 .build();
     }
 
-    /**
-     * close the user program if websocket is dead
-     * because the user close the window or some other problem
-     */
-
 }
@@ -0,0 +1,120 @@
+package controllers.IO;
+
+import akka.actor.Props;
+import akka.actor.Status;
+import akka.pattern.Patterns;
+import akka.stream.QueueOfferResult;
+import akka.stream.javadsl.SourceQueueWithComplete;
+import com.typesafe.config.Config;
+import controllers.logging.AbstractLogActorWithTimers;
+import play.libs.Json;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the printer of session, send the lines that the session actors print to the websocket.
+ * the lines are coalesced to frames of JSON array: the lines that arrive in 'flush-interval'
+ * (or 'max-batch' lines) are sent in one frame, and while frame wait for the websocket the next
+ * lines wait in this actor, so slow browser get bigger frames and no line is dropped.
+ * only when more than 'max-pending' lines wait the browser is considered dead and the printer stop
+ * (and with it the session, see InputActor).
+ */
+public class WebSocketPrinter extends AbstractLogActorWithTimers {
+    static public Props props(SourceQueueWithComplete<String> out) {
+        return Props.create(WebSocketPrinter.class, () -> new WebSocketPrinter(out));
+    }
+
+    static private class Flush{}
+
+    /**
+     * the websocket took the last frame (or failed)
+     */
+    static private class Offered{
+        public final Object result;
+        public Offered(Object result){this.result = result;}
+    }
+
+    /**
+     * the websocket is closed
+     */
+    static private class Closed{}
+
+    private final SourceQueueWithComplete<String> out;
+    private final Duration flushInterval;
+    private final int maxBatch;
+    private final int maxPending;
+    private final ArrayDeque<String> pending;
+    private boolean offering; //frame is waiting for the websocket
+
+    public WebSocketPrinter(SourceQueueWithComplete<String> out){
+        super("WebSocketPrinter");
+        Config conf = getContext().getSystem().settings().config().getConfig("whatsapp.websocket");
+        this.out = out;
+        this.flushInterval = conf.getDuration("flush-interval");
+        this.maxBatch = conf.getInt("max-batch");
+        this.maxPending = conf.getInt("max-pending");
+        this.pending = new ArrayDeque<>();
+    }
+
+    @Override
+    public void preStart() {
+        Patterns.pipe(out.watchCompletion().handle((d, e) -> new Closed()), getContext().dispatcher()).to(getSelf());
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(String.class, this::lineHandler)
+                .match(Flush.class, m -> flush())
+                .match(Offered.class, this::offeredHandler)
+                .match(Closed.class, m -> getContext().stop(getSelf()))
+                .build();
+    }
+
+    /**
+     * the first line after idle start the flush interval, full batch is sent immediately
+     */
+    private void lineHandler(String line){
+        pending.add(line);
+        if(pending.size() > maxPending) {
+            logWarn("{} lines wait for the websocket, closing the session",pending.size());
+            getContext().stop(getSelf());
+        }
+        else if(!offering && pending.size() >= maxBatch)
+            flush();
+        else if(!offering && !getTimers().isTimerActive(Flush.class))
+            getTimers().startSingleTimer(Flush.class, new Flush(), flushInterval);
+    }
+
+    /**
+     * the lines that arrived while the frame waited are sent right away
+     */
+    private void offeredHandler(Offered m){
+        offering = false;
+        if(m.result instanceof QueueOfferResult.Enqueued$)
+            flush();
+        else {
+            logWarn("websocket frame failed: {}",m.result);
+            getContext().stop(getSelf());
+        }
+    }
+
+    private void flush(){
+        getTimers().cancel(Flush.class);
+        if(offering || pending.isEmpty())
+            return;
+        List<String> batch = new ArrayList<>(Math.min(pending.size(), maxBatch));
+        while(!pending.isEmpty() && batch.size() < maxBatch)
+            batch.add(pending.poll());
+        offering = true;
+        Patterns.pipe(out.offer(Json.stringify(Json.toJson(batch))).handle((r, e) -> new Offered(e == null ? r : new Status.Failure(e))),
+                getContext().dispatcher()).to(getSelf());
+    }
+
+    @Override
+    public void postStop() {
+        out.complete();
+    }
+}
@@ -5,7 +5,7 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.actor.Terminated;
 import controllers.logging.AbstractLogActorWithTimers;
-import controllers.protocols.UserToUserGroupProtocol.*;
+import com.akka.protocols.UserToUserGroupProtocol.*;
 import controllers.IO.InputParser.*;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -108,12 +108,15 @@ public class InputActor extends AbstractLogActorWithTimers {
      * this function return Receive that used before user preform connect
      * @return Receive how handle:
      *  - user connect commend
+     *  - watch/unwatch commends, so the first connect load only the watched users
      */
     private Receive createPreConnect(){
         return receiveBuilder()
                 .match(ConnectInput.class,m ->{
                     forwordToUserAktor(m);
                     getContext().become(connecting);})
+                .match(WatchInput.class, this::forwordToUserAktor)
+                .match(UnwatchInput.class, this::forwordToUserAktor)
                 .match(Terminated.class,r -> getContext().stop(getSelf()))
                 .build()
                 .orElse(createIllegal());
@@ -181,11 +184,14 @@ public class InputActor extends AbstractLogActorWithTimers {
                 .match(UserFileInput.class, this::forwordToUserAktor)
                 .match(GroupInviteInput.class, this::forwordToUserAktor)
                 .match(DisconnectInput.class, this::forwordToUserAktor)
+                .match(WatchInput.class, this::forwordToUserAktor)
+                .match(UnwatchInput.class, this::forwordToUserAktor)
                 .match(GroupTextInput.class, this::forwordToGroups)
                 .match(GroupFileInput.class, this::forwordToGroups)
                 .match(GroupRemoveInput.class, this::forwordToGroups)
                 .match(GroupCreateInput.class, this::forwordToGroups)
                 .match(GroupLeaveInput.class, this::forwordToGroups)
+                .match(GroupHistoryInput.class, this::forwordToGroups)
                 .match(GroupCoadminAddInput.class, this::forwordToGroups)
                 .match(GroupCoadminRemoveInput.class, this::forwordToGroups)
                 .match(GroupMuteInput.class, this::forwordToGroups)
@@ -264,9 +270,4 @@ public class InputActor extends AbstractLogActorWithTimers {
         forwordTo(printer,msg);
     }
 
-    @Override
-    public void postStop() {
-    getContext().getSystem().terminate();
-    }
-
 }
@@ -4,15 +4,20 @@ import akka.actor.ActorRef;
 import akka.actor.Props;
 import akka.stream.Materializer;
 import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Sink;
 import controllers.logging.AbstractLogActor;
-import controllers.protocols.UserToUserProtocol.*;
-import controllers.protocols.UserToUserGroupProtocol.InviteMessage;
+import com.akka.protocols.ClientServerProtocol.OfflineMessagesMessage;
+import com.akka.protocols.UserToUserProtocol.*;
+import com.akka.protocols.UserToUserGroupProtocol.InviteMessage;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 
 
 /**
- * this actor class handle all the user text/file and group invitation that sends to this user
+ * this actor class handle all the user text/file and group invitation that sends to this user.
+ * reliable texts (with id) are acked and the ids that arrived before are ignored,
+ * the ids are kept for each sender in DedupWindow also after disconnect.
  */
 public class MessageReceiver extends AbstractLogActor {
     static public Props props(ActorRef inputActor, ActorRef printer, Materializer mat) {
@@ -29,6 +34,8 @@ public class MessageReceiver extends AbstractLogActor {
     private final Receive active;
     private String myName;
     private String filesDir;
+    private OfflineMessagesMessage offline; //offline messages that arrived before the user name
+    private final HashMap<String,DedupWindow> received; //sender name -> his reliable text ids
 
     public MessageReceiver(ActorRef inputActor,ActorRef printer,Materializer mat){
         super("messageReceiver");
@@ -36,6 +43,7 @@ public class MessageReceiver extends AbstractLogActor {
         this.printer = printer;
         this.mat = mat;
         this.filesDir = "";
+        this.received = new HashMap<>();
         this.preConected = createPreConnected();
         this.active = createActive();
     }
@@ -48,6 +56,7 @@ public class MessageReceiver extends AbstractLogActor {
      * this function return Receive that used before the user connected
      * @return Receive how handle:
      *  - string: username
+     *  - offline messages from the server, they are printed after the user name is set
      */
     private Receive createPreConnected(){
         return receiveBuilder()
@@ -55,22 +64,33 @@ public class MessageReceiver extends AbstractLogActor {
                     this.myName = name;
                     filesDir = util.createdir(Path.of("files",name,"userFiles"));
                     getContext().become(active);
+                    if(offline != null) {
+                        offlineHandler(offline);
+                        offline = null;
+                    }
 
-                }).build();
+                })
+                .match(OfflineMessagesMessage.class,m -> offline = m)
+                .build();
     }
 
     /**
      * this function return Receive that used after the user connected
      * @return Receive how handle:
      *  - user text/file messages
+     *  - resumable file offers, each file is received by FileTransferReceiver child
      *  - group Invite  messages
      */
     private Receive createActive(){
         return receiveBuilder()
-                .match(TextMessage.class, this::userTextHandle)
+                .match(TextMessage.class, this::textHandler)
                 .match(FileMessage.class,this::userFileHandler)
+                .match(ResumableFileMessage.class,m -> getContext().actorOf(FileTransferReceiver.props(m,getSender(),filesDir,mat)))
+                .match(FileTransferReceiver.Done.class,m -> printUserformat(m.senderName,m.msg))
+                .match(OfflineMessagesMessage.class,this::offlineHandler)
                 .match(InviteMessage.class,m -> logAndTell(inputActor,m,getSender()))
                 .match(DisconnMsg.class, m -> {
+                    getContext().getChildren().forEach(getContext()::stop);
                     cleanDir();
                     this.filesDir = null;
                     getContext().become(preConected);
@@ -78,10 +98,34 @@ public class MessageReceiver extends AbstractLogActor {
                 .build();
     }
 
+    /**
+     * ack reliable text and print it only the first time it arrive
+     * @param m: TextMessage from other user
+     */
+    private void textHandler(TextMessage m){
+        if(m.id != 0) {
+            getSender().tell(new TextAckMessage(m.epoch,m.id),getSelf());
+            if(!received.computeIfAbsent(m.senderName,s -> new DedupWindow()).accept(m.epoch,m.id)) {
+                logDebug("text {} from {} arrived again",m.id,m.senderName);
+                return;
+            }
+        }
+        userTextHandle(m);
+    }
+
     private void userTextHandle(TextMessage m){
         printUserformat(m.senderName,m.msg);
     }
 
+    /**
+     * this function print the messages that were sent to the user while he was offline
+     * @param m: OfflineMessagesMessage with sourceRef of the messages
+     */
+    private void offlineHandler(OfflineMessagesMessage m){
+        logAndTell(printer,String.format("you have %d offline messages",m.count),null);
+        m.sorceSupp.getSource().runWith(Sink.foreach(this::userTextHandle),mat);
+    }
+
     /**
      * this function save the file from the sourceRef in the message
      * to the user file director and print his path
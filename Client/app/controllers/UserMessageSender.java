@@ -2,71 +2,184 @@ package controllers;
 
 import akka.actor.ActorRef;
 import akka.actor.Props;
-import akka.pattern.Patterns;
-import akka.stream.IOResult;
 import akka.stream.Materializer;
-import akka.stream.SourceRef;
-import akka.stream.javadsl.FileIO;
-import akka.stream.javadsl.Source;
-import akka.stream.javadsl.StreamRefs;
-import akka.util.ByteString;
+import com.typesafe.config.Config;
 import controllers.IO.InputParser.*;
-import controllers.logging.AbstractLogActor;
-import controllers.protocols.UserToUserProtocol.*;
+import controllers.logging.AbstractLogActorWithTimers;
+import com.akka.protocols.UserToUserProtocol.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.CompletionStage;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.TreeMap;
 
 /**
- * this actor class handle all the sending of user text/file to other users
+ * this actor class handle all the sending of user text/file to other users.
+ * when 'whatsapp.texts.reliable' is on the texts are sent at least once: each text has id
+ * (per receiver, in the epoch of this sender) and it is sent again after backoff until the
+ * receiver ack it, up to 'max-attempts' times. at most 'max-pending' texts to each receiver
+ * wait for ack and the next texts wait in order, so the receiver can drop the texts that
+ * arrive again with small window of ids (see DedupWindow).
  */
-public class UserMessageSender extends AbstractLogActor {
+public class UserMessageSender extends AbstractLogActorWithTimers {
 
     static public Props props(String myName, ActorRef printer, Materializer mat) {
         return Props.create(UserMessageSender.class, () -> new UserMessageSender(myName,printer,mat));
     }
 
+    /**
+     * the reliable texts to one receiver
+     */
+    static private class Peer {
+        public final String name;
+        public final TreeMap<Long,Pending> pending; //id -> text that not acked yet
+        public final ArrayDeque<String> waiting; //texts that wait for place in pending
+        public long nextId;
+        public Peer(String name){
+            this.name = name;
+            this.pending = new TreeMap<>();
+            this.waiting = new ArrayDeque<>();
+            this.nextId = 1;
+        }
+    }
+
+    /**
+     * text that not acked, it is also the key of its redelivery timer
+     */
+    static private class Pending {
+        public final String msg;
+        public int attempts;
+        public Pending(String msg){this.msg = msg;}
+    }
+
+    static private class Redeliver {
+        public final ActorRef to;
+        public final long id;
+        public Redeliver(ActorRef to, long id){
+            this.to = to;
+            this.id = id;
+        }
+    }
+
     private final String myName;
     private final ActorRef printer;
     private final Materializer mat;
+    private final boolean reliable;
+    private final Duration backoffMin;
+    private final Duration backoffMax;
+    private final int maxAttempts;
+    private final int maxPending;
+    private final long epoch; //new for each connect, so the receiver know the ids start again
+    private final HashMap<ActorRef,Peer> peers; //receiver ref -> his texts
 
     public UserMessageSender(String myName,ActorRef printer, Materializer mat){
         super("messageSender");
+        Config conf = getContext().getSystem().settings().config().getConfig("whatsapp.texts");
         this.myName = myName;
         this.printer = printer;
         this.mat = mat;
-
+        this.reliable = conf.getBoolean("reliable");
+        this.backoffMin = conf.getDuration("backoff-min");
+        this.backoffMax = conf.getDuration("backoff-max");
+        this.maxAttempts = conf.getInt("max-attempts");
+        this.maxPending = Math.min(conf.getInt("max-pending"),DedupWindow.SIZE);
+        this.epoch = System.currentTimeMillis();
+        this.peers = new HashMap<>();
     }
     /**
      * @return Receive how handle:
      *  - user text/file commends
+     *  - reliable texts acks and redelivery
      */
     public Receive createReceive(){
         return receiveBuilder()
-                .match(UserTextInput.class, m ->
-                        getSender().tell(new TextMessage(myName,m.msg),getSelf()))
+                .match(UserTextInput.class,this::textHandler)
+                .match(TextAckMessage.class,this::ackHandler)
+                .match(Redeliver.class,this::redeliverHandler)
                 .match(UserFileInput.class,this::sendFileHandler )
                 .build();
     }
 
+    /**
+     * send the text to the receiver (the sender of the commend)
+     * @param m: parsed text commend
+     */
+    private void textHandler(UserTextInput m){
+        if(!reliable) {
+            getSender().tell(new TextMessage(myName,m.msg),getSelf());
+            return;
+        }
+        Peer peer = peers.computeIfAbsent(getSender(),r -> new Peer(m.toUser));
+        peer.waiting.add(m.msg);
+        sendWaiting(getSender(),peer);
+    }
+
+    /**
+     * move the waiting texts to pending and send them, while the pending ids are in the window
+     */
+    private void sendWaiting(ActorRef to,Peer peer){
+        while(!peer.waiting.isEmpty() && (peer.pending.isEmpty() || peer.nextId - peer.pending.firstKey() < maxPending)) {
+            long id = peer.nextId++;
+            Pending p = new Pending(peer.waiting.poll());
+            peer.pending.put(id,p);
+            send(to,id,p);
+        }
+    }
+
+    /**
+     * send the text and schedule its redelivery, the backoff is doubled on each attempt
+     */
+    private void send(ActorRef to,long id,Pending p){
+        p.attempts++;
+        to.tell(new TextMessage(myName,p.msg,epoch,id),getSelf());
+        long backoff = Math.min(backoffMax.toMillis(),backoffMin.toMillis() << Math.min(p.attempts - 1,20));
+        getTimers().startSingleTimer(p,new Redeliver(to,id),Duration.ofMillis(backoff));
+    }
+
+    private void ackHandler(TextAckMessage m){
+        Peer peer = peers.get(getSender());
+        if(m.epoch != epoch || peer == null)
+            return;
+        Pending p = peer.pending.remove(m.id);
+        if(p == null)
+            return;
+        getTimers().cancel(p);
+        sendWaiting(getSender(),peer);
+    }
+
+    /**
+     * send the text again, or give up after 'max-attempts' sends
+     * @param m: Redeliver with the receiver and text id
+     */
+    private void redeliverHandler(Redeliver m){
+        Peer peer = peers.get(m.to);
+        Pending p = peer == null ? null : peer.pending.get(m.id);
+        if(p == null)
+            return;
+        if(p.attempts >= maxAttempts) {
+            peer.pending.remove(m.id);
+            logAndTell(printer,String.format("the message to %s was not delivered: %s",peer.name,p.msg),null);
+            sendWaiting(m.to,peer);
+            return;
+        }
+        logDebug("text {} to {} not acked, send again",m.id,peer.name);
+        send(m.to,m.id,p);
+    }
+
     /**
      * this function handle the user file sending
-     * if the file exist a message with sourceRef of the file will sent to the target
+     * if the file exist a FileTransfer actor is created to send the file to the target in resumable chunks
      * otherwise an error message will be printed
      * @param m
      */
     private void sendFileHandler(UserFileInput m){
         if(util.fileExsits(m.filePath)) {
             Path path = Paths.get(m.filePath);
-            String fileName = path.getFileName().toString();
-            Source<ByteString, CompletionStage<IOResult>> fileStream = FileIO.fromPath(path);
-            CompletionStage<SourceRef<ByteString>> fileRef = fileStream.runWith(StreamRefs.sourceRef(), mat);
-            Patterns.pipe(fileRef.thenApply(s -> new FileMessage(myName, fileName, s)), context().dispatcher())
-                    .to(getSender()).future();
+            getContext().actorOf(FileTransfer.props(myName,path,getSender(),printer,mat));
         }
         else {
             logAndTell(printer,String.format("%s does not exist!",m.filePath),null);
         }
     }
 }
-
@@ -6,28 +6,37 @@ import akka.stream.ActorMaterializer;
 import akka.stream.Materializer;
 import akka.stream.SourceRef;
 import akka.stream.javadsl.*;
+import com.typesafe.config.Config;
 import controllers.logging.AbstractLogActorWithTimers;
-import controllers.protocols.ClientServerProtocol.*;
-import scala.concurrent.Await;
-import scala.concurrent.Future;
+import com.akka.protocols.ClientServerProtocol.*;
 import controllers.IO.InputParser.*;
 import controllers.Groups.GroupsActor;
 import controllers.InputActor.*;
-import scala.concurrent.duration.Duration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.HashSet;
+import java.util.List;
 
 /**
  * this actor class manage the active users list and the basic communication with the server such as:
  * - add/remove active users from the list
  * - connect/disconnect operations
+ * the connect/disconnect never block the actor, the server answers are piped to the actor
+ * and unanswered request is sent again after backoff, up to 'max-retries' times.
+ * the active users list and its presence version are kept after disconnect, so on the next connect
+ * the server send only the changes since this version (when it still has them).
+ * after watch commend the active users list has only the watched users, and the server send only their changes.
  */
 public class UsersActor extends AbstractLogActorWithTimers {
     private final Receive preConnect;
+    private final Receive connecting;
     private final Receive active;
+    private final Receive disconnectRequested;
     private final Receive disconnecting;
-    static Materializer mat;
+    private final Materializer mat;
     private String myName;
     final ActorPath serverPath;
     private final ActorRef printer;
@@ -36,8 +45,44 @@ public class UsersActor extends AbstractLogActorWithTimers {
     private final ActorRef messageReseiver;
     private final ActorRef inputActor;
     private  ActorRef groups;
-    private long maxServerResposeTime;
+    private final Duration maxServerResposeTime;
+    private final int maxRetries;
+    private final Duration backoffMin;
+    private final Duration backoffMax;
     private final HashMap<String, ActorRef> activeUsers;
+    private String connectName; //the name in the connect request
+    private int attempt; //connect/disconnect request attempt, answers of old attempts are ignored
+    private long presenceEpoch; //the presence version of activeUsers, -1 if activeUsers is not complete
+    private long presenceVersion;
+    private final List<PresenceDeltaMessage> pendingDeltas; //deltas that arrived while the active users are loaded
+    private HashSet<String> interest; //the watched users, null for all the users
+
+    /**
+     * the server answer to connect request
+     */
+    static private class ConnectAnswer {
+        public final int attempt;
+        public final Object answer;
+        public ConnectAnswer(int attempt, Object answer){
+            this.attempt = attempt;
+            this.answer = answer;
+        }
+    }
+
+    /**
+     * no answer from the server to the request of attempt
+     */
+    static private class RequestTimeout {
+        public final int attempt;
+        public RequestTimeout(int attempt){this.attempt = attempt;}
+    }
+
+    static private class Retry{}
+
+    /**
+     * the active users from the connect answer are loaded
+     */
+    static private class ActiveUsersLoaded{}
 
     static public Props props(ActorPath serverPath, ActorRef input_actor,ActorRef printer) {
         return Props.create(UsersActor.class, () -> new UsersActor(serverPath, input_actor,printer));
@@ -47,18 +92,27 @@ public class UsersActor extends AbstractLogActorWithTimers {
         super("usersActor");
         this.serverPath = serverPath;
         this.preConnect = createPreConnect();
+        this.connecting = createConnecting();
         this.active = createActive();
+        this.disconnectRequested = createDisconnectRequested();
         this.disconnecting = createDisconnecting();
 
         this.printer = printer;
         this.activeUsers = new HashMap<>();
-        mat = ActorMaterializer.create(getContext());///////////////////////////////////////////////////////////////////////////
+        this.presenceEpoch = 0;
+        this.presenceVersion = -1;
+        this.pendingDeltas = new ArrayList<>();
+        mat = ActorMaterializer.create(getContext()); //per session, stopped with the session actors
 
         this.inputActor = input_actor;
         this.messageReseiver = getContext().actorOf(MessageReceiver.props(this.inputActor,this.printer,mat),"messageReseiver");
 
         this.myName = null;
-        maxServerResposeTime = 5000;
+        Config conf = getContext().getSystem().settings().config().getConfig("whatsapp.connect");
+        maxServerResposeTime = conf.getDuration("timeout");
+        maxRetries = conf.getInt("max-retries");
+        backoffMin = conf.getDuration("backoff-min");
+        backoffMax = conf.getDuration("backoff-max");
 
     }
 
@@ -71,25 +125,72 @@ public class UsersActor extends AbstractLogActorWithTimers {
      * this function return Receive that used before the user is connected
      * @return Receive how handle:
      *  - connect commend
+     *  - watch/unwatch commends, they are sent to the server with the connect
      */
     private Receive createPreConnect(){
         return receiveBuilder().match(ConnectInput.class,input ->{
             if(input.userName != null){
-                try {
-                    Future<Object> fut = Patterns.ask(getContext().actorSelection(this.serverPath.child("conn")),new ConnectMessage(input.userName,getSelf(),messageReseiver),maxServerResposeTime);
-                    Object ans = Await.result(fut, Duration.create(maxServerResposeTime, TimeUnit.MILLISECONDS));
-                    if (ans instanceof  ConnectedSuccessfullyMessage) {
-                        connectedSuccessfullyHandler((ConnectedSuccessfullyMessage)ans,input.userName);
-                    }
-                    else {
-                        this.inputActor.tell(new ConnectDenial(input.userName),null);
-                    }
-                }catch (Exception e){
-                    this.inputActor.tell(new ServerOffline(),null);
-                }
+                connectName = input.userName;
+                attempt = 0;
+                sendConnect();
+                getContext().become(connecting);
             }
 
-        }).build();
+        })
+                .match(WatchInput.class,m -> {
+                    if(watch(m.userNames))
+                        presenceVersion = -1; //the changes since the version don't have the users that were active before
+                })
+                .match(UnwatchInput.class,m -> unwatch(m.userNames))
+                .build();
+    }
+
+    /**
+     * this function return Receive that used while waiting to the server answer to connect
+     * @return Receive how handle:
+     *  - the server answer
+     *  - timeout and retry of the connect request
+     *  - the end of the active users loading
+     *  - presence deltas, they are applied after the active users are loaded
+     */
+    private Receive createConnecting(){
+        return receiveBuilder()
+                .match(ConnectAnswer.class,m -> m.attempt == attempt,this::connectAnswerHandler)
+                .match(RequestTimeout.class,m -> m.attempt == attempt,m -> retryOrGiveUp(() -> {
+                    this.inputActor.tell(new ServerOffline(),null);
+                    pendingDeltas.clear();
+                    getContext().become(preConnect);
+                }))
+                .match(Retry.class,m -> sendConnect())
+                .match(ActiveUsersLoaded.class,m -> activeUsersLoadedHandler())
+                .match(Status.Failure.class,m -> { //the rest of the users come with the presence updates
+                    logDebug("loading active users failed: {}",m.cause().getMessage());
+                    presenceVersion = -1; //the next connect load all of them
+                    activeUsersLoadedHandler();
+                })
+                .match(AddUserMessage.class,this::addUserHandler)
+                .match(PresenceDeltaMessage.class,pendingDeltas::add)
+                .build();
+    }
+
+    /**
+     * this function return Receive that used while waiting to the server approve to disconnect
+     * @return Receive how handle:
+     *  - the server approve ("yes")
+     *  - timeout and retry of the disconnect request
+     */
+    private Receive createDisconnectRequested(){
+        return receiveBuilder()
+                .matchEquals("yes",m -> disconnectApprovedHandler())
+                .match(RequestTimeout.class,m -> m.attempt == attempt,m -> retryOrGiveUp(() -> {
+                    logAndTell(printer,"server is offline! try again later!",null);
+                    getContext().become(active);
+                }))
+                .match(Retry.class,m -> sendDisconnect())
+                .match(AddUserMessage.class,this::addUserHandler)
+                .match(SomeoneLeaveMessage.class,this::removeUserHandler)
+                .match(PresenceDeltaMessage.class,this::presenceDeltaHandler)
+                .build();
     }
 
     /**
@@ -97,16 +198,27 @@ public class UsersActor extends AbstractLogActorWithTimers {
      * @return Receive how handle:
      *  - user text/file commends
      *  - group invite commend
+     *  - watch/unwatch commends
      *  - add/remove active users that send by the server
      */
     private Receive createActive(){
         return receiveBuilder()
-                .match(UserTextInput.class,this::checkAndForwardToUserSender)
+                .match(UserTextInput.class,this::userTextHandler)
                 .match(UserFileInput.class,this::checkAndForwardToUserSender)
                 .match(GroupInviteInput.class,this::groupInviteHandler)
+                .match(WatchInput.class,m -> {
+                    watch(m.userNames);
+                    logAndTell(serverRef,new PresenceInterestMessage(myName,m.userNames,null),getSelf());
+                })
+                .match(UnwatchInput.class,m -> {
+                    if(unwatch(m.userNames))
+                        logAndTell(serverRef,new PresenceInterestMessage(myName,null,m.userNames),getSelf());
+                })
                 .match(DisconnectInput.class, m -> disconnectHandler())
                 .match(AddUserMessage.class,this::addUserHandler)
                 .match(SomeoneLeaveMessage.class,this::removeUserHandler)
+                .match(PresenceDeltaMessage.class,this::presenceDeltaHandler)
+                .match(OfflineDenialMessage.class,m -> logAndTell(printer,String.format("%s has too many offline messages, try again later!",m.toUser),null))
                 .matchAny(o -> {
                     printer.tell("input error: no match",null);
                     logDebug("input error: no match to {} from {}",o,getSender().path().name());
@@ -127,14 +239,13 @@ public class UsersActor extends AbstractLogActorWithTimers {
     }
 
     /**
-     * this function inform inputActor that the user indeed disconnected,
-     * cleanup activeUsers list and print disconnected message
+     * this function inform inputActor that the user indeed disconnected and print disconnected message.
+     * activeUsers is kept with its presence version for the next connect.
      */
     private void disconnectFinishedHandler(){
         logAndTell(inputActor,new InputActor.DisconnMsg(),null);
         String msg = String.format("%s has been disconnected successfully!",myName);
         logAndTell(printer,msg,null);
-        activeUsers.clear();
         myName = null;
         getContext().become(preConnect);
     }
@@ -142,15 +253,12 @@ public class UsersActor extends AbstractLogActorWithTimers {
     /**
      * fill the active user list with the users from the source ref
      * given by the server.
+     * the users are sent to this actor and ActiveUsersLoaded is sent after the last user,
+     * so the active users list is changed only by the actor.
      * @param sr: sourceRef of active user names and there message receiver ActorRef
      */
     private void initActiveUsershHandler(SourceRef<AddUserMessage> sr){
-        sr.getSource().runWith(Sink.foreach(this::addUserHandler),mat)
-                .thenRun(() -> {
-                    getContext().become(this.active);
-                    logger.debug("become active");
-                    inputActor.tell(new ConnectApproved(this.myName,this.groups),null);
-                });
+        sr.getSource().runWith(Sink.actorRef(getSelf(),new ActiveUsersLoaded()),mat);
     }
 
     /**
@@ -158,7 +266,8 @@ public class UsersActor extends AbstractLogActorWithTimers {
      * @param user
      */
     private void addUserHandler(AddUserMessage user){
-
+        if(!watched(user.userName))
+            return;
         activeUsers.put(user.userName,user.ref);
         logDebug("add {} to active users",user.userName);
     }
@@ -172,6 +281,40 @@ public class UsersActor extends AbstractLogActorWithTimers {
         logDebug("add {} to active users",user.userName);
     }
 
+    /**
+     * apply batch of active users changes from the server.
+     * the removes applied before the adds, and the user himself is ignored.
+     * @param delta: PresenceDeltaMessage with added users and removed user names
+     */
+    private void presenceDeltaHandler(PresenceDeltaMessage delta){
+        for(String userName : delta.removed)
+            activeUsers.remove(userName);
+        for(AddUserMessage user : delta.added)
+            if(!user.userName.equals(myName) && watched(user.userName))
+                activeUsers.put(user.userName,user.ref);
+        if(presenceVersion >= 0)
+            presenceVersion = delta.version;
+        logDebug("presence delta: {} added, {} removed",delta.added.length,delta.removed.length);
+    }
+
+    /**
+     * this function handle user text commend.
+     * if the target exist in active users the message forward to userSender,
+     * otherwise the message sent to the server and will be delivered when the target connect.
+     * @param m: parsed text commend
+     */
+    private void userTextHandler(UserTextInput m){
+        if(activeUsers.containsKey(m.toUser))
+            checkAndForwardToUserSender(m);
+        else {
+            //the server deliver it now if the user is active
+            getContext().actorSelection(serverPath.child("conn")).tell(new OfflineTextMessage(myName,m.toUser,m.msg),getSelf());
+            if(watched(m.toUser))
+                logAndTell(printer,String.format("%s is offline, the message will be delivered when he connect",m.toUser),null);
+            else
+                logAndTell(printer,String.format("%s is not watched, the message sent through the server",m.toUser),null);
+        }
+    }
 
     /**
      * this function handle group invite commend.
@@ -185,7 +328,7 @@ public class UsersActor extends AbstractLogActorWithTimers {
         if(to_ref != null)
             groups.tell(m,to_ref);
         else
-            printer.tell(String.format("%s does not exist!",m.toUser),null);
+            printer.tell(notActive(m.toUser),null);
     }
 
     /**
@@ -193,6 +336,7 @@ public class UsersActor extends AbstractLogActorWithTimers {
      *  * she set the user name.
      *  * create userSender and groups actors.
      *  * inform messageReseiver actor about the new name
+     *  * update the active users with the changes in the answer, or load them all from the snapshot source
      * -
      * @param m: ConnectedSuccessfullyMessage
      * @param userName: approved user name
@@ -204,28 +348,104 @@ public class UsersActor extends AbstractLogActorWithTimers {
         this.groups = getContext().actorOf(GroupsActor.props(myName,this.serverRef,printer,mat),"groups");
         this.messageReseiver.tell(myName,null);
 
-        initActiveUsershHandler(m.sorceSupp);
+        presenceEpoch = m.epoch;
+        presenceVersion = m.version;
+        if(m.sync != null) {
+            activeUsers.remove(myName);
+            presenceDeltaHandler(m.sync);
+            activeUsersLoadedHandler();
+        }
+        else {
+            activeUsers.clear();
+            initActiveUsershHandler(m.sorceSupp);
+        }
+    }
+
+    /**
+     * apply the deltas that arrived while loading and are newer than the loaded version, and become active
+     */
+    private void activeUsersLoadedHandler(){
+        long loaded = presenceVersion;
+        for(PresenceDeltaMessage delta : pendingDeltas)
+            if(loaded < 0 || delta.version < 0 || delta.version > loaded)
+                presenceDeltaHandler(delta);
+        pendingDeltas.clear();
+        getContext().become(this.active);
+        logger.debug("become active");
+        inputActor.tell(new ConnectApproved(this.myName,this.groups),null);
     }
 
     /**
      *  * this function handle the first step to disconnect
      *  at first a message is send to server th inform about the disconnecting
-     *  if server is offline all the operation faild
-     *  otherwise PoisonPill is send to group and userSender, and DisconnMsg is send to messageReseiver.
-     *  then group is been watch and UserActor become disconnecting
+     *  and the actor wait to the server approve, if server is offline all the operation faild
      */
     private void disconnectHandler(){
-        if(Patterns.ask(serverRef,new DisconnectMessage(myName), java.time.Duration.ofMillis(maxServerResposeTime)).toCompletableFuture().isCompletedExceptionally())
-            logAndTell(printer,"server is offline! try again later!",null);
+        attempt = 0;
+        sendDisconnect();
+        getContext().become(disconnectRequested);
+    }
+
+    /**
+     * the server approved the disconnect
+     * PoisonPill is send to group and userSender, and DisconnMsg is send to messageReseiver.
+     * then group is been watch and UserActor become disconnecting
+     */
+    private void disconnectApprovedHandler(){
+        getTimers().cancel(RequestTimeout.class);
+        getContext().watch(groups);
+        logAndTell(groups, PoisonPill.getInstance(), null);
+        logAndTell(userSender,PoisonPill.getInstance(),null);
+        logAndTell(messageReseiver,new MessageReceiver.DisconnMsg(),null);
+        getContext().become(disconnecting);
+    }
+
+    /**
+     * ask the server registry to connect, the answer or the timeout is piped to this actor
+     */
+    private void sendConnect(){
+        final int a = ++attempt;
+        Patterns.ask(getContext().actorSelection(this.serverPath.child("conn")),new ConnectMessage(connectName,getSelf(),messageReseiver,presenceEpoch,presenceVersion,
+                interest == null ? null : interest.toArray(new String[0])),maxServerResposeTime)
+                .handle((ans,e) -> e == null ? new ConnectAnswer(a,ans) : new RequestTimeout(a))
+                .thenAccept(m -> getSelf().tell(m,ActorRef.noSender()));
+    }
+
+    /**
+     * the server answer "yes" to this actor, so the timeout is a timer
+     */
+    private void sendDisconnect(){
+        final int a = ++attempt;
+        logAndTell(serverRef,new DisconnectMessage(myName),getSelf());
+        getTimers().startSingleTimer(RequestTimeout.class,new RequestTimeout(a),maxServerResposeTime);
+    }
+
+    private void connectAnswerHandler(ConnectAnswer m){
+        if (m.answer instanceof ConnectedSuccessfullyMessage) {
+            connectedSuccessfullyHandler((ConnectedSuccessfullyMessage)m.answer,connectName);
+        }
         else {
-            getContext().watch(groups);
-            logAndTell(groups, PoisonPill.getInstance(), null);
-            logAndTell(userSender,PoisonPill.getInstance(),null);
-            logAndTell(messageReseiver,new MessageReceiver.DisconnMsg(),null);
-            getContext().become(disconnecting);
+            this.inputActor.tell(new ConnectDenial(connectName),null);
+            pendingDeltas.clear();
+            getContext().become(preConnect);
         }
     }
 
+    /**
+     * send the request again after backoff, the backoff is doubled on each attempt.
+     * @param giveUp: called after 'max-retries' retries
+     */
+    private void retryOrGiveUp(Runnable giveUp){
+        if(attempt > maxRetries) {
+            logDebug("no answer from the server after {} attempts",attempt);
+            giveUp.run();
+            return;
+        }
+        long backoff = Math.min(backoffMax.toMillis(),backoffMin.toMillis() << (attempt - 1));
+        logDebug("no answer from the server, retry in {} ms",backoff);
+        getTimers().startSingleTimer(Retry.class,new Retry(),Duration.ofMillis(backoff));
+    }
+
 
     ///////////////////////////////UTILS///////////////////////////////////////
     private void checkAndForwardToUserSender(UserInput m){
@@ -245,7 +465,48 @@ public class UsersActor extends AbstractLogActorWithTimers {
         if(toRef != null)
             logAndTell(ref,m,toRef);
         else
-            logAndTell(printer,String.format("%s does not exist!",m.toUser),null);
+            logAndTell(printer,notActive(m.toUser),null);
+    }
+
+    private String notActive(String userName){
+        if(watched(userName))
+            return String.format("%s does not exist!",userName);
+        return String.format("%s is not watched, use: user watch %s",userName,userName);
+    }
+
+    /**
+     * @return true if the presence of the user is tracked
+     */
+    private boolean watched(String userName){
+        return interest == null || interest.contains(userName);
+    }
+
+    /**
+     * add users to the watched users, the first watch drop all the other users from the active users
+     * @return true if some user was not watched before
+     */
+    private boolean watch(String[] userNames){
+        if(interest == null) {
+            interest = new HashSet<>();
+            activeUsers.keySet().retainAll(Arrays.asList(userNames));
+        }
+        return interest.addAll(Arrays.asList(userNames));
+    }
+
+    /**
+     * remove users from the watched users, without watched users all the users are tracked and there is nothing to remove
+     * @return false if there are no watched users
+     */
+    private boolean unwatch(String[] userNames){
+        if(interest == null) {
+            logAndTell(printer,"all the users are watched, use: user watch <names> to watch only some of them",null);
+            return false;
+        }
+        for(String userName : userNames) {
+            interest.remove(userName);
+            activeUsers.remove(userName);
+        }
+        return true;
     }
 }
 
@@ -0,0 +1,153 @@
+package controllers.bench;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorPath;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamRefs;
+import com.typesafe.config.ConfigFactory;
+import controllers.IO.InputParser.ConnectInput;
+import controllers.InputActor;
+import com.akka.protocols.ClientServerProtocol.*;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * connect many sessions at once to slow server and measure the default dispatcher latency meanwhile.
+ * the server is a stub 'conn' actor in the same system that answer each connect after delay,
+ * with 'drop' it ignore the first connect of each user so every session retry once.
+ * with 'late' it answer the first connect of each user only after the client timeout ('whatsapp.connect.timeout'),
+ * so every session retry while the server already connected it, the stub answer connect of known user
+ * like the server: success again for the same mainRef and ConnectedFailedMessage for other mainRef,
+ * all the sessions should connect and none should be denied.
+ * the probe actor get ping every 10 ms and record the time from the send to the receive,
+ * blocked dispatcher threads (like Await in the actors) show up as long probe latency.
+ * usage: ConnectLoadBench [sessions (default 10000)] [server delay ms (default 2000)] [drop|late]
+ */
+public class ConnectLoadBench {
+    static private final ActorPath SERVER_PATH = ActorPath.fromString("akka://client/user/");
+    static private CountDownLatch connected;
+    static private final AtomicInteger denied = new AtomicInteger();
+
+    /**
+     * server stub that approve each connect after delay
+     */
+    static public class SlowServer extends AbstractActor {
+        private final Duration delay;
+        private final String mode; //"drop", "late" or ""
+        private final Duration timeout; //the client connect timeout
+        private final Materializer mat;
+        private final HashMap<String,ActorRef> seen; //user name -> mainRef of his first connect
+
+        public SlowServer(Duration delay, String mode){
+            this.delay = delay;
+            this.mode = mode;
+            this.timeout = getContext().getSystem().settings().config().getDuration("whatsapp.connect.timeout");
+            this.mat = ActorMaterializer.create(getContext());
+            this.seen = new HashMap<>();
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().match(ConnectMessage.class, m -> {
+                ActorRef known = seen.putIfAbsent(m.senderName, m.mainRef);
+                if(mode.equals("drop") && known == null)
+                    return;
+                if(known != null && !known.equals(m.mainRef)) {
+                    getSender().tell(new ConnectedFailedMessage(), getSelf());
+                    return;
+                }
+                Duration wait = mode.equals("late") && known == null ? timeout.plus(delay) : delay;
+                ActorRef self = getSelf();
+                Patterns.pipe(Patterns.after(wait, getContext().getSystem().scheduler(), getContext().dispatcher(),
+                        () -> Source.<AddUserMessage>empty().runWith(StreamRefs.sourceRef(), mat)
+                                .thenApply(ref -> new ConnectedSuccessfullyMessage(self, ref))),
+                        getContext().dispatcher()).to(getSender());
+            }).build();
+        }
+    }
+
+    /**
+     * printer that count the connected and the denied sessions
+     */
+    static public class CountingPrinter extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(String.class, s -> s.endsWith("has connected successfully!"), s -> connected.countDown())
+                    .match(String.class, s -> s.endsWith("is in use!"), s -> denied.incrementAndGet())
+                    .matchAny(m -> {}).build();
+        }
+    }
+
+    static public class Probe extends AbstractActor {
+        private final long[] latencies;
+        private int count;
+
+        public Probe(long[] latencies){
+            this.latencies = latencies;
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().match(Long.class, sent -> {
+                if(count < latencies.length)
+                    latencies[count++] = System.nanoTime() - sent;
+            }).matchEquals("count", m -> getSender().tell(count, getSelf())).build();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Duration delay = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 2000);
+        String mode = args.length > 2 ? args[2] : "";
+        connected = new CountDownLatch(sessions);
+        ActorSystem system = ActorSystem.create("client", ConfigFactory.load());
+        system.actorOf(Props.create(SlowServer.class, () -> new SlowServer(delay, mode)), "conn");
+        long[] latencies = new long[100000];
+        ActorRef probe = system.actorOf(Props.create(Probe.class, () -> new Probe(latencies)), "probe");
+
+        ActorRef[] inputs = new ActorRef[sessions];
+        for(int i = 0; i < sessions; i++) {
+            inputs[i] = system.actorOf(InputActor.props(SERVER_PATH), String.format("session-%d", i));
+            inputs[i].tell(system.actorOf(Props.create(CountingPrinter.class), String.format("session-%d-printer", i)), ActorRef.noSender());
+        }
+        Thread.sleep(1000); //let the sessions start
+
+        long start = System.nanoTime();
+        for(int i = 0; i < sessions; i++)
+            inputs[i].tell(new ConnectInput(String.format("user%d", i)), ActorRef.noSender());
+        long deadline = start + TimeUnit.SECONDS.toNanos(120);
+        while(connected.getCount() > denied.get() && System.nanoTime() < deadline) {
+            probe.tell(System.nanoTime(), ActorRef.noSender());
+            Thread.sleep(10);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int probes = (Integer) Patterns.ask(probe, "count", Duration.ofSeconds(10)).toCompletableFuture().get();
+
+        long[] sorted = Arrays.copyOf(latencies, probes);
+        Arrays.sort(sorted);
+        String note = mode.equals("drop") ? ", first connect dropped" : mode.equals("late") ? ", first connect answered late" : "";
+        System.out.println(String.format("%,d of %,d sessions connected, %,d denied in %,d ms (server delay %d ms%s)",
+                sessions - connected.getCount(), sessions, denied.get(), elapsed, delay.toMillis(), note));
+        if(probes > 0)
+            System.out.println(String.format("dispatcher probe: %,d pings, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    probes, millis(sorted[probes / 2]), millis(sorted[probes * 99 / 100]), millis(sorted[probes - 1])));
+
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    static private double millis(long nanos){
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,85 @@
+package controllers.bench;
+
+import controllers.IO.CommandDecoder;
+import controllers.IO.InputParser;
+import controllers.IO.InputParser.IllegalInput;
+import java.lang.management.ManagementFactory;
+
+/**
+ * compare the parsing of the websocket commands: the text commands with InputParser
+ * and the same commands as JSON with CommandDecoder.
+ * for each command print the time and the allocated bytes of one parse, and of the mix of all the commands.
+ * usage: ParserBench [iterations (default 1000000)]
+ */
+public class ParserBench {
+    static private final String[][] COMMANDS = {
+            {"text", "user text bob see you at 8, don't be late", "[\"text\",\"bob\",\"see you at 8, don't be late\"]"},
+            {"file", "user file bob /tmp/files/video.mp4", "[\"file\",\"bob\",\"/tmp/files/video.mp4\"]"},
+            {"connect", "user connect alice", "[\"connect\",\"alice\"]"},
+            {"yes", "yes", "[\"yes\"]"},
+            {"group text", "group send text friends see you at 8, don't be late", "[\"group.text\",\"friends\",\"see you at 8, don't be late\"]"},
+            {"group invite", "group user invite friends bob", "[\"group.invite\",\"friends\",\"bob\"]"},
+            {"group mute", "group user mute friends bob 30", "[\"group.mute\",\"friends\",\"bob\",30]"},
+            {"coadmin add", "group coadmin add friends bob", "[\"group.coadmin.add\",\"friends\",\"bob\"]"}};
+
+    interface Parser {
+        Object parse(String command);
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        CommandDecoder decoder = new CommandDecoder();
+        Parser text = InputParser::parseInput;
+        Parser json = decoder::decode;
+        for(String[] c : COMMANDS) { //the two parsers must agree
+            Object t = text.parse(c[1]), j = json.parse(c[2]);
+            if(t instanceof IllegalInput || t.getClass() != j.getClass())
+                throw new IllegalStateException(String.format("%s: %s != %s", c[0], t, j));
+        }
+
+        for(int round = 0; round < 2; round++) { //the first round is warmup
+            boolean print = round == 1;
+            for(String[] c : COMMANDS) {
+                report(print, c[0], "text", iterations, measure(iterations, text, c[1]));
+                report(print, c[0], "json", iterations, measure(iterations, json, c[2]));
+            }
+            report(print, "mix", "text", iterations, measure(iterations / COMMANDS.length, text, column(1)));
+            report(print, "mix", "json", iterations, measure(iterations / COMMANDS.length, json, column(2)));
+        }
+    }
+
+    static private String[] column(int i){
+        String[] res = new String[COMMANDS.length];
+        for(int c = 0; c < COMMANDS.length; c++)
+            res[c] = COMMANDS[c][i];
+        return res;
+    }
+
+    /**
+     * @param rounds: each round parse all the commands once
+     * @return {nanos, allocated bytes}
+     */
+    static private long[] measure(int rounds, Parser parser, String... commands){
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        int check = 0;
+        for(int i = 0; i < rounds; i++)
+            for(String command : commands)
+                check += parser.parse(command) == null ? 1 : 0;
+        long nanos = System.nanoTime() - start;
+        if(check != 0) //keep the results alive
+            System.out.println("null result");
+        return new long[]{nanos, allocatedBytes() - allocated};
+    }
+
+    static private long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static private void report(boolean print, String command, String parser, int iterations, long[] result){
+        if(print)
+            System.out.println(String.format("%-12s %-4s %,7d ns/op %,7d bytes allocated/op",
+                    command, parser, result[0] / iterations, result[1] / iterations));
+    }
+}
@@ -0,0 +1,84 @@
+package controllers.bench;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorPath;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.typesafe.config.ConfigFactory;
+import controllers.InputActor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measure the startup time, heap and threads of browser sessions:
+ * 'shared' create the sessions in one actor system (ClientSystem),
+ * 'systems' create actor system for each session (the old HomeController).
+ * session is InputActor with UsersActor and its children, before connect to the server
+ * (the printer is dummy actor instead of websocket).
+ * usage: SessionsBench [shared|systems] [sessions (default 1000 shared, 50 systems)]
+ */
+public class SessionsBench {
+    static private final ActorPath SERVER_PATH = ActorPath.fromString("akka.tcp://systemServer@127.0.0.1:3553/user/");
+
+    /**
+     * printer that ignore the session output
+     */
+    static public class NullPrinter extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().matchAny(m -> {}).build();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean shared = args.length == 0 || args[0].equals("shared");
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : (shared ? 1000 : 50);
+        long heapBefore = usedHeap();
+        int threadsBefore = Thread.activeCount();
+        long start = System.nanoTime();
+
+        List<ActorSystem> systems = new ArrayList<>();
+        if(shared) {
+            ActorSystem system = ActorSystem.create("client", ConfigFactory.load());
+            systems.add(system);
+            for(int i = 0; i < sessions; i++)
+                startSession(system, String.format("session-%d", i));
+        }
+        else {
+            for(int i = 0; i < sessions; i++) {
+                ActorSystem system = ActorSystem.create(String.format("sys%d", i), ConfigFactory.load());
+                systems.add(system);
+                startSession(system, "session-0");
+            }
+        }
+        long startMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Thread.sleep(2000); //let the session actors start
+        long heap = usedHeap() - heapBefore;
+        int threads = Thread.activeCount() - threadsBefore;
+
+        System.out.println(String.format("%s: %,d sessions started in %,d ms", shared ? "shared system" : "system per session", sessions, startMillis));
+        System.out.println(String.format("heap %,d KB (%,d KB/session), %,d threads", heap >> 10, (heap / sessions) >> 10, threads));
+        System.out.println(String.format("sessions per GB: %,d", heap <= 0 ? 0 : (1L << 30) * sessions / heap));
+
+        for(ActorSystem system : systems)
+            system.terminate();
+        for(ActorSystem system : systems)
+            system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    static private void startSession(ActorSystem system, String name){
+        ActorRef inputActor = system.actorOf(InputActor.props(SERVER_PATH), name);
+        inputActor.tell(system.actorOf(Props.create(NullPrinter.class), name + "-printer"), ActorRef.noSender());
+    }
+
+    static private long usedHeap() throws InterruptedException {
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,201 @@
+package controllers.loadgen;
+
+import akka.actor.ActorPath;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import controllers.ClientSystem;
+import controllers.InputActor;
+import controllers.loadgen.LoadStats.Event;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * headless load generator, simulate many users of the client in one actor system (like ClientSystem)
+ * against running server. each user is a real session (InputActor, UsersActor, GroupsActor...)
+ * with SimPrinter instead of websocket, and the scenario send it the web page commands.
+ * see Scenario for the scenario format and conf/loadgen for the built in scenarios
+ * (connect-storm, chat, group-broadcast, file-fanout).
+ * usage: LoadGenerator <scenario name or file> [users (override the scenario)] [directory for .hgrm files]
+ */
+public class LoadGenerator {
+    private final ActorSystem system;
+    private final ActorPath serverPath;
+    private final LoadStats stats;
+    private final List<SimUser> users;
+    private final int usersOverride;
+    private final Map<Event, Long> awaited; //events that already awaited
+    private final List<Path> files;
+    private Path file; //the last mkfile
+    private int rate;
+    private long rateStart;
+    private long rateSent;
+
+    public LoadGenerator(ActorSystem system, int usersOverride){
+        this.system = system;
+        this.serverPath = ClientSystem.serverPath(system.settings().config());
+        this.stats = new LoadStats();
+        this.users = new ArrayList<>();
+        this.usersOverride = usersOverride;
+        this.awaited = new EnumMap<>(Event.class);
+        this.files = new ArrayList<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length == 0) {
+            System.out.println("usage: LoadGenerator <scenario name or file> [users] [directory for .hgrm files]");
+            return;
+        }
+        Scenario scenario = Scenario.load(args[0]);
+        int usersOverride = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        Config conf = ConfigFactory.parseString("akka.loglevel = WARNING").withFallback(ConfigFactory.load());
+        ActorSystem system = ActorSystem.create("client", conf);
+        LoadGenerator gen = new LoadGenerator(system, usersOverride);
+        try {
+            gen.run(scenario);
+            gen.stats.summary(System.out);
+            if(args.length > 2)
+                gen.stats.writeDistributions(args[2]);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(1, TimeUnit.MINUTES);
+            for(Path f : gen.files)
+                Files.deleteIfExists(f);
+        }
+    }
+
+    public void run(Scenario scenario) throws Exception {
+        System.out.println(String.format("scenario %s, server %s", scenario.name, serverPath));
+        for(Scenario.Step step : scenario.steps) {
+            if(step instanceof Scenario.Send)
+                sendStep((Scenario.Send) step);
+            else
+                switch (step.verb) {
+                    case "users":
+                        startUsers(usersOverride > 0 ? usersOverride : Integer.parseInt(step.args[0]));
+                        break;
+                    case "rate":
+                        rate = Integer.parseInt(step.args[0]);
+                        break;
+                    case "pause":
+                        Thread.sleep(duration(step.args[0]).toMillis());
+                        break;
+                    case "mkfile":
+                        file = createFile(size(step.args[0]));
+                        break;
+                    case "await":
+                        awaitStep(step);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("line %d: unknown step %s", step.line, step.verb));
+                }
+        }
+    }
+
+    /**
+     * start the sessions, each session get its printer before it can get commands (like the websocket)
+     */
+    private void startUsers(int n){
+        if(!users.isEmpty())
+            throw new IllegalStateException("users already started");
+        for(int i = 0; i < n; i++) {
+            ActorRef inputActor = system.actorOf(InputActor.props(serverPath), String.format("session-%d", i));
+            SimUser user = new SimUser(i, inputActor);
+            inputActor.tell(system.actorOf(SimPrinter.props(user, stats), String.format("session-%d-printer", i)), ActorRef.noSender());
+            users.add(user);
+        }
+        System.out.println(String.format("%,d users started", n));
+    }
+
+    /**
+     * send the command to the users of the step, round by round when it repeated
+     */
+    private void sendStep(Scenario.Send step){
+        int from = step.from;
+        int to = step.to < 0 ? users.size() - 1 : Math.min(step.to, users.size() - 1);
+        long repeat = Scenario.eval(step.repeat, users.size());
+        stats.startStage();
+        rateStart = System.nanoTime();
+        rateSent = 0;
+        for(int k = 1; k <= repeat; k++)
+            for(int i = from; i <= to; i++) {
+                pace();
+                SimUser user = users.get(i);
+                user.send(expand(step.command, user.index, k));
+            }
+        System.out.println(String.format("line %d: sent %,d commands in %,d ms", step.line,
+                repeat * (to - from + 1), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - rateStart)));
+    }
+
+    /**
+     * wait for the events, on timeout the events that arrived are taken and the scenario continue
+     */
+    private void awaitStep(Scenario.Step step) throws InterruptedException {
+        Event e = Event.byName(step.args[0]);
+        long count = Scenario.eval(step.args[1], users.size());
+        Duration timeout = step.args.length > 2 ? duration(step.args[2]) : Duration.ofMinutes(1);
+        long target = awaited.getOrDefault(e, 0L) + count;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while(stats.count(e) < target && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        long got = Math.min(stats.count(e), target) - awaited.getOrDefault(e, 0L);
+        awaited.put(e, awaited.getOrDefault(e, 0L) + got);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stats.stageStart());
+        String title = got == count ? String.format("%s %,d in %,d ms", e.scenarioName(), count, elapsed)
+                : String.format("%s TIMEOUT %,d of %,d", e.scenarioName(), got, count);
+        stats.report(System.out, e, String.format("line %d: %s", step.line, title));
+    }
+
+    private void pace(){
+        if(rate <= 0)
+            return;
+        long sendAt = rateStart + rateSent++ * TimeUnit.SECONDS.toNanos(1) / rate;
+        long wait = sendAt - System.nanoTime();
+        if(wait > 0)
+            LockSupport.parkNanos(wait);
+    }
+
+    private String expand(String command, int i, int k){
+        if(command.indexOf('{') < 0)
+            return command;
+        String s = command
+                .replace("{i}", Integer.toString(i))
+                .replace("{next}", Integer.toString((i + 1) % users.size()))
+                .replace("{k}", Integer.toString(k))
+                .replace("{users}", Integer.toString(users.size()));
+        if(file != null)
+            s = s.replace("{file}", file.toString());
+        return s.replace("{now}", "@" + System.nanoTime());
+    }
+
+    private Path createFile(long size) throws Exception {
+        Path path = Files.createTempFile("loadgen-", ".bin");
+        byte[] buf = new byte[64 * 1024];
+        try(OutputStream out = Files.newOutputStream(path)) {
+            for(long written = 0; written < size; written += buf.length) {
+                ThreadLocalRandom.current().nextBytes(buf);
+                out.write(buf, 0, (int) Math.min(buf.length, size - written));
+            }
+        }
+        files.add(path);
+        return path;
+    }
+
+    static private Duration duration(String s){
+        return ConfigFactory.parseString("d = \"" + s + "\"").getDuration("d");
+    }
+
+    static private long size(String s){
+        return ConfigFactory.parseString("s = \"" + s + "\"").getBytes("s");
+    }
+}
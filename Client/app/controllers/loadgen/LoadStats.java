@@ -0,0 +1,131 @@
+package controllers.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * the events that the simulated users printers saw, with count and latency histogram of each event.
+ * the printers record from the dispatcher threads, the reports are taken from the generator thread
+ * (Recorder give consistent interval histogram while the printers keep recording).
+ */
+public class LoadStats {
+    public enum Event {
+        CONNECTED, DISCONNECTED, IN_USE, SERVER_OFFLINE, CREATED, INVITED, WELCOME, TEXT, GROUP_TEXT, FILE, ERROR, OTHER;
+
+        /**
+         * @param name: event name in scenario, e.g. 'group-text'
+         */
+        static public Event byName(String name){
+            return valueOf(name.toUpperCase().replace('-','_'));
+        }
+
+        public String scenarioName(){
+            return name().toLowerCase().replace('_','-');
+        }
+    }
+
+    static private final int MAX_SAMPLES = 10; //error outputs that kept for the report
+
+    private final AtomicLongArray counts;
+    private final Recorder[] recorders;
+    private final Histogram[] totals;
+    private final List<String> errorSamples;
+    private volatile long stageStart; //send time of the current commands stage
+
+    public LoadStats(){
+        int n = Event.values().length;
+        this.counts = new AtomicLongArray(n);
+        this.recorders = new Recorder[n];
+        this.totals = new Histogram[n];
+        for(int i = 0; i < n; i++) {
+            recorders[i] = new Recorder(3);
+            totals[i] = new Histogram(3);
+        }
+        this.errorSamples = Collections.synchronizedList(new ArrayList<>());
+        this.stageStart = System.nanoTime();
+    }
+
+    /**
+     * count the event and record its latency
+     * @param latencyNanos: time from the command that caused the event, negative if unknown
+     */
+    public void record(Event e, long latencyNanos){
+        if(latencyNanos >= 0)
+            recorders[e.ordinal()].recordValue(latencyNanos);
+        counts.incrementAndGet(e.ordinal());
+    }
+
+    public void recordError(String output){
+        if(errorSamples.size() < MAX_SAMPLES)
+            errorSamples.add(output);
+        record(Event.ERROR, -1);
+    }
+
+    public long count(Event e){
+        return counts.get(e.ordinal());
+    }
+
+    public void startStage(){
+        stageStart = System.nanoTime();
+    }
+
+    public long stageStart(){
+        return stageStart;
+    }
+
+    /**
+     * print the latencies of the event since the last report of it
+     */
+    public void report(PrintStream out, Event e, String title){
+        Histogram interval = recorders[e.ordinal()].getIntervalHistogram();
+        totals[e.ordinal()].add(interval);
+        out.println(String.format("%-40s %s", title, percentiles(interval)));
+    }
+
+    /**
+     * print the count and the latencies of all the events from the start
+     */
+    public void summary(PrintStream out){
+        out.println("summary:");
+        for(Event e : Event.values()) {
+            if(count(e) == 0)
+                continue;
+            totals[e.ordinal()].add(recorders[e.ordinal()].getIntervalHistogram());
+            out.println(String.format("  %-14s %,10d  %s", e.scenarioName(), count(e), percentiles(totals[e.ordinal()])));
+        }
+        for(String s : errorSamples)
+            out.println("  error: " + s);
+    }
+
+    /**
+     * write the percentile distribution of each event (in ms) to <dir>/<event>.hgrm, for the HdrHistogram plotter
+     */
+    public void writeDistributions(String dir) throws Exception {
+        for(Event e : Event.values()) {
+            Histogram h = totals[e.ordinal()];
+            if(h.getTotalCount() == 0)
+                continue;
+            try(PrintStream ps = new PrintStream(Paths.get(dir, e.scenarioName() + ".hgrm").toFile())) {
+                h.outputPercentileDistribution(ps, 1e6);
+            }
+        }
+    }
+
+    static private String percentiles(Histogram h){
+        if(h.getTotalCount() == 0)
+            return "no latencies";
+        return String.format("p50 %8.2f  p90 %8.2f  p99 %8.2f  p99.9 %8.2f  max %8.2f ms",
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)), ms(h.getValueAtPercentile(99)),
+                ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+    }
+
+    static private double ms(long nanos){
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,195 @@
+package controllers.loadgen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * load scenario, one step in a line ('#' start a comment):
+ *  - users <n>: start n simulated users (sessions), must be the first step
+ *  - rate <commands per second>: limit the sending of the next commands, 0 is no limit
+ *  - <who> [x<count>] <command>: the users send the web page command (count times),
+ *    who is 'all', user index or range of indexes 'a..b' (inclusive)
+ *  - await <event> <count> [timeout]: wait for count new events of the LoadStats event (e.g. 'group-text')
+ *    and report their latencies
+ * count can use 'users', + - * and parentheses, e.g. '100*(users-1)'.
+ *  - pause <duration>
+ *  - mkfile <size>: create temp file with random content for the next file commands
+ * the commands can use {i} (the user index), {next} (the next user index), {k} (the repeat number from 1),
+ * {users}, {file} and {now} (the send time, for the text latency).
+ * the built in scenarios are in conf/loadgen.
+ */
+public class Scenario {
+    static public class Step {
+        public final int line;
+        public final String verb;
+        public final String[] args;
+
+        public Step(int line, String verb, String[] args){
+            this.line = line;
+            this.verb = verb;
+            this.args = args;
+        }
+    }
+
+    /**
+     * command sending step, 'to' is -1 for all the users
+     */
+    static public class Send extends Step {
+        public final int from;
+        public final int to;
+        public final String repeat; //count expression
+        public final String command;
+
+        public Send(int line, String who, int from, int to, String repeat, String command){
+            super(line, who, new String[]{command});
+            this.from = from;
+            this.to = to;
+            this.repeat = repeat;
+            this.command = command;
+        }
+    }
+
+    public final String name;
+    public final List<Step> steps;
+
+    public Scenario(String name, List<Step> steps){
+        this.name = name;
+        this.steps = steps;
+    }
+
+    /**
+     * @param nameOrPath: scenario file or name of built in scenario (conf/loadgen/<name>.scn)
+     */
+    static public Scenario load(String nameOrPath) throws IOException {
+        Path path = Paths.get(nameOrPath);
+        if(Files.exists(path))
+            return parse(nameOrPath, Files.readAllLines(path, StandardCharsets.UTF_8));
+        InputStream in = Scenario.class.getClassLoader().getResourceAsStream(String.format("loadgen/%s.scn", nameOrPath));
+        if(in == null)
+            throw new IOException(String.format("scenario %s not found", nameOrPath));
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return parse(nameOrPath, reader.lines().collect(Collectors.toList()));
+        }
+    }
+
+    static public Scenario parse(String name, List<String> lines){
+        List<Step> steps = new ArrayList<>();
+        for(int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            try {
+                steps.add(parseStep(i + 1, line));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(String.format("%s:%d: %s (%s)", name, i + 1, line, e.getMessage()));
+            }
+        }
+        if(steps.isEmpty() || !steps.get(0).verb.equals("users"))
+            throw new IllegalArgumentException(String.format("%s: the first step must be 'users <n>'", name));
+        return new Scenario(name, steps);
+    }
+
+    static private Step parseStep(int line, String text){
+        String[] words = text.split("\\s+", 2);
+        String rest = words.length > 1 ? words[1] : "";
+        switch (words[0]) {
+            case "users":
+            case "rate":
+                Integer.parseInt(rest);
+                return new Step(line, words[0], new String[]{rest});
+            case "pause":
+            case "mkfile":
+                if(rest.isEmpty())
+                    throw new IllegalArgumentException("missing argument");
+                return new Step(line, words[0], new String[]{rest});
+            case "await":
+                String[] args = rest.split("\\s+", 3);
+                if(args.length < 2)
+                    throw new IllegalArgumentException("await <event> <count> [timeout]");
+                LoadStats.Event.byName(args[0]);
+                return new Step(line, "await", args);
+            default:
+                return parseSend(line, words[0], rest);
+        }
+    }
+
+    static private Send parseSend(int line, String who, String rest){
+        int from = 0;
+        int to = -1;
+        if(!who.equals("all")) {
+            int dots = who.indexOf("..");
+            from = Integer.parseInt(dots < 0 ? who : who.substring(0, dots));
+            to = dots < 0 ? from : Integer.parseInt(who.substring(dots + 2));
+        }
+        String repeat = "1";
+        if(rest.matches("x\\S+\\s.*")) {
+            int space = rest.indexOf(' ');
+            repeat = rest.substring(1, space);
+            eval(repeat, 1);
+            rest = rest.substring(space + 1).trim();
+        }
+        if(rest.isEmpty())
+            throw new IllegalArgumentException("missing command");
+        return new Send(line, who, from, to, repeat, rest);
+    }
+
+    /**
+     * evaluate await count
+     * @param expr: e.g. '100*(users-1)'
+     */
+    static public long eval(String expr, int users){
+        int[] pos = {0};
+        String s = expr.replace(" ", "");
+        long v = sum(s, pos, users);
+        if(pos[0] != s.length())
+            throw new IllegalArgumentException("bad count " + expr);
+        return v;
+    }
+
+    static private long sum(String s, int[] pos, int users){
+        long v = product(s, pos, users);
+        while(pos[0] < s.length() && (s.charAt(pos[0]) == '+' || s.charAt(pos[0]) == '-')) {
+            boolean plus = s.charAt(pos[0]++) == '+';
+            long p = product(s, pos, users);
+            v = plus ? v + p : v - p;
+        }
+        return v;
+    }
+
+    static private long product(String s, int[] pos, int users){
+        long v = factor(s, pos, users);
+        while(pos[0] < s.length() && s.charAt(pos[0]) == '*') {
+            pos[0]++;
+            v *= factor(s, pos, users);
+        }
+        return v;
+    }
+
+    static private long factor(String s, int[] pos, int users){
+        if(s.startsWith("(", pos[0])) {
+            pos[0]++;
+            long v = sum(s, pos, users);
+            if(!s.startsWith(")", pos[0]))
+                throw new IllegalArgumentException("missing )");
+            pos[0]++;
+            return v;
+        }
+        if(s.startsWith("users", pos[0])) {
+            pos[0] += 5;
+            return users;
+        }
+        int start = pos[0];
+        while(pos[0] < s.length() && Character.isDigit(s.charAt(pos[0])))
+            pos[0]++;
+        return Long.parseLong(s.substring(start, pos[0]));
+    }
+}
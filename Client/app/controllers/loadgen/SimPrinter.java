@@ -0,0 +1,96 @@
+package controllers.loadgen;
+
+import akka.actor.AbstractActor;
+import akka.actor.Props;
+import controllers.loadgen.LoadStats.Event;
+
+/**
+ * the printer (websocket) of simulated user, classify the session output to LoadStats events.
+ * the latency of answer to the user own command (connect, disconnect, create, join) is from the command,
+ * the latency of received text is from the '@<nano time>' at the end of the text (see {now} in LoadGenerator)
+ * and of other received messages (files) from the start of the commands stage.
+ * group invitations are accepted immediately.
+ */
+public class SimPrinter extends AbstractActor {
+    static public Props props(SimUser user, LoadStats stats) {
+        return Props.create(SimPrinter.class, () -> new SimPrinter(user, stats));
+    }
+
+    private final SimUser user;
+    private final LoadStats stats;
+
+    public SimPrinter(SimUser user, LoadStats stats){
+        this.user = user;
+        this.stats = stats;
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .matchEquals("ping", m -> {})
+                .match(String.class, s -> s.startsWith("tit "), s -> {})
+                .match(String.class, this::outputHandler)
+                .build();
+    }
+
+    private void outputHandler(String s){
+        long now = System.nanoTime();
+        if(s.endsWith(" has connected successfully!")) {
+            user.setName(s.substring(0, s.length() - " has connected successfully!".length()));
+            stats.record(Event.CONNECTED, now - user.lastSent());
+        }
+        else if(s.endsWith(" has been disconnected successfully!"))
+            stats.record(Event.DISCONNECTED, now - user.lastSent());
+        else if(s.endsWith(" is in use!"))
+            stats.record(Event.IN_USE, now - user.lastSent());
+        else if(s.startsWith("server is offline"))
+            stats.record(Event.SERVER_OFFLINE, now - user.lastSent());
+        else if(s.endsWith(" created successfully!"))
+            stats.record(Event.CREATED, now - user.lastSent());
+        else if(s.startsWith("You have been invited to ")) {
+            stats.record(Event.INVITED, now - stats.stageStart());
+            user.send("yes");
+        }
+        else if(s.startsWith("Welcome to "))
+            stats.record(Event.WELCOME, now - user.lastSent());
+        else if(s.startsWith("[") && !s.startsWith("[history]"))
+            receivedHandler(s, now);
+        else if(s.startsWith("Illegal input") || s.endsWith("does not exist!") || s.contains(" failed"))
+            stats.recordError(s);
+        else
+            stats.record(Event.OTHER, -1);
+    }
+
+    /**
+     * text or file from other user, the format is '[time][user or group][sender] message'
+     */
+    private void receivedHandler(String s, long now){
+        int to = s.indexOf('[', 1) + 1;
+        int toEnd = s.indexOf(']', to);
+        int msg = s.indexOf("] ", toEnd + 1) + 2;
+        if(to <= 0 || toEnd < 0 || msg < 2) {
+            stats.record(Event.OTHER, -1);
+            return;
+        }
+        if(s.startsWith("File received: ", msg)) {
+            stats.record(Event.FILE, now - stats.stageStart());
+            return;
+        }
+        Event e = s.substring(to, toEnd).equals(user.name()) ? Event.TEXT : Event.GROUP_TEXT;
+        stats.record(e, now - sentAt(s, stats.stageStart()));
+    }
+
+    /**
+     * @return the nano time at the end of the text, or the default if there isn't
+     */
+    static private long sentAt(String s, long def){
+        int at = s.lastIndexOf(" @");
+        if(at < 0)
+            return def;
+        try {
+            return Long.parseLong(s.substring(at + 2));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package controllers.loadgen;
+
+import akka.actor.ActorRef;
+import controllers.IO.InputParser;
+
+/**
+ * one simulated user, a session (InputActor) of the client that get its commands from the load generator
+ * instead of websocket. the commands are the same text commands of the web page.
+ */
+public class SimUser {
+    public final int index;
+    public final ActorRef inputActor;
+    private volatile String name; //the connected user name, null before connect
+    private volatile long lastSent; //send time of the last command
+
+    public SimUser(int index, ActorRef inputActor){
+        this.index = index;
+        this.inputActor = inputActor;
+        this.lastSent = System.nanoTime();
+    }
+
+    /**
+     * parse the command like the websocket connector and send it to the session
+     * @param command: web page command, e.g. 'user text user1 hello'
+     */
+    public void send(String command){
+        lastSent = System.nanoTime();
+        inputActor.tell(InputParser.parseInput(command), ActorRef.noSender());
+    }
+
+    public long lastSent(){
+        return lastSent;
+    }
+
+    public String name(){
+        return name;
+    }
+
+    void setName(String name){
+        this.name = name;
+    }
+}
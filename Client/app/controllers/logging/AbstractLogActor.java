@@ -4,6 +4,7 @@ import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * AbstractActor with custom log tools
@@ -11,6 +12,8 @@ import akka.event.LoggingAdapter;
 public abstract class AbstractLogActor extends AbstractActor{
     protected final LoggingAdapter logger;
     private String log_name;
+    private final String prefix; //"[system name][log name] "
+    private final ConcurrentHashMap<String,String> templates; //template -> template with the prefix, see addName
 
     /**
      * constructor with specific log name
@@ -19,6 +22,8 @@ public abstract class AbstractLogActor extends AbstractActor{
     protected AbstractLogActor(String log_name){
         this.log_name = log_name;
         logger = Logging.getLogger(getContext().getSystem(),this.getClass());
+        prefix = String.format("[%s][%s] ",getContext().getSystem().name(),this.log_name);
+        templates = new ConcurrentHashMap<>();
 
     }
 
@@ -28,6 +33,8 @@ public abstract class AbstractLogActor extends AbstractActor{
     protected AbstractLogActor(){
         this.log_name = getSelf().path().name();
         logger = Logging.getLogger(getContext().getSystem(),this.getClass());
+        prefix = String.format("[%s][%s] ",getContext().getSystem().name(),this.log_name);
+        templates = new ConcurrentHashMap<>();
     }
 
     /**
@@ -37,72 +44,95 @@ public abstract class AbstractLogActor extends AbstractActor{
      * @param sender: the ActorRef sender
      */
     protected void logAndTell(ActorRef dst, Object m, ActorRef sender){
-        logDebug("send {} to {}",m.getClass().getName(),dst.path().name());
+        if(logger.isDebugEnabled())
+            logger.debug(addName("send {} to {}"),m.getClass().getName(),dst.path().name());
         dst.tell(m,sender);
     }
 
     protected void logDebug(String template){
-        logger.debug(addName(template));
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template));
     }
 
     protected void logDebug(String template,Object arg1){
-        logger.debug(addName(template),arg1);
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1);
     }
     protected void logDebug(String template,Object arg1,Object arg2){
-        logger.debug(addName(template),arg1,arg2);
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1,arg2);
     }
 
     protected void logDebug(String template,Object arg1,Object arg2,Object arg3){
-        logger.debug(addName(template),arg1,arg2,arg3);
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1,arg2,arg3);
     }
 
     protected void logDebug(String template,Object arg1,Object arg2,Object arg3,Object arg4){
-        logger.debug(addName(template),arg1,arg2,arg3,arg4);
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1,arg2,arg3,arg4);
     }
 
     protected void logWarn(String template){
-        logger.warning(addName(template));
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template));
     }
 
     protected void logWarn(String template,Object arg1){
-        logger.warning(addName(template),arg1);
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1);
     }
     protected void logWarn(String template,Object arg1,Object arg2){
-        logger.warning(addName(template),arg1,arg2);
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1,arg2);
     }
 
     protected void logWarn(String template,Object arg1,Object arg2,Object arg3){
-        logger.warning(addName(template),arg1,arg2,arg3);
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1,arg2,arg3);
     }
 
     protected void logWarn(String template,Object arg1,Object arg2,Object arg3,Object arg4){
-        logger.warning(addName(template),arg1,arg2,arg3,arg4);
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1,arg2,arg3,arg4);
     }
 
     protected void logError(String template){
-        logger.error(addName(template));
+        if(logger.isErrorEnabled())
+            logger.error(addName(template));
     }
 
     protected void logError(String template,Object arg1){
-        logger.error(addName(template),arg1);
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1);
     }
     protected void logError(String template,Object arg1,Object arg2){
-        logger.error(addName(template),arg1,arg2);
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1,arg2);
     }
 
     protected void logError(String template,Object arg1,Object arg2,Object arg3){
-        logger.error(addName(template),arg1,arg2,arg3);
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1,arg2,arg3);
     }
 
     protected void logError(String template,Object arg1,Object arg2,Object arg3,Object arg4){
-        logger.error(addName(template),arg1,arg2,arg3,arg4);
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1,arg2,arg3,arg4);
     }
 
     /**
+     * the named template is made once for each template of the actor,
+     * the templates are literals so the map stay small.
      * @param template: template to the logger
      * @return the template with the actor name in the beginning
      */
     private String addName(String template){
-        return String.format("[%s][%s] %s",getContext().getSystem().name(),this.log_name,template);
+        String named = templates.get(template);
+        if(named == null) {
+            named = prefix + template;
+            templates.put(template,named);
+        }
+        return named;
     }
 }
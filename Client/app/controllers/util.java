@@ -8,9 +8,11 @@ import akka.stream.javadsl.Source;
 import akka.stream.javadsl.StreamRefs;
 import akka.util.ByteString;
 import java.io.File;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.concurrent.CompletionStage;
@@ -84,6 +86,26 @@ public class util {
         }catch (Exception e){}
     }
 
+    /**
+     * hex sha-256 of the file content
+     * @param path: file path
+     * @return the hash or null if the file can't be read
+     */
+    static public String contentHash(Path path){
+        try(InputStream in = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[64 * 1024];
+            for(int n = in.read(buf); n > 0; n = in.read(buf))
+                digest.update(buf,0,n);
+            StringBuilder sb = new StringBuilder();
+            for(byte b : digest.digest())
+                sb.append(String.format("%02x",b));
+            return sb.toString();
+        }catch (Exception e){
+            return null;
+        }
+    }
+
     ///////////////////////////TIME UTIL/////////////////////////////////////////
     static public String GetCurrTime(){
         Calendar cal = Calendar.getInstance();
@@ -0,0 +1,66 @@
+package controllers.Groups;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GroupSequenceTest {
+
+    @Test
+    public void inOrderMessagesHaveNoGap() {
+        GroupSequence seq = new GroupSequence();
+        assertFalse(seq.arrived(1, 0));
+        assertFalse(seq.arrived(2, 1));
+        assertFalse(seq.arrived(5, 2)); //membership events between them
+        assertEquals(Collections.emptyMap(), seq.takeGaps());
+    }
+
+    @Test
+    public void missingMessageOpenGapAndLateMessageCloseIt() {
+        GroupSequence seq = new GroupSequence();
+        seq.arrived(1, 0);
+        assertTrue(seq.arrived(4, 3));
+        assertFalse(seq.arrived(5, 4)); //the gap is already open
+        assertFalse(seq.arrived(3, 1)); //late file
+        assertEquals(Collections.emptyMap(), seq.takeGaps());
+    }
+
+    /**
+     * the group send GroupGapMessage and then the messages it still has from the missing range,
+     * the next live message is after the highest seqNr so it must not open gap again
+     */
+    @Test
+    public void incompleteCatchUpDoesNotOpenFalseGap() {
+        GroupSequence seq = new GroupSequence();
+        seq.arrived(1, 0);
+        seq.arrived(2, 1);
+        assertTrue(seq.arrived(6, 5)); //3, 4 and 5 are missing
+        Map<Long, Long> gaps = seq.takeGaps();
+        assertEquals(Collections.singletonMap(5L, 2L), gaps); //ask 2 < seqNr < 6
+
+        //the group has only 4 and 5 of the range, 3 is no longer in its recent messages
+        seq.skipped();
+        assertFalse(seq.arrived(4, 3));
+        assertFalse(seq.arrived(5, 4));
+        assertEquals(6, seq.top());
+
+        assertFalse(seq.arrived(7, 6));
+        assertEquals(7, seq.top());
+        assertEquals(Collections.emptyMap(), seq.takeGaps());
+    }
+
+    @Test
+    public void skippedMessagesAreNotAskedAgain() {
+        GroupSequence seq = new GroupSequence();
+        seq.arrived(1, 0);
+        seq.skipped(); //the group dropped 2..9 to this slow member
+        assertFalse(seq.arrived(10, 9));
+        assertTrue(seq.arrived(12, 11)); //checked again after the first new message
+        assertEquals(Collections.singletonMap(11L, 10L), seq.takeGaps());
+    }
+}
@@ -1,4 +1,4 @@
-package controllers.protocols.Abstracts;
+package com.akka.protocols.Abstracts;
 
 public class AbstractNamedMessage implements RemoteMessageInterface {
     public final String senderName;
@@ -0,0 +1,193 @@
+package com.akka.protocols;
+
+import akka.actor.ActorRef;
+import akka.stream.SourceRef;
+import akka.util.ByteString;
+import com.akka.protocols.Abstracts.AbstractNamedMessage;
+import com.akka.protocols.Abstracts.RemoteMessageInterface;
+
+public class ClientServerGroupsProtocol {
+    static private abstract class AbstractToServer implements RemoteMessageInterface {
+        public final String groupName;
+        public final String sender;
+        public AbstractToServer(String groupName,String sender){
+            this.groupName = groupName;
+            this.sender = sender;
+        }
+    }
+
+    static private abstract class AbstractToUser implements  RemoteMessageInterface{
+        public final String sender;
+        public AbstractToUser(String sender){
+            this.sender = sender;
+        }
+    }
+
+    static public class CreateGroupMessage implements RemoteMessageInterface {
+        public final String groupName;
+        public CreateGroupMessage(String groupName){
+            this.groupName = groupName;
+        }
+    }
+    static public class CreateGroupApproveMessage implements RemoteMessageInterface{
+    }
+
+    static public class MembersMessage implements RemoteMessageInterface{
+        public final SourceRef sorceSupp;
+        public MembersMessage(SourceRef sorceSupp){this.sorceSupp = sorceSupp;}
+    }
+
+    static public class CreateGroupDenialMessage implements RemoteMessageInterface {
+        public final String groupName;
+        public CreateGroupDenialMessage(String groupName){
+            this.groupName = groupName;
+        }
+    }
+
+    static public class LeaveGroupMessage extends AbstractNamedMessage {
+        public LeaveGroupMessage(String sender){super(sender);}
+    }
+
+    static public class RemoveFromGroupMessage extends AbstractNamedMessage {
+        public RemoveFromGroupMessage(String sender){super(sender);}
+    }
+
+    static public class InitAddToGroupMessage extends AbstractNamedMessage {
+        public final ActorRef ref;
+        public InitAddToGroupMessage(String sender, ActorRef ref){
+            super(sender);
+            this.ref = ref;
+        }
+    }
+
+    static public class AddToGroupMessage extends AbstractNamedMessage {
+        public AddToGroupMessage(String sender){super(sender);}
+    }
+
+    static public class CloseGroupMessage implements RemoteMessageInterface{}
+
+    static public class SendTextGroupMessage extends AbstractToServer{
+        public final String msg;
+        public SendTextGroupMessage(String groupName,String sender,String msg){
+            super(groupName,sender);
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * contentHash is the hex sha-256 of the file or null,
+     * the server use it to relay file that was already sent to the group without uploading it again
+     */
+    /**
+     * seqNr and prevSeqNr are the group sequence number, see TextGroupMessage
+     */
+    static public class FileGroupMessage extends AbstractNamedMessage{
+        public final String fileName;
+        public final String contentHash;
+        public final SourceRef<ByteString> fileRef;
+        public final long seqNr;
+        public final long prevSeqNr;
+        public FileGroupMessage(String sender,String  fileName, SourceRef<ByteString> fileRef){
+            this(sender,fileName,null,fileRef);
+        }
+        public FileGroupMessage(String sender,String  fileName,String contentHash, SourceRef<ByteString> fileRef){
+            this(sender,fileName,contentHash,fileRef,0,0);
+        }
+        public FileGroupMessage(String sender,String  fileName,String contentHash, SourceRef<ByteString> fileRef,long seqNr,long prevSeqNr){
+            super(sender);
+            this.fileName = fileName;
+            this.contentHash = contentHash;
+            this.fileRef = fileRef;
+            this.seqNr = seqNr;
+            this.prevSeqNr = prevSeqNr;
+        }
+    }
+
+    /**
+     * the group stamp the texts and files it send with the group sequence number (seqNr)
+     * and the seqNr of the previous text/file (prevSeqNr), so member that see prevSeqNr different
+     * from the last seqNr he got know that he missed messages and ask them with GroupCatchUpMessage.
+     * the numbers are not continuous (the membership events use numbers too),
+     * 0 is not stamped (sent by member, or the group don't know the previous)
+     */
+    static public class TextGroupMessage extends AbstractToUser{
+        public final String msg;
+        public final long seqNr;
+        public final long prevSeqNr;
+        public TextGroupMessage(String sender,String msg){
+            this(sender,msg,0,0);
+        }
+        public TextGroupMessage(String sender,String msg,long seqNr,long prevSeqNr){
+            super(sender);
+            this.msg = msg;
+            this.seqNr = seqNr;
+            this.prevSeqNr = prevSeqNr;
+        }
+    }
+
+    /**
+     * ask for page of the group texts history, the page contain the texts from the events before 'before'
+     */
+    static public class HistoryRequestMessage implements RemoteMessageInterface{
+        public final long before;
+        public HistoryRequestMessage(long before){this.before = before;}
+    }
+
+    /**
+     * page of the group texts history,
+     * nextBefore is the 'before' of the previous page or 0 if this is the first page
+     */
+    static public class HistoryMessage implements RemoteMessageInterface{
+        public final long nextBefore;
+        public final SourceRef<TextGroupMessage> sorceSupp;
+        public HistoryMessage(long nextBefore,SourceRef<TextGroupMessage> sorceSupp){
+            this.nextBefore = nextBefore;
+            this.sorceSupp = sorceSupp;
+        }
+    }
+
+    /**
+     * flow control mark that the group send to member after every few messages,
+     * the member answer GroupAckMessage with the same mark when he got it (and all the messages before it)
+     */
+    static public class GroupMarkMessage implements RemoteMessageInterface{
+        public final long mark;
+        public GroupMarkMessage(long mark){this.mark = mark;}
+    }
+
+    /**
+     * the member got the group messages up to mark, mark 0 is sent on join to tell the group
+     * that the member answer marks
+     */
+    static public class GroupAckMessage implements RemoteMessageInterface{
+        public final long mark;
+        public GroupAckMessage(long mark){this.mark = mark;}
+    }
+
+    /**
+     * the group skipped texts to slow member, they can be read in the group history.
+     * skipped is 0 when the number is not known
+     */
+    static public class GroupGapMessage implements RemoteMessageInterface{
+        public final int skipped;
+        public GroupGapMessage(int skipped){this.skipped = skipped;}
+    }
+
+    /**
+     * ask the group to send again the texts and files with afterSeqNr < seqNr < beforeSeqNr
+     */
+    static public class GroupCatchUpMessage implements RemoteMessageInterface{
+        public final long afterSeqNr;
+        public final long beforeSeqNr;
+        public GroupCatchUpMessage(long afterSeqNr,long beforeSeqNr){
+            this.afterSeqNr = afterSeqNr;
+            this.beforeSeqNr = beforeSeqNr;
+        }
+    }
+
+    /**
+     * the group was restored from its journal (after passivation or server restart) with new ActorRef,
+     * the group send it to every member so the member send to the new ref (the sender of this message)
+     */
+    static public class GroupRestoredMessage implements RemoteMessageInterface{}
+}
@@ -0,0 +1,148 @@
+package com.akka.protocols;
+
+import akka.actor.ActorRef;
+import akka.stream.SourceRef;
+import com.akka.protocols.UserToUserProtocol.TextMessage;
+import com.akka.protocols.Abstracts.*;
+
+public class ClientServerProtocol {
+    /**
+     * presenceEpoch and presenceVersion are the presence version the user already has (from previous connection),
+     * presenceVersion is -1 when the user has no active users list.
+     * interest is the users that the user want their presence (see PresenceInterestMessage), null for all the users.
+     */
+    static public class ConnectMessage extends AbstractNamedMessage {
+        public final ActorRef mainRef;
+        public final ActorRef receiveRef;
+        public final long presenceEpoch;
+        public final long presenceVersion;
+        public final String[] interest;
+        public ConnectMessage(String senderName, ActorRef mainRef, ActorRef receiveRef ){
+            this(senderName, mainRef, receiveRef, 0, -1, null);
+        }
+        public ConnectMessage(String senderName, ActorRef mainRef, ActorRef receiveRef, long presenceEpoch, long presenceVersion, String[] interest){
+            super(senderName);
+            this.mainRef = mainRef;
+            this.receiveRef = receiveRef;
+            this.presenceEpoch = presenceEpoch;
+            this.presenceVersion = presenceVersion;
+            this.interest = interest;
+        }
+    }
+
+    static public class DisconnectMessage extends AbstractNamedMessage{
+        public DisconnectMessage(String senderName){super(senderName);}
+    }
+
+    static public class DisconnectFinalStage extends AbstractNamedMessage{
+        public DisconnectFinalStage(String senderName){super(senderName);}
+    }
+
+    static public class DisconnectFinished implements RemoteMessageInterface {}
+
+    /**
+     * the active users come as full snapshot in sorceSupp, or when the user presented presence version
+     * that the server still has the changes since, as the changes only in sync (sorceSupp is null).
+     * epoch and version are the presence version of the active users after loading them.
+     */
+    static public class ConnectedSuccessfullyMessage implements RemoteMessageInterface {
+        public final ActorRef serverRef;
+        public final SourceRef sorceSupp;
+        public final long epoch;
+        public final long version;
+        public final PresenceDeltaMessage sync;
+        public ConnectedSuccessfullyMessage(ActorRef serverRef, SourceRef sorceSupp){
+            this(serverRef, sorceSupp, 0, -1, null);
+        }
+        public ConnectedSuccessfullyMessage(ActorRef serverRef, SourceRef sorceSupp, long epoch, long version, PresenceDeltaMessage sync){
+            this.serverRef = serverRef;
+            this.sorceSupp = sorceSupp;
+            this.epoch = epoch;
+            this.version = version;
+            this.sync = sync;
+        }
+    }
+    static public class ConnectedFailedMessage implements RemoteMessageInterface{}
+
+    static public class SomeoneLeaveMessage implements RemoteMessageInterface{
+        public final String userName;
+        public SomeoneLeaveMessage(String userName){
+            this.userName = userName;
+        }
+    }
+
+    static public class AddUserMessage implements RemoteMessageInterface{
+        public final String userName;
+        public final ActorRef ref;
+        public AddUserMessage(String userName, ActorRef ref){
+            this.userName = userName;
+            this.ref = ref;
+        }
+    }
+
+    /**
+     * batch of active users changes, the receiver should apply the removes before the adds.
+     * version is the presence version after the changes.
+     */
+    static public class PresenceDeltaMessage implements RemoteMessageInterface{
+        public final AddUserMessage[] added;
+        public final String[] removed;
+        public final long version;
+        public PresenceDeltaMessage(AddUserMessage[] added, String[] removed, long version){
+            this.added = added;
+            this.removed = removed;
+            this.version = version;
+        }
+    }
+
+    /**
+     * change the users that the sender want their presence, the sender get the changes only of these users.
+     * the first interest message of user that get all the users (connected without interest) change him
+     * to get only the watched users.
+     * the server answer with PresenceDeltaMessage of the newly watched users that are active.
+     */
+    static public class PresenceInterestMessage extends AbstractNamedMessage{
+        public final String[] watch;
+        public final String[] unwatch;
+        public PresenceInterestMessage(String senderName, String[] watch, String[] unwatch){
+            super(senderName);
+            this.watch = watch;
+            this.unwatch = unwatch;
+        }
+    }
+
+    /**
+     * text message to user that is not active, the server store it until the user connect
+     */
+    static public class OfflineTextMessage extends AbstractNamedMessage{
+        public final String toUser;
+        public final String msg;
+        public OfflineTextMessage(String senderName, String toUser, String msg){
+            super(senderName);
+            this.toUser = toUser;
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * the server can't store more messages to the user
+     */
+    static public class OfflineDenialMessage implements RemoteMessageInterface{
+        public final String toUser;
+        public OfflineDenialMessage(String toUser){
+            this.toUser = toUser;
+        }
+    }
+
+    /**
+     * the messages that stored while the user was offline, sent to the user message receiver on connect
+     */
+    static public class OfflineMessagesMessage implements RemoteMessageInterface{
+        public final int count;
+        public final SourceRef<TextMessage> sorceSupp;
+        public OfflineMessagesMessage(int count, SourceRef<TextMessage> sorceSupp){
+            this.count = count;
+            this.sorceSupp = sorceSupp;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.akka.protocols;
+
+import akka.serialization.Serialization;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * message that was serialized once and can be sent to many remote actors,
+ * the PreSerializedSerializer return the same bytes for every send instead of
+ * serializing the message again for each recipient.
+ * the receiver get the original message, see PreSerializedSerializer.
+ * the message must not contain ActorRefs, they are serialized relative to the remote transport.
+ * wire format: [int serializer id][short manifest length][manifest][message bytes]
+ */
+public final class PreSerialized {
+    public final byte[] bytes;
+
+    private PreSerialized(byte[] bytes){
+        this.bytes = bytes;
+    }
+
+    /**
+     * serialize m with the serializer that bound to its class
+     * @param ser: the system Serialization
+     * @param m: message to serialize
+     * @return the serialized message
+     */
+    static public PreSerialized create(Serialization ser, Object m){
+        Serializer serializer = ser.findSerializerFor(m);
+        byte[] payload = serializer.toBinary(m);
+        String manifest = "";
+        if(serializer instanceof SerializerWithStringManifest)
+            manifest = ((SerializerWithStringManifest) serializer).manifest(m);
+        else if(serializer.includeManifest())
+            manifest = m.getClass().getName();
+        byte[] manifestBytes = manifest.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(4 + 2 + manifestBytes.length + payload.length);
+        buf.putInt(serializer.identifier()).putShort((short) manifestBytes.length).put(manifestBytes).put(payload);
+        return new PreSerialized(buf.array());
+    }
+}
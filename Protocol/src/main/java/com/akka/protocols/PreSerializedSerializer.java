@@ -0,0 +1,52 @@
+package com.akka.protocols;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JSerializer;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * serializer of PreSerialized messages.
+ * toBinary return the bytes that were serialized once by the sender,
+ * fromBinary deserialize the original message with its own serializer,
+ * so the receiver get the original message and not PreSerialized.
+ * the identifier must be the same in the client and the server.
+ */
+public class PreSerializedSerializer extends JSerializer {
+    private final ExtendedActorSystem system;
+    private Serialization serialization;
+
+    public PreSerializedSerializer(ExtendedActorSystem system){
+        this.system = system;
+    }
+
+    @Override
+    public int identifier() {
+        return 7001;
+    }
+
+    @Override
+    public boolean includeManifest() {
+        return false;
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        return ((PreSerialized) o).bytes;
+    }
+
+    @Override
+    public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+        if(serialization == null) //the extension can't be used while the serializers are created
+            serialization = SerializationExtension.get(system);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int serializerId = buf.getInt();
+        byte[] manifestBytes = new byte[buf.getShort()];
+        buf.get(manifestBytes);
+        byte[] payload = new byte[buf.remaining()];
+        buf.get(payload);
+        return serialization.deserialize(payload, serializerId, new String(manifestBytes, StandardCharsets.UTF_8)).get();
+    }
+}
@@ -0,0 +1,578 @@
+package com.akka.protocols;
+
+import akka.actor.ActorRef;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+import akka.stream.SourceRef;
+import akka.util.ByteString;
+import com.akka.protocols.ClientServerGroupsProtocol.*;
+import com.akka.protocols.ClientServerProtocol.*;
+import com.akka.protocols.UserToUserGroupProtocol.*;
+import com.akka.protocols.UserToUserProtocol.*;
+import java.io.NotSerializableException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * serializer of the protocol messages (ClientServerProtocol, ClientServerGroupsProtocol, UserToUserProtocol
+ * and UserToUserGroupProtocol) and of plain strings ("yes", "ok" ...).
+ * the manifest is a short code of the class and the fields are written one after the other:
+ * - int/long as zigzag varint, lengths and counts as unsigned varint, checksums as 4 bytes
+ * - String as unsigned varint (byte length + 1, 0 for null) and utf-8 bytes, plain string message is only the utf-8 bytes
+ * - ActorRef as String of its serialized path, the paths of recently serialized refs and the refs of
+ *   recently deserialized paths are kept, so the same members/users refs are not formatted and resolved again
+ * - SourceRef with the serializer of akka streams: serializer id + 1 (0 for null), manifest, length and bytes
+ *
+ * the codes table in the constructor is the schema of the wire protocol, the client and the server use this
+ * module so they can't disagree on it. to change the protocol without stopping all the nodes and clients together:
+ * - new field is added after the last field of the message, the reader read it only if Input.hasMore()
+ *   (like FileGroupMessage.contentHash) and old readers ignore it
+ * - new message get new code, old receivers drop it as not serializable
+ * - other changes (remove field, change field type) get new code, the old code is not reused
+ */
+public class ProtocolSerializer extends SerializerWithStringManifest {
+    static private final int MAX_CACHED_REFS = 10000;
+
+    /**
+     * how to write and read one message class
+     */
+    static private class Codec<T> {
+        public final String manifest;
+        public final BiConsumer<T, Output> writer;
+        public final Function<Input, Object> reader;
+        public Codec(String manifest, BiConsumer<T, Output> writer, Function<Input, Object> reader){
+            this.manifest = manifest;
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+
+    private final ExtendedActorSystem system;
+    private final HashMap<Class<?>, Codec<?>> byClass;
+    private final HashMap<String, Codec<?>> byManifest;
+    private final ConcurrentHashMap<ActorRef, String> refPaths;
+    private final ConcurrentHashMap<String, ActorRef> pathRefs;
+    private final ThreadLocal<Output> outputs;
+    private Serialization serialization;
+
+    public ProtocolSerializer(ExtendedActorSystem system){
+        this.system = system;
+        this.byClass = new HashMap<>();
+        this.byManifest = new HashMap<>();
+        this.refPaths = new ConcurrentHashMap<>();
+        this.pathRefs = new ConcurrentHashMap<>();
+        this.outputs = ThreadLocal.withInitial(Output::new);
+
+        register("S", String.class, (m, out) -> out.writeRaw(m), Input::readRaw);
+
+        //ClientServerProtocol
+        register("c0", ConnectMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeRef(m.mainRef);
+            out.writeRef(m.receiveRef);
+            out.writeVarLong(m.presenceEpoch); //added after the other fields
+            out.writeVarLong(m.presenceVersion);
+            writeNullableStrings(m.interest, out);
+        }, in -> {
+            ConnectMessage m = new ConnectMessage(in.readString(), in.readRef(), in.readRef());
+            if(!in.hasMore())
+                return m;
+            long epoch = in.readVarLong();
+            long version = in.readVarLong();
+            return new ConnectMessage(m.senderName, m.mainRef, m.receiveRef, epoch, version, in.hasMore() ? readNullableStrings(in) : null);
+        });
+        register("c1", DisconnectMessage.class, (m, out) -> out.writeString(m.senderName), in -> new DisconnectMessage(in.readString()));
+        register("c2", DisconnectFinalStage.class, (m, out) -> out.writeString(m.senderName), in -> new DisconnectFinalStage(in.readString()));
+        registerEmpty("c3", new DisconnectFinished());
+        register("c4", ConnectedSuccessfullyMessage.class, (m, out) -> {
+            out.writeRef(m.serverRef);
+            out.writeSourceRef(m.sorceSupp);
+            out.writeVarLong(m.epoch); //added after the other fields
+            out.writeVarLong(m.version);
+            out.writeUnsigned(m.sync == null ? 0 : 1);
+            if(m.sync != null)
+                writeDelta(m.sync, out);
+        }, in -> {
+            ActorRef serverRef = in.readRef();
+            SourceRef<?> users = in.readSourceRef();
+            if(!in.hasMore())
+                return new ConnectedSuccessfullyMessage(serverRef, users);
+            long epoch = in.readVarLong();
+            long version = in.readVarLong();
+            return new ConnectedSuccessfullyMessage(serverRef, users, epoch, version, in.readUnsigned() == 0 ? null : readDelta(in));
+        });
+        registerEmpty("c5", new ConnectedFailedMessage());
+        register("c6", SomeoneLeaveMessage.class, (m, out) -> out.writeString(m.userName), in -> new SomeoneLeaveMessage(in.readString()));
+        register("c7", AddUserMessage.class, ProtocolSerializer::writeAddUser, ProtocolSerializer::readAddUser);
+        register("c8", PresenceDeltaMessage.class, ProtocolSerializer::writeDelta, ProtocolSerializer::readDelta);
+        register("c9", OfflineTextMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeString(m.toUser);
+            out.writeString(m.msg);
+        }, in -> new OfflineTextMessage(in.readString(), in.readString(), in.readString()));
+        register("c10", OfflineDenialMessage.class, (m, out) -> out.writeString(m.toUser), in -> new OfflineDenialMessage(in.readString()));
+        register("c11", OfflineMessagesMessage.class, (m, out) -> {
+            out.writeVarInt(m.count);
+            out.writeSourceRef(m.sorceSupp);
+        }, in -> new OfflineMessagesMessage(in.readVarInt(), in.readSourceRef()));
+        register("c12", PresenceInterestMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            writeNullableStrings(m.watch, out);
+            writeNullableStrings(m.unwatch, out);
+        }, in -> new PresenceInterestMessage(in.readString(), readNullableStrings(in), readNullableStrings(in)));
+
+        //ClientServerGroupsProtocol
+        register("g0", CreateGroupMessage.class, (m, out) -> out.writeString(m.groupName), in -> new CreateGroupMessage(in.readString()));
+        registerEmpty("g1", new CreateGroupApproveMessage());
+        register("g2", MembersMessage.class, (m, out) -> out.writeSourceRef(m.sorceSupp), in -> new MembersMessage(in.readSourceRef()));
+        register("g3", CreateGroupDenialMessage.class, (m, out) -> out.writeString(m.groupName), in -> new CreateGroupDenialMessage(in.readString()));
+        register("g4", LeaveGroupMessage.class, (m, out) -> out.writeString(m.senderName), in -> new LeaveGroupMessage(in.readString()));
+        register("g5", RemoveFromGroupMessage.class, (m, out) -> out.writeString(m.senderName), in -> new RemoveFromGroupMessage(in.readString()));
+        register("g6", InitAddToGroupMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeRef(m.ref);
+        }, in -> new InitAddToGroupMessage(in.readString(), in.readRef()));
+        register("g7", AddToGroupMessage.class, (m, out) -> out.writeString(m.senderName), in -> new AddToGroupMessage(in.readString()));
+        registerEmpty("g8", new CloseGroupMessage());
+        register("g9", SendTextGroupMessage.class, (m, out) -> {
+            out.writeString(m.groupName);
+            out.writeString(m.sender);
+            out.writeString(m.msg);
+        }, in -> new SendTextGroupMessage(in.readString(), in.readString(), in.readString()));
+        register("g10", FileGroupMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeString(m.fileName);
+            out.writeSourceRef(m.fileRef);
+            out.writeString(m.contentHash); //added after the other fields
+            out.writeVarLong(m.seqNr);
+            out.writeVarLong(m.prevSeqNr);
+        }, in -> {
+            String senderName = in.readString();
+            String fileName = in.readString();
+            SourceRef<ByteString> fileRef = in.readSourceRef();
+            String contentHash = in.hasMore() ? in.readString() : null;
+            if(!in.hasMore())
+                return new FileGroupMessage(senderName, fileName, contentHash, fileRef);
+            return new FileGroupMessage(senderName, fileName, contentHash, fileRef, in.readVarLong(), in.readVarLong());
+        });
+        register("g11", TextGroupMessage.class, (m, out) -> {
+            out.writeString(m.sender);
+            out.writeString(m.msg);
+            out.writeVarLong(m.seqNr); //added after the other fields
+            out.writeVarLong(m.prevSeqNr);
+        }, in -> {
+            String sender = in.readString();
+            String msg = in.readString();
+            if(!in.hasMore())
+                return new TextGroupMessage(sender, msg);
+            return new TextGroupMessage(sender, msg, in.readVarLong(), in.readVarLong());
+        });
+        register("g12", HistoryRequestMessage.class, (m, out) -> out.writeVarLong(m.before), in -> new HistoryRequestMessage(in.readVarLong()));
+        register("g13", HistoryMessage.class, (m, out) -> {
+            out.writeVarLong(m.nextBefore);
+            out.writeSourceRef(m.sorceSupp);
+        }, in -> new HistoryMessage(in.readVarLong(), in.readSourceRef()));
+        register("g14", GroupMarkMessage.class, (m, out) -> out.writeVarLong(m.mark), in -> new GroupMarkMessage(in.readVarLong()));
+        register("g15", GroupAckMessage.class, (m, out) -> out.writeVarLong(m.mark), in -> new GroupAckMessage(in.readVarLong()));
+        register("g16", GroupGapMessage.class, (m, out) -> out.writeVarInt(m.skipped), in -> new GroupGapMessage(in.readVarInt()));
+        register("g17", GroupCatchUpMessage.class, (m, out) -> {
+            out.writeVarLong(m.afterSeqNr);
+            out.writeVarLong(m.beforeSeqNr);
+        }, in -> new GroupCatchUpMessage(in.readVarLong(), in.readVarLong()));
+        registerEmpty("g18", new GroupRestoredMessage());
+
+        //UserToUserProtocol
+        register("u0", TextMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeString(m.msg);
+            if(m.id != 0) { //added after the other fields, only for reliable texts
+                out.writeVarLong(m.epoch);
+                out.writeVarLong(m.id);
+            }
+        }, in -> {
+            String senderName = in.readString();
+            String msg = in.readString();
+            if(!in.hasMore())
+                return new TextMessage(senderName, msg);
+            return new TextMessage(senderName, msg, in.readVarLong(), in.readVarLong());
+        });
+        register("u1", FileMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeString(m.fileName);
+            out.writeSourceRef(m.fileRef);
+        }, in -> new FileMessage(in.readString(), in.readString(), in.readSourceRef()));
+        register("u2", ResumableFileMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeString(m.transferId);
+            out.writeString(m.fileName);
+            out.writeVarLong(m.fileSize);
+            out.writeVarInt(m.chunkSize);
+            out.writeUnsigned(m.checksums.length);
+            for(int checksum : m.checksums)
+                out.writeFixedInt(checksum);
+        }, in -> {
+            String senderName = in.readString();
+            String transferId = in.readString();
+            String fileName = in.readString();
+            long fileSize = in.readVarLong();
+            int chunkSize = in.readVarInt();
+            int[] checksums = new int[in.readUnsignedInt()];
+            for(int i = 0; i < checksums.length; i++)
+                checksums[i] = in.readFixedInt();
+            return new ResumableFileMessage(senderName, transferId, fileName, fileSize, chunkSize, checksums);
+        });
+        register("u3", FileChunkRequest.class, (m, out) -> {
+            out.writeString(m.transferId);
+            out.writeVarInt(m.fromChunk);
+        }, in -> new FileChunkRequest(in.readString(), in.readVarInt()));
+        register("u4", FileChunksMessage.class, (m, out) -> {
+            out.writeString(m.transferId);
+            out.writeVarInt(m.fromChunk);
+            out.writeSourceRef(m.chunksRef);
+        }, in -> new FileChunksMessage(in.readString(), in.readVarInt(), in.readSourceRef()));
+        register("u5", FileChunkAck.class, (m, out) -> {
+            out.writeString(m.transferId);
+            out.writeVarInt(m.acked);
+        }, in -> new FileChunkAck(in.readString(), in.readVarInt()));
+        register("u6", TextAckMessage.class, (m, out) -> {
+            out.writeVarLong(m.epoch);
+            out.writeVarLong(m.id);
+        }, in -> new TextAckMessage(in.readVarLong(), in.readVarLong()));
+
+        //UserToUserGroupProtocol
+        register("ug0", MuteMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeVarInt(m.milliTime);
+        }, in -> new MuteMessage(in.readString(), in.readVarInt()));
+        register("ug1", UnmuteMessage.class, (m, out) -> out.writeString(m.senderName), in -> new UnmuteMessage(in.readString()));
+        register("ug2", CoadminPremoteMessage.class, (m, out) -> out.writeString(m.senderName), in -> new CoadminPremoteMessage(in.readString()));
+        register("ug3", CoadminDemoteMessage.class, (m, out) -> out.writeString(m.senderName), in -> new CoadminDemoteMessage(in.readString()));
+        register("ug4", InviteMessage.class, (m, out) -> out.writeString(m.senderName), in -> new InviteMessage(in.readString()));
+        register("ug5", RemoveMessage.class, (m, out) -> out.writeString(m.senderName), in -> new RemoveMessage(in.readString()));
+        register("ug6", AdminMuteMessage.class, (m, out) -> {
+            out.writeString(m.senderName);
+            out.writeVarInt(m.milliTime);
+        }, in -> new AdminMuteMessage(in.readString(), in.readVarInt()));
+        register("ug7", AdminRemoveMessage.class, (m, out) -> out.writeString(m.senderName), in -> new AdminRemoveMessage(in.readString()));
+        register("ug8", InviteAnsYesMessage.class, (m, out) -> out.writeString(m.senderName), in -> new InviteAnsYesMessage(in.readString()));
+        register("ug9", InviteAnsNoMessage.class, (m, out) -> out.writeString(m.senderName), in -> new InviteAnsNoMessage(in.readString()));
+        register("ug10", ActionNotAllowedMassage.class, (m, out) -> out.writeString(m.msg), in -> new ActionNotAllowedMassage(in.readString()));
+        registerEmpty("ug11", new InviteAnsOkMessage());
+    }
+
+    private <T> void register(String manifest, Class<T> cls, BiConsumer<T, Output> writer, Function<Input, Object> reader){
+        Codec<T> codec = new Codec<>(manifest, writer, reader);
+        byClass.put(cls, codec);
+        byManifest.put(manifest, codec);
+    }
+
+    /**
+     * message without fields, the same instance is returned for every read
+     */
+    private <T> void registerEmpty(String manifest, T instance){
+        register(manifest, instance.getClass(), (m, out) -> {}, in -> instance);
+    }
+
+    static private void writeAddUser(AddUserMessage m, Output out){
+        out.writeString(m.userName);
+        out.writeRef(m.ref);
+    }
+
+    static private AddUserMessage readAddUser(Input in){
+        return new AddUserMessage(in.readString(), in.readRef());
+    }
+
+    /**
+     * array of strings as count + 1 (0 for null) and the strings
+     */
+    static private void writeNullableStrings(String[] strings, Output out){
+        out.writeUnsigned(strings == null ? 0 : strings.length + 1);
+        if(strings != null)
+            for(String s : strings)
+                out.writeString(s);
+    }
+
+    static private String[] readNullableStrings(Input in){
+        int len = in.readUnsignedInt() - 1;
+        if(len < 0)
+            return null;
+        String[] strings = new String[len];
+        for(int i = 0; i < len; i++)
+            strings[i] = in.readString();
+        return strings;
+    }
+
+    static private void writeDelta(PresenceDeltaMessage m, Output out){
+        out.writeUnsigned(m.added.length);
+        for(AddUserMessage user : m.added)
+            writeAddUser(user, out);
+        out.writeUnsigned(m.removed.length);
+        for(String name : m.removed)
+            out.writeString(name);
+        out.writeVarLong(m.version); //added after the other fields
+    }
+
+    static private PresenceDeltaMessage readDelta(Input in){
+        AddUserMessage[] added = new AddUserMessage[in.readUnsignedInt()];
+        for(int i = 0; i < added.length; i++)
+            added[i] = readAddUser(in);
+        String[] removed = new String[in.readUnsignedInt()];
+        for(int i = 0; i < removed.length; i++)
+            removed[i] = in.readString();
+        return new PresenceDeltaMessage(added, removed, in.hasMore() ? in.readVarLong() : -1);
+    }
+
+    @Override
+    public int identifier() {
+        return 7002;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        Codec<?> codec = byClass.get(o.getClass());
+        if(codec == null)
+            throw new IllegalArgumentException("no protocol code for " + o.getClass().getName());
+        return codec.manifest;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] toBinary(Object o) {
+        Codec<Object> codec = (Codec<Object>) byClass.get(o.getClass());
+        if(codec == null)
+            throw new IllegalArgumentException("no protocol code for " + o.getClass().getName());
+        Output out = outputs.get();
+        out.reset();
+        codec.writer.accept(o, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        Codec<?> codec = byManifest.get(manifest);
+        if(codec == null)
+            throw new NotSerializableException("unknown protocol code " + manifest);
+        return codec.reader.apply(new Input(bytes));
+    }
+
+    private Serialization serialization(){
+        if(serialization == null) //the extension can't be used while the serializers are created
+            serialization = SerializationExtension.get(system);
+        return serialization;
+    }
+
+    private String refPath(ActorRef ref){
+        String path = refPaths.get(ref);
+        if(path == null) {
+            if(refPaths.size() >= MAX_CACHED_REFS)
+                refPaths.clear();
+            path = Serialization.serializedActorPath(ref);
+            refPaths.put(ref, path);
+        }
+        return path;
+    }
+
+    private ActorRef resolve(String path){
+        ActorRef ref = pathRefs.get(path);
+        if(ref == null) {
+            if(pathRefs.size() >= MAX_CACHED_REFS)
+                pathRefs.clear();
+            ref = system.provider().resolveActorRef(path);
+            pathRefs.put(path, ref);
+        }
+        return ref;
+    }
+
+    /**
+     * growable output buffer, one for each thread
+     */
+    private class Output {
+        private byte[] buf = new byte[256];
+        private int pos;
+
+        public void reset(){
+            pos = 0;
+        }
+
+        public byte[] toByteArray(){
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int n){
+            if(pos + n > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+
+        public void writeUnsigned(long v){
+            ensure(10);
+            while((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        public void writeVarLong(long v){
+            writeUnsigned((v << 1) ^ (v >> 63));
+        }
+
+        public void writeVarInt(int v){
+            writeVarLong(v);
+        }
+
+        public void writeFixedInt(int v){
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        private void writeBytes(byte[] bytes){
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        /**
+         * ascii string is copied char by char, other strings are encoded by String.getBytes
+         */
+        public void writeRaw(String s){
+            if(isAscii(s))
+                writeAscii(s);
+            else
+                writeBytes(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void writeString(String s){
+            if(s == null)
+                writeUnsigned(0);
+            else if(isAscii(s)) {
+                writeUnsigned(s.length() + 1L);
+                writeAscii(s);
+            }
+            else {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeUnsigned(bytes.length + 1L);
+                writeBytes(bytes);
+            }
+        }
+
+        private boolean isAscii(String s){
+            for(int i = 0; i < s.length(); i++)
+                if(s.charAt(i) >= 0x80)
+                    return false;
+            return true;
+        }
+
+        private void writeAscii(String s){
+            int len = s.length();
+            ensure(len);
+            for(int i = 0; i < len; i++)
+                buf[pos++] = (byte) s.charAt(i);
+        }
+
+        public void writeRef(ActorRef ref){
+            writeString(ref == null ? null : refPath(ref));
+        }
+
+        public void writeSourceRef(SourceRef<?> ref){
+            if(ref == null) {
+                writeUnsigned(0);
+                return;
+            }
+            Serializer serializer = serialization().findSerializerFor(ref);
+            String manifest = serializer instanceof SerializerWithStringManifest ?
+                    ((SerializerWithStringManifest) serializer).manifest(ref) :
+                    (serializer.includeManifest() ? ref.getClass().getName() : "");
+            byte[] bytes = serializer.toBinary(ref);
+            writeUnsigned(serializer.identifier() + 1L);
+            writeString(manifest);
+            writeUnsigned(bytes.length);
+            writeBytes(bytes);
+        }
+    }
+
+    private class Input {
+        private final byte[] buf;
+        private int pos;
+
+        public Input(byte[] buf){
+            this.buf = buf;
+            this.pos = 0;
+        }
+
+        public boolean hasMore(){
+            return pos < buf.length;
+        }
+
+        public long readUnsigned(){
+            long v = 0;
+            for(int shift = 0; ; shift += 7) {
+                byte b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if(b >= 0)
+                    return v;
+            }
+        }
+
+        public int readUnsignedInt(){
+            return (int) readUnsigned();
+        }
+
+        public long readVarLong(){
+            long z = readUnsigned();
+            return (z >>> 1) ^ -(z & 1);
+        }
+
+        public int readVarInt(){
+            return (int) readVarLong();
+        }
+
+        public int readFixedInt(){
+            int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        public String readRaw(){
+            String s = new String(buf, pos, buf.length - pos, StandardCharsets.UTF_8);
+            pos = buf.length;
+            return s;
+        }
+
+        public String readString(){
+            int len = readUnsignedInt() - 1;
+            if(len < 0)
+                return null;
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        public ActorRef readRef(){
+            String path = readString();
+            return path == null ? null : resolve(path);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> SourceRef<T> readSourceRef(){
+            long id = readUnsigned();
+            if(id == 0)
+                return null;
+            int serializerId = (int) (id - 1);
+            String manifest = readString();
+            int len = readUnsignedInt();
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + len);
+            pos += len;
+            return (SourceRef<T>) serialization().deserialize(bytes, serializerId, manifest).get();
+        }
+    }
+}
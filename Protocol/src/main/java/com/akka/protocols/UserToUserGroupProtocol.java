@@ -1,10 +1,9 @@
-package controllers.protocols;
+package com.akka.protocols;
 
-import controllers.protocols.Abstracts.*;
+import com.akka.protocols.Abstracts.AbstractNamedMessage;
+import com.akka.protocols.Abstracts.RemoteMessageInterface;
 
 public class UserToUserGroupProtocol {
-
-
     static public class MuteMessage extends AbstractNamedMessage{
         public final int milliTime;
 
@@ -55,7 +54,7 @@ public class UserToUserGroupProtocol {
             this.msg = msg;
         }
     }
-    static public class InviteAnsOkMessage implements RemoteMessageInterface{}
+    static public class InviteAnsOkMessage implements RemoteMessageInterface {}
 
 
 }
@@ -0,0 +1,115 @@
+package com.akka.protocols;
+
+import akka.stream.SourceRef;
+import akka.util.ByteString;
+import com.akka.protocols.Abstracts.AbstractNamedMessage;
+import com.akka.protocols.Abstracts.RemoteMessageInterface;
+
+
+public class UserToUserProtocol {
+
+    /**
+     * text with id (id > 0) is reliable text, the receiver answer TextAckMessage and ignore
+     * the same id that arrive again. the ids are per sender session (epoch) and receiver.
+     */
+    static public class TextMessage extends AbstractNamedMessage {
+        public final String msg;
+        public final long epoch;
+        public final long id;
+
+        public TextMessage(String senderName, String msg){
+            this(senderName,msg,0,0);
+        }
+
+        public TextMessage(String senderName, String msg, long epoch, long id){
+            super(senderName);
+            this.msg = msg;
+            this.epoch = epoch;
+            this.id = id;
+        }
+    }
+
+    /**
+     * the receiver got the reliable text with the epoch and id
+     */
+    static public class TextAckMessage implements RemoteMessageInterface {
+        public final long epoch;
+        public final long id;
+
+        public TextAckMessage(long epoch, long id){
+            this.epoch = epoch;
+            this.id = id;
+        }
+    }
+
+    static public class FileMessage extends AbstractNamedMessage {
+        public final String fileName;
+        public final SourceRef<ByteString> fileRef;
+
+        public FileMessage(String senderName ,String fileName, SourceRef<ByteString> fileRef){
+            super(senderName);
+            this.fileName = fileName;
+            this.fileRef = fileRef;
+        }
+    }
+
+    /**
+     * offer of file that is sent in chunks of chunkSize and can be resumed,
+     * checksums[i] is the crc32 of chunk i.
+     * the sender of this message is the transfer actor of the sender, the receiver ask it for the chunks
+     */
+    static public class ResumableFileMessage extends AbstractNamedMessage {
+        public final String transferId;
+        public final String fileName;
+        public final long fileSize;
+        public final int chunkSize;
+        public final int[] checksums;
+
+        public ResumableFileMessage(String senderName, String transferId, String fileName, long fileSize, int chunkSize, int[] checksums){
+            super(senderName);
+            this.transferId = transferId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+            this.checksums = checksums;
+        }
+    }
+
+    /**
+     * ask for the file chunks from fromChunk to the end of the file
+     */
+    static public class FileChunkRequest implements RemoteMessageInterface {
+        public final String transferId;
+        public final int fromChunk;
+
+        public FileChunkRequest(String transferId, int fromChunk){
+            this.transferId = transferId;
+            this.fromChunk = fromChunk;
+        }
+    }
+
+    static public class FileChunksMessage implements RemoteMessageInterface {
+        public final String transferId;
+        public final int fromChunk;
+        public final SourceRef<ByteString> chunksRef;
+
+        public FileChunksMessage(String transferId, int fromChunk, SourceRef<ByteString> chunksRef){
+            this.transferId = transferId;
+            this.fromChunk = fromChunk;
+            this.chunksRef = chunksRef;
+        }
+    }
+
+    /**
+     * the receiver verified the first 'acked' chunks, all the chunks acked mean the transfer is done
+     */
+    static public class FileChunkAck implements RemoteMessageInterface {
+        public final String transferId;
+        public final int acked;
+
+        public FileChunkAck(String transferId, int acked){
+            this.transferId = transferId;
+            this.acked = acked;
+        }
+    }
+}
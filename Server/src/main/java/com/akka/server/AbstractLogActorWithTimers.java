@@ -0,0 +1,175 @@
+package com.akka.server;
+
+import akka.actor.AbstractActorWithTimers;
+import akka.actor.ActorRef;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import java.util.concurrent.ConcurrentHashMap;
+import com.akka.server.metrics.ActorMetrics;
+import scala.PartialFunction;
+import scala.runtime.BoxedUnit;
+
+/**
+ * AbstractActor with custom log tools, metrics and timer,
+ * the count and the processing time of each message are recorded in ActorMetrics.
+ */
+public abstract class AbstractLogActorWithTimers extends AbstractActorWithTimers {
+    protected final LoggingAdapter logger;
+    private String log_name;
+    private final String prefix; //"[system name][log name] "
+    private final ConcurrentHashMap<String,String> templates; //template -> template with the prefix, see addName
+    private final ActorMetrics.Actor metrics; //null if the metrics are disabled
+
+    /**
+     * constructor with specific log name
+     * @param log_name
+     */
+    protected AbstractLogActorWithTimers(String log_name){
+        this.log_name = log_name;
+        logger = Logging.getLogger(getContext().getSystem(),this.getClass());
+        prefix = String.format("[%s][%s] ",getContext().getSystem().name(),this.log_name);
+        templates = new ConcurrentHashMap<>();
+        metrics = ActorMetrics.register(getContext().getSystem(),getSelf(),this.getClass());
+    }
+
+    /**
+     * constructor with Actor name as log name
+     */
+    protected AbstractLogActorWithTimers(){
+        this.log_name = getSelf().path().name();
+        logger = Logging.getLogger(getContext().getSystem(),this.getClass());
+        prefix = String.format("[%s][%s] ",getContext().getSystem().name(),this.log_name);
+        templates = new ConcurrentHashMap<>();
+        metrics = ActorMetrics.register(getContext().getSystem(),getSelf(),this.getClass());
+    }
+
+    /**
+     * process the message and record its processing time
+     */
+    @Override
+    public void aroundReceive(PartialFunction<Object, BoxedUnit> receive, Object msg) {
+        if(metrics == null) {
+            super.aroundReceive(receive,msg);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            super.aroundReceive(receive,msg);
+        } finally {
+            metrics.record(msg,System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * called only when the actor stopped (not on restart)
+     */
+    @Override
+    public void aroundPostStop() {
+        try {
+            super.aroundPostStop();
+        } finally {
+            if(metrics != null)
+                ActorMetrics.unregister(metrics);
+        }
+    }
+
+    /**
+     * this function preform a tell to some ActorRef and record this in the actor log
+     * @param dst: NotNull ActorRef to preform tell on him
+     * @param m: message to send to dst
+     * @param sender: the ActorRef sender
+     */
+    protected void logAndTell(ActorRef dst, Object m, ActorRef sender){
+        if(logger.isDebugEnabled())
+            logger.debug(addName("send {} to {}"),m.getClass().getName(),dst.path().name());
+        dst.tell(m,sender);
+    }
+
+    protected void logDebug(String template){
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template));
+    }
+
+    protected void logDebug(String template,Object arg1){
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1);
+    }
+    protected void logDebug(String template,Object arg1,Object arg2){
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1,arg2);
+    }
+
+    protected void logDebug(String template,Object arg1,Object arg2,Object arg3){
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1,arg2,arg3);
+    }
+
+    protected void logDebug(String template,Object arg1,Object arg2,Object arg3,Object arg4){
+        if(logger.isDebugEnabled())
+            logger.debug(addName(template),arg1,arg2,arg3,arg4);
+    }
+
+    protected void logWarn(String template){
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template));
+    }
+
+    protected void logWarn(String template,Object arg1){
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1);
+    }
+    protected void logWarn(String template,Object arg1,Object arg2){
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1,arg2);
+    }
+
+    protected void logWarn(String template,Object arg1,Object arg2,Object arg3){
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1,arg2,arg3);
+    }
+
+    protected void logWarn(String template,Object arg1,Object arg2,Object arg3,Object arg4){
+        if(logger.isWarningEnabled())
+            logger.warning(addName(template),arg1,arg2,arg3,arg4);
+    }
+
+    protected void logError(String template){
+        if(logger.isErrorEnabled())
+            logger.error(addName(template));
+    }
+
+    protected void logError(String template,Object arg1){
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1);
+    }
+    protected void logError(String template,Object arg1,Object arg2){
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1,arg2);
+    }
+
+    protected void logError(String template,Object arg1,Object arg2,Object arg3){
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1,arg2,arg3);
+    }
+
+    protected void logError(String template,Object arg1,Object arg2,Object arg3,Object arg4){
+        if(logger.isErrorEnabled())
+            logger.error(addName(template),arg1,arg2,arg3,arg4);
+    }
+
+    /**
+     * the named template is made once for each template of the actor,
+     * the templates are literals so the map stay small.
+     * @param template: template to the logger
+     * @return the template with the actor name in the beginning
+     */
+    private String addName(String template){
+        String named = templates.get(template);
+        if(named == null) {
+            named = prefix + template;
+            templates.put(template,named);
+        }
+        return named;
+    }
+}
+
@@ -1,36 +1,98 @@
 package com.akka.server;
 
-import akka.NotUsed;
+import akka.Done;
 import akka.actor.*;
+import akka.routing.ConsistentHashingRouter.ConsistentHashableEnvelope;
+import akka.japi.Pair;
 import akka.stream.ActorMaterializer;
 import akka.stream.Materializer;
 import akka.stream.SourceRef;
-import akka.stream.javadsl.StreamRefs;
+import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamRefs;
+import akka.pattern.Patterns;
+import com.typesafe.config.Config;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.CompletionStage;
-import akka.pattern.Patterns;
-import com.akka.server.protocols.ClientServerGroupsProtocol.*;
-import com.akka.server.protocols.ClientServerProtocol.*;
+import java.util.stream.Collectors;
+import com.akka.server.journal.MailboxStore;
+import com.akka.server.metrics.ActorMetrics;
+import com.akka.protocols.Abstracts.RemoteMessageInterface;
+import com.akka.protocols.ClientServerGroupsProtocol.*;
+import com.akka.protocols.ClientServerProtocol.*;
+import com.akka.protocols.UserToUserProtocol.TextMessage;
 
 /**
  * this actor class manage the server connections
  * and in charge of updating the the active users on
  * connection/disconnections of users and
- * creating new groups
+ * creating new groups.
+ * each Connector is one shard of the users registry, the users and the groups
+ * are partitioned between the shards (of all the server nodes) by name hash,
+ * see Server.startNode and hashKey.
+ * text messages to users that are not active are stored in the shard how own the user name
+ * and delivered to the user when he connect, the store is forced to the disk every 'offline.flush-interval'.
  */
-public class Connector extends AbstractLogActor {
+public class Connector extends AbstractLogActorWithTimers {
     private final HashMap<String, UserRefs> activeUsers;
     private final Set<String> disconnectingUsers;
     private final Materializer mat;
+    private final ActorRef presence; //PresencePublisher, inform the active users on connections/disconnections
+    private final ActorRef registry; //consistent hashing router to all the shards
     private String tmpFileDir; //path to where tmp file will be saved, for now only group file will be save in this path
-    static public Props props() {
-        return Props.create(Connector.class, () -> new Connector());
+    private final String journalDir; //path to the groups journals of this shard
+    private final HashMap<String, List<DeadLetter>> pendingRestore; //messages to passivated groups that still stopping
+    private MailboxStore mailbox; //messages to offline users owned by this shard
+    static public Props props(ActorRef presence, ActorRef registry) {
+        return Props.create(Connector.class, () -> new Connector(presence, registry)).withMailbox(ActorMetrics.MAILBOX);
     }
 
+    /**
+     * CreateGroupMessage after it routed to the shard how own the group name
+     */
+    static public class OwnedCreateGroupMessage implements RemoteMessageInterface {
+        public final String groupName;
+        public OwnedCreateGroupMessage(String groupName){this.groupName = groupName;}
+    }
+
+    /**
+     * hash mapper for the registry router, users are partitioned by user name
+     * @param m: message to the registry
+     * @return the hash key of the message or null if unknown
+     */
+    static public Object hashKey(Object m){
+        if(m instanceof ConnectMessage)
+            return ((ConnectMessage) m).senderName;
+        if(m instanceof OfflineTextMessage)
+            return ((OfflineTextMessage) m).toUser;
+        return null;
+    }
+
+    /**
+     * the offline messages of the user up to seqNr were sent
+     */
+    private class OfflineDrained{
+        public final String userName;
+        public final long seqNr;
+        public OfflineDrained(String userName, long seqNr){
+            this.userName = userName;
+            this.seqNr = seqNr;
+        }
+    }
+
+    /**
+     * force the offline mailbox to the disk
+     */
+    static private class FlushMailbox{}
+
     private class ForceDisconnect{
         public final String userName;
         public ForceDisconnect(String userName){this.userName = userName;}
@@ -51,19 +113,42 @@ public class Connector extends AbstractLogActor {
 
     }
 
-    public Connector(){
+    public Connector(ActorRef presence, ActorRef registry){
         super();
+        this.presence = presence;
+        this.registry = registry;
         activeUsers = new HashMap<>();
         disconnectingUsers = new TreeSet<>();
         mat = ActorMaterializer.create(getContext());
         tmpFileDir = util.createdir(Paths.get("tmpfile"));
+        journalDir = util.createdir(Paths.get("journal",getSelf().path().name()));
+        pendingRestore = new HashMap<>();
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        Config conf = getContext().getSystem().settings().config().getConfig("whatsapp.offline");
+        mailbox = new MailboxStore(Paths.get("mailbox",getSelf().path().name()),
+                conf.getBytes("segment-size").intValue(),conf.getInt("max-per-user"));
+        getTimers().startPeriodicTimer(FlushMailbox.class,new FlushMailbox(),conf.getDuration("flush-interval"));
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if(mailbox != null)
+            mailbox.close();
     }
 
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(ConnectMessage.class, m -> {
-                    if(!disconnectingUsers.contains(m.senderName) && activeUsers.putIfAbsent(m.senderName,new UserRefs(m.mainRef,m.receiveRef)) == null) {
+                    UserRefs uref = activeUsers.get(m.senderName);
+                    if(uref != null && uref.mainRef.equals(m.mainRef)) {
+                        System.out.println("server: "+getSender().path().address() + " connected again");
+                        reconnectHandler(m);
+                    }
+                    else if(!disconnectingUsers.contains(m.senderName) && activeUsers.putIfAbsent(m.senderName,new UserRefs(m.mainRef,m.receiveRef)) == null) {
                         System.out.println("server: "+getSender().path().address() + " connected");
                         connectHandler(m);
                     }
@@ -73,59 +158,187 @@ public class Connector extends AbstractLogActor {
                     }
                 })
                 .match(DisconnectMessage.class,this::disconnectHandler)
-                .match(CreateGroupMessage.class,this::CreateGroupHandler)
+                .match(OfflineTextMessage.class,this::offlineTextHandler)
+                .match(PresenceInterestMessage.class,m -> presence.forward(m,getContext()))
+                .match(OfflineDrained.class,this::offlineDrainedHandler)
+                .match(FlushMailbox.class,m -> mailbox.force())
+                .match(CreateGroupMessage.class,m ->
+                        registry.forward(new ConsistentHashableEnvelope(new OwnedCreateGroupMessage(m.groupName),m.groupName),getContext()))
+                .match(OwnedCreateGroupMessage.class,this::CreateGroupHandler)
                 .match(DisconnectFinalStage.class,this::disconnectFinalStageHandler)
                 .match(ForceDisconnect.class,m -> {removeActiveUser(m.userName);})
+                .match(DeadLetter.class,this::deadLetterHandler)
+                .match(Terminated.class,this::groupTerminatedHandler)
                 .build();
     }
 
     /**
-     * this function create an sourceRef of the active users and send a message user that he his connected
-     * and the sourceRef.
-     * in addition inform all other active users on the new user.
+     * this function watch the new user and inform the presence publisher,
+     * the publisher send the user that he his connected with sourceRef of all the active users
+     * (or only the changes since the presence version the user has)
+     * and inform all other active users on the new user.
      * @param m: ConnectMessage
      */
     private void connectHandler(ConnectMessage m) {
         getContext().watchWith(m.mainRef,new ForceDisconnect(m.senderName));
-        Source<AddUserMessage,NotUsed> uStream = Source.from(this.activeUsers.entrySet())
-                .filter(user -> !user.getKey().equals(m.senderName))
-                .map(e -> new AddUserMessage(e.getKey(),e.getValue().reseiveRef));
-        CompletionStage<SourceRef<AddUserMessage>> logsRef = uStream.runWith(StreamRefs.sourceRef(),mat);
-        Patterns.pipe(logsRef.thenApply(s -> new ConnectedSuccessfullyMessage(getSelf(),s)), context().dispatcher())
-                .to(getSender()).future();
+        presence.tell(new PresencePublisher.UserJoined(m.senderName,m.mainRef,m.receiveRef,getSender(),m.presenceEpoch,m.presenceVersion,m.interest),getSelf());
+        deliverOffline(m.senderName,m.receiveRef);
+    }
+
+    /**
+     * connect retry of user that already connected (the answer was lost or arrived after the user timeout),
+     * the user is already watched and got his offline messages so only the answer is sent again,
+     * the presence publisher know the user and only send him the active users again.
+     * @param m: ConnectMessage with the mainRef of the active user
+     */
+    private void reconnectHandler(ConnectMessage m) {
+        presence.tell(new PresencePublisher.UserJoined(m.senderName,m.mainRef,m.receiveRef,getSender(),m.presenceEpoch,m.presenceVersion,m.interest),getSelf());
+    }
 
-        Source.from(this.activeUsers.entrySet()).runForeach(u -> u.getValue().mainRef.tell(new AddUserMessage(m.senderName,m.receiveRef),null),mat);
+    /**
+     * store text message to offline user, this shard own the user name.
+     * if the user connected in the meantime the message is sent to him directly.
+     * if the user has too many stored messages or the mailbox can't be written the sender get OfflineDenialMessage.
+     * @param m: OfflineTextMessage
+     */
+    private void offlineTextHandler(OfflineTextMessage m){
+        UserRefs uref = activeUsers.get(m.toUser);
+        if(uref != null) {
+            uref.reseiveRef.tell(new TextMessage(m.senderName,m.msg),getSender());
+            return;
+        }
+        boolean stored;
+        try {
+            stored = mailbox.store(m.toUser,m.senderName,m.msg);
+        } catch (IOException e) {
+            logError("failed to store offline message to {}: {}",m.toUser,e);
+            stored = false;
+        }
+        if(!stored)
+            getSender().tell(new OfflineDenialMessage(m.toUser),getSelf());
+    }
+
+    /**
+     * the offline messages of the user delivered, remove them from the mailbox.
+     * if the mailbox can't be written the messages stay pending and will be sent again on the next connect
+     * @param m: OfflineDrained
+     */
+    private void offlineDrainedHandler(OfflineDrained m){
+        try {
+            mailbox.drained(m.userName,m.seqNr);
+        } catch (IOException e) {
+            logError("failed to mark the offline messages of {} as delivered: {}",m.userName,e);
+        }
+    }
+
+    /**
+     * send all the stored messages of the user as one sourceRef to his message receiver.
+     * the messages are removed from the mailbox only after the stream is completed,
+     * if the stream failed they will be sent again on the next connect.
+     * @param userName: the connected user
+     * @param receiveRef: the user message receiver
+     */
+    private void deliverOffline(String userName, ActorRef receiveRef){
+        List<MailboxStore.StoredMessage> stored = mailbox.pending(userName);
+        if(stored.isEmpty())
+            return;
+        long lastSeqNr = stored.get(stored.size() - 1).seqNr;
+        List<TextMessage> texts = stored.stream()
+                .map(s -> new TextMessage(s.from,s.text))
+                .collect(Collectors.toList());
+        Pair<CompletionStage<Done>,CompletionStage<SourceRef<TextMessage>>> run = Source.from(texts)
+                .watchTermination(Keep.right())
+                .toMat(StreamRefs.sourceRef(),Keep.both())
+                .run(mat);
+        Patterns.pipe(run.second().thenApply(s -> new OfflineMessagesMessage(texts.size(),s)),getContext().dispatcher())
+                .to(receiveRef).future();
+        ActorRef self = getSelf();
+        run.first().thenAccept(d -> self.tell(new OfflineDrained(userName,lastSeqNr),ActorRef.noSender()));
+        logDebug("send {} offline messages to {}",texts.size(),userName);
     }
 
     /**
      * if group name is already exist then send create group denial message to the user how ask to create the group.
      * otherwise create new group with the requested name and inform the user.
-     * @param m CreateGroupMessage with group name
+     * this shard own the group name so the check is valid for all the server.
+     * @param m OwnedCreateGroupMessage with group name
      */
-    private void CreateGroupHandler(CreateGroupMessage m){
+    private void CreateGroupHandler(OwnedCreateGroupMessage m){
         System.out.println(String.format("%s want to create group %s",getSender().path().name(),m.groupName));
-        if(getContext().findChild(m.groupName).isPresent()) {
+        if(getContext().findChild(m.groupName).isPresent() || isPassivated(m.groupName)) {
             System.out.println("group name exist");
             getSender().tell(new CreateGroupDenialMessage(m.groupName), null);
         }
         else {
             System.out.println(String.format("create group %s!!",m.groupName));
-            getContext().actorOf(GroupRouter.props(getSender(),tmpFileDir, mat),m.groupName);
+            getContext().watch(getContext().actorOf(GroupRouter.props(getSender(),tmpFileDir,journalDir,mat),m.groupName));
         }
     }
 
+    /**
+     * message to passivated group of this shard restore the group from its journal
+     * and deliver the message to it (the dead letters of the shard groups come from GroupDeadLetters).
+     * message to previous incarnation of running group (the member didn't get GroupRestoredMessage yet)
+     * is sent to the running group.
+     * if the group is still stopping the message is kept until the group terminated.
+     * @param m: DeadLetter
+     */
+    private void deadLetterHandler(DeadLetter m){
+        ActorPath path = m.recipient().path();
+        if(!path.parent().equals(getSelf().path()) || !isPassivated(path.name()))
+            return;
+        Optional<ActorRef> child = getContext().findChild(path.name());
+        if(!child.isPresent())
+            restoreGroup(path.name()).tell(m.message(),m.sender());
+        else if(!child.get().equals(m.recipient()))
+            child.get().tell(m.message(),m.sender());
+        else
+            pendingRestore.computeIfAbsent(path.name(),k -> new ArrayList<>()).add(m);
+    }
+
+    /**
+     * group of this shard stopped, if there are messages to the group it is restored
+     * @param m: Terminated of some group
+     */
+    private void groupTerminatedHandler(Terminated m){
+        List<DeadLetter> pending = pendingRestore.remove(m.actor().path().name());
+        if(pending != null && isPassivated(m.actor().path().name())) {
+            ActorRef group = restoreGroup(m.actor().path().name());
+            for(DeadLetter dl : pending)
+                group.tell(dl.message(),dl.sender());
+        }
+    }
+
+    private ActorRef restoreGroup(String groupName){
+        logDebug("restore group {}",groupName);
+        ActorRef group = getContext().actorOf(GroupRouter.restoreProps(tmpFileDir,journalDir,mat),groupName);
+        getContext().watch(group);
+        return group;
+    }
+
+    /**
+     * group that is not running but has journal is passivated,
+     * this include the groups from before the server restart
+     */
+    private boolean isPassivated(String groupName){
+        return Files.isDirectory(Paths.get(journalDir,groupName));
+    }
+
     /**
      * remove the user from the active users and inform all other users.
      * the name of the removed user saved until the disconnecting procedure done
-     * to prevent other user to connect with this name befor the disconnecting procedure is over
+     * to prevent other user to connect with this name befor the disconnecting procedure is over.
+     * user that is not active (retry of disconnect that already approved) get the approve again
      * @param m: DisconnectMessage
      */
     private void disconnectHandler(DisconnectMessage m){
-        ActorRef ref = removeActiveUser(m.senderName);
-        if(ref != null) {
-            disconnectingUsers.add(m.senderName);
-            ref.tell("yes", null);
+        if(!activeUsers.containsKey(m.senderName)) { //retry after the approve was lost, or unknown user
+            getSender().tell("yes", null);
+            return;
         }
+        ActorRef ref = removeActiveUser(m.senderName);
+        disconnectingUsers.add(m.senderName);
+        ref.tell("yes", null);
     }
 
     /**
@@ -133,8 +346,9 @@ public class Connector extends AbstractLogActor {
      * and is name will be available.
      * if the use is in 'disconnectingUsers' then he simply removed and disconnected finished message will be sent
      * to the user.
-     * otherwise this imply that the user forced to disconnect and he simply removed from active users
-     * without saving is name and without disconnected finished message
+     * if the user is active this imply that the user forced to disconnect and he simply removed from active users
+     * without saving is name and without disconnected finished message.
+     * otherwise the disconnect already finished (this is a retry) and disconnected finished message is sent again.
      * @param m: DisconnectFinalStage
      */
     private void disconnectFinalStageHandler(DisconnectFinalStage m){
@@ -144,8 +358,10 @@ public class Connector extends AbstractLogActor {
             getContext().unwatch(getSender());
             getSender().tell(new DisconnectFinished(), null);
         }
-        else
+        else if(activeUsers.containsKey(m.senderName))
             removeActiveUser(m.senderName);
+        else //retry after the disconnect finished, or unknown user
+            getSender().tell(new DisconnectFinished(), null);
     }
 
     /**
@@ -161,8 +377,7 @@ public class Connector extends AbstractLogActor {
             logError("user {} not found",userName);
             return null;
         }
-        Source.from(this.activeUsers.entrySet()) //inform all other users
-                .runForeach(u -> u.getValue().mainRef.tell(new SomeoneLeaveMessage(userName),null),mat);
+        presence.tell(new PresencePublisher.UserLeft(userName),getSelf()); //inform all other users
         logDebug("user {} disconnecting",userName);
         return uref.mainRef;
     }
@@ -0,0 +1,92 @@
+package com.akka.server;
+
+import akka.util.ByteString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * read the chunks of relayed file for all the group members.
+ * the chunks are aligned to chunkSize and the recently read chunks are cached,
+ * so when the members read the file in similar pace each chunk is read and allocated once
+ * and the same (immutable) ByteString is sent to all of them.
+ * after the file is complete it is memory mapped once and the chunks are copied from the mapping,
+ * file larger than 2GB is read from the channel.
+ * not thread safe, used by FileRelay only.
+ */
+public class FileChunks {
+    private final FileChannel ch;
+    private final int chunkSize;
+    private final long cacheBytes;
+    private final LinkedHashMap<Long, ByteString> cache; //chunk offset -> chunk, in access order
+    private long cached;
+    private MappedByteBuffer mapped;
+
+    /**
+     * @param ch: read channel of the file
+     * @param chunkSize: chunk size, the last chunk of the file can be smaller
+     * @param cacheBytes: max size of the cached chunks
+     */
+    public FileChunks(FileChannel ch, int chunkSize, long cacheBytes){
+        this.ch = ch;
+        this.chunkSize = chunkSize;
+        this.cacheBytes = cacheBytes;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.cached = 0;
+    }
+
+    /**
+     * the file is complete, map it
+     * @param size: the file size
+     */
+    public void complete(long size) throws IOException {
+        if(size > 0 && size <= Integer.MAX_VALUE)
+            mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * @param offset: chunk offset, multiple of chunkSize
+     * @param size: the file size that can be read
+     * @return the chunk at offset, empty if offset is the end of the file
+     */
+    public ByteString chunk(long offset, long size) throws IOException {
+        int len = (int) Math.min(chunkSize, size - offset);
+        if(len <= 0)
+            return ByteString.empty();
+        ByteString chunk = cache.get(offset);
+        if(chunk != null && chunk.size() == len)
+            return chunk;
+        chunk = read(offset, len);
+        put(offset, chunk);
+        return chunk;
+    }
+
+    private ByteString read(long offset, int len) throws IOException {
+        byte[] bytes = new byte[len];
+        if(mapped != null) {
+            ByteBuffer slice = mapped.duplicate();
+            slice.position((int) offset);
+            slice.get(bytes);
+        }
+        else {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while(buf.hasRemaining())
+                if(ch.read(buf, offset + buf.position()) < 0)
+                    throw new IOException("file is shorter than expected");
+        }
+        return ByteString.fromArrayUnsafe(bytes);
+    }
+
+    private void put(long offset, ByteString chunk){
+        ByteString old = cache.put(offset, chunk);
+        cached += chunk.size() - (old == null ? 0 : old.size());
+        while(cached > cacheBytes && !cache.isEmpty()) {
+            Map.Entry<Long, ByteString> eldest = cache.entrySet().iterator().next();
+            cached -= eldest.getValue().size();
+            cache.remove(eldest.getKey());
+        }
+    }
+}
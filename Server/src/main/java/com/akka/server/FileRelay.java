@@ -0,0 +1,254 @@
+package com.akka.server;
+
+import akka.NotUsed;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.Status;
+import akka.japi.Pair;
+import akka.pattern.Patterns;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * relay one group file to the group members.
+ * the upload is written to the group FileStore and each member read the file in chunks
+ * while it is still uploaded, so the members get the first chunk without waiting to the whole upload.
+ * each member stream read in its own pace, slow member doesn't slow the others.
+ * the chunks are read once for all the members, see FileChunks.
+ * when the upload completed the file is saved in the store under the hash computed here,
+ * if the sender sent other hash the file is not stored and the group get Rejected,
+ * so the group never serve stored file under hash that the server didn't compute.
+ * the relay from the store is used for files that were stored before (catch-up).
+ * the actor stop when all the members send 'ok' or after maxTime.
+ */
+public class FileRelay extends AbstractLogActorWithTimers {
+    /**
+     * relay of file that is uploaded now, see uploadSink
+     * @param hash: the content hash that the sender sent, null if not known
+     * @param seqNr: the group seqNr of the file, returned in Rejected
+     */
+    static public Props uploadProps(FileStore store, String hash, long seqNr, int count, int chunkSize, long cacheBytes, Duration maxTime) {
+        return Props.create(FileRelay.class, () -> new FileRelay(store, null, hash, seqNr, count, chunkSize, cacheBytes, maxTime));
+    }
+
+    /**
+     * relay of file from the store
+     */
+    static public Props storedProps(Path stored, int count, int chunkSize, long cacheBytes, Duration maxTime) {
+        return Props.create(FileRelay.class, () -> new FileRelay(null, stored, null, 0, count, chunkSize, cacheBytes, maxTime));
+    }
+
+    /**
+     * sent to the parent group when the uploaded content doesn't match the hash that the sender sent,
+     * the file is not stored and its hash should not be used
+     */
+    static public class Rejected {
+        public final long seqNr;
+        public Rejected(long seqNr){this.seqNr = seqNr;}
+    }
+
+    /**
+     * member stream ask for the chunk at offset,
+     * the relay answer with Chunk when the whole chunk is uploaded or the file is complete
+     */
+    static public class Await {
+        public final long offset;
+        public Await(long offset){this.offset = offset;}
+    }
+
+    /**
+     * chunk of the file, empty chunk mark the end of the file
+     */
+    static public class Chunk {
+        public final ByteString data;
+        public Chunk(ByteString data){this.data = data;}
+    }
+
+    static private class UploadInit{}
+    static private class UploadAck{}
+    static private final UploadAck ACK = new UploadAck(); //the sink match the ack by equality
+    static private class UploadDone{}
+    static private class UploadFailed {
+        public final Throwable cause;
+        public UploadFailed(Throwable cause){this.cause = cause;}
+    }
+    static private class Timeout{}
+
+    /**
+     * sink of the uploaded file, the upload is backpressured by the relay writes
+     * @param relay: FileRelay created by uploadProps
+     */
+    static public Sink<ByteString, NotUsed> uploadSink(ActorRef relay){
+        return Sink.actorRefWithAck(relay, new UploadInit(), ACK, new UploadDone(), UploadFailed::new);
+    }
+
+    /**
+     * source of the file for one member, the chunks are shared with the other members
+     * @param relay: FileRelay of the file
+     * @param timeout: max time to wait for the next chunk
+     */
+    static public Source<ByteString, NotUsed> source(ActorRef relay, Duration timeout){
+        return Source.unfoldAsync(0L, offset -> Patterns.ask(relay, new Await(offset), timeout)
+                .thenApply(r -> {
+                    ByteString data = ((Chunk) r).data;
+                    return data.isEmpty() ? Optional.<Pair<Long, ByteString>>empty() : Optional.of(Pair.create(offset + data.size(), data));
+                }));
+    }
+
+    private final FileStore store;
+    private final Path part; //the uploaded file, null when relay from the store
+    private final FileChannel readCh;
+    private final FileChunks chunks;
+    private final int chunkSize;
+    private final FileChannel writeCh;
+    private final MessageDigest digest;
+    private final String hash; //the hash that the sender sent
+    private final long seqNr;
+    private final List<Pair<Long, ActorRef>> waiting; //member streams waiting for data: offset -> ask ref
+    private long written;
+    private boolean complete;
+    private Throwable failure;
+    private int count;
+
+    public FileRelay(FileStore store, Path stored, String hash, long seqNr, int count, int chunkSize, long cacheBytes, Duration maxTime) throws Exception {
+        this.store = store;
+        this.hash = hash;
+        this.seqNr = seqNr;
+        this.count = count;
+        this.chunkSize = chunkSize;
+        this.waiting = new ArrayList<>();
+        if(stored != null) {
+            this.part = null;
+            this.writeCh = null;
+            this.digest = null;
+            this.readCh = FileChannel.open(stored, StandardOpenOption.READ);
+            this.written = readCh.size();
+            this.complete = true;
+            this.chunks = new FileChunks(readCh, chunkSize, cacheBytes);
+            chunks.complete(written);
+        }
+        else {
+            this.part = store.newPart();
+            this.writeCh = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            this.readCh = FileChannel.open(part, StandardOpenOption.READ);
+            this.digest = MessageDigest.getInstance("SHA-256");
+            this.written = 0;
+            this.complete = false;
+            this.chunks = new FileChunks(readCh, chunkSize, cacheBytes);
+        }
+        getTimers().startSingleTimer(Timeout.class, new Timeout(), maxTime);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(UploadInit.class, m -> getSender().tell(ACK, getSelf()))
+                .match(ByteString.class, this::chunkHandler)
+                .match(UploadDone.class, m -> uploadDoneHandler())
+                .match(UploadFailed.class, this::uploadFailedHandler)
+                .match(Await.class, this::awaitHandler)
+                .matchEquals("ok", m -> { //members send 'ok' after they saved the file
+                    if(--count <= 0 && complete)
+                        getContext().stop(getSelf());
+                })
+                .match(Timeout.class, m -> getContext().stop(getSelf()))
+                .build();
+    }
+
+    private void chunkHandler(ByteString chunk) throws IOException {
+        for(ByteBuffer buf : chunk.getByteBuffers()) {
+            digest.update(buf.duplicate());
+            while(buf.hasRemaining())
+                writeCh.write(buf);
+        }
+        written += chunk.size();
+        getSender().tell(ACK, getSelf());
+        wakeUp();
+    }
+
+    /**
+     * close the uploaded file, map it and save it in the store under its hash.
+     * file that doesn't match the hash that the sender sent is deleted (the members still read it
+     * through the open channel) and the group get Rejected
+     */
+    private void uploadDoneHandler(){
+        complete = true;
+        try {
+            writeCh.close();
+            chunks.complete(written);
+            String computed = FileStore.hex(digest.digest());
+            if(hash == null || hash.equals(computed))
+                store.commit(part, computed);
+            else {
+                logWarn("group file {} content hash is {} but the sender sent {}, the file is not stored", seqNr, computed, hash);
+                Files.deleteIfExists(part);
+                getContext().getParent().tell(new Rejected(seqNr), getSelf());
+            }
+        }catch (IOException e){
+            System.out.println(String.format("group file store failed: %s", e.getMessage()));
+        }
+        wakeUp();
+        if(count <= 0)
+            getContext().stop(getSelf());
+    }
+
+    private void uploadFailedHandler(UploadFailed m){
+        System.out.println(String.format("group file upload failed: %s", m.cause.getMessage()));
+        failure = m.cause;
+        wakeUp();
+        getContext().stop(getSelf());
+    }
+
+    private void awaitHandler(Await m){
+        if(!answer(m.offset, getSender()))
+            waiting.add(Pair.create(m.offset, getSender()));
+    }
+
+    /**
+     * answer to the member streams that wait for chunk that is available now
+     */
+    private void wakeUp(){
+        waiting.removeIf(w -> answer(w.first(), w.second()));
+    }
+
+    /**
+     * send the chunk at offset if it is available
+     * @return false if the chunk is not uploaded yet
+     */
+    private boolean answer(long offset, ActorRef replyTo){
+        if(failure == null && !complete && written < offset + chunkSize)
+            return false;
+        Object reply;
+        try {
+            reply = failure != null ? new Status.Failure(failure) : new Chunk(chunks.chunk(offset, written));
+        }catch (IOException e){
+            reply = new Status.Failure(e);
+        }
+        replyTo.tell(reply, getSelf());
+        return true;
+    }
+
+    /**
+     * close the file, upload that didn't complete is deleted
+     */
+    @Override
+    public void postStop() throws IOException {
+        readCh.close();
+        if(part != null && !complete) {
+            writeCh.close();
+            Files.deleteIfExists(part);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.akka.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * content addressed store of the files that were sent to group.
+ * each file is saved once under the sha-256 hash that the server computed while it was uploaded,
+ * so file that sent again to the group is kept once, and members that missed it get it from the store.
+ * when the store is bigger than maxBytes the least recently used files are deleted.
+ * used by the FileRelay actors of the group, so the methods are synchronized.
+ */
+public class FileStore {
+    static private final String PART = ".part";
+
+    private final Path dir;
+    private final long maxBytes;
+
+    public FileStore(Path dir, long maxBytes){
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        util.createdir(dir);
+    }
+
+    /**
+     * @param hash: file content hash
+     * @return the stored file or null if not exists
+     */
+    synchronized public Path find(String hash){
+        if(hash == null || !isHash(hash))
+            return null;
+        Path p = dir.resolve(hash);
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+            return p;
+        }catch (IOException e){
+            return null;
+        }
+    }
+
+    /**
+     * @return new path for file that is uploaded to the store
+     */
+    public Path newPart(){
+        return dir.resolve(UUID.randomUUID().toString() + PART);
+    }
+
+    /**
+     * save uploaded file under its hash, if the file is already stored the part is deleted.
+     * the open channels of the part stay valid after it moved.
+     * @param part: the uploaded file
+     * @param hash: the part content hash
+     */
+    synchronized public void commit(Path part, String hash) throws IOException {
+        Path p = dir.resolve(hash);
+        if(Files.exists(p))
+            Files.deleteIfExists(part);
+        else
+            Files.move(part, p, StandardCopyOption.ATOMIC_MOVE);
+        evict(p);
+    }
+
+    /**
+     * delete the least recently used files until the store size is under maxBytes
+     * @param keep: file that should not be deleted
+     */
+    private void evict(Path keep) throws IOException {
+        List<Path> files = new ArrayList<>();
+        long size = 0;
+        try(Stream<Path> list = Files.list(dir)) {
+            for(Path p : (Iterable<Path>) list::iterator)
+                if(!p.getFileName().toString().endsWith(PART)) {
+                    files.add(p);
+                    size += Files.size(p);
+                }
+        }
+        files.sort(Comparator.comparingLong(p -> {
+            try { return Files.getLastModifiedTime(p).toMillis(); }
+            catch (IOException e) { return 0L; }
+        }));
+        for(Path p : files) {
+            if(size <= maxBytes)
+                break;
+            if(p.equals(keep))
+                continue;
+            size -= Files.size(p);
+            Files.deleteIfExists(p);
+        }
+    }
+
+    /**
+     * @return true if hash is hex sha-256 hash, other names are not looked up in the store
+     */
+    static public boolean isHash(String hash){
+        return hash.length() == 64 && hash.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'));
+    }
+
+    static public String hex(byte[] bytes){
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package com.akka.server;
+
+import akka.actor.ActorPath;
+import akka.actor.ActorRef;
+import akka.actor.DeadLetter;
+import akka.actor.Props;
+import com.akka.server.metrics.ActorMetrics;
+import java.util.Map;
+
+/**
+ * one subscriber to the dead letters of the node, instead of subscriber in every Connector shard.
+ * dead letter to group (child of shard, /user/shard-N/group) is sent only to the shard of the group,
+ * so it can restore the passivated group or send the message to the new incarnation of the group
+ * (see Connector.deadLetterHandler), all other dead letters are ignored.
+ */
+public class GroupDeadLetters extends AbstractLogActor {
+    static public Props props(Map<String,ActorRef> shards) {
+        return Props.create(GroupDeadLetters.class, () -> new GroupDeadLetters(shards)).withMailbox(ActorMetrics.MAILBOX);
+    }
+
+    private final Map<String,ActorRef> shards; //shard name -> shard
+
+    public GroupDeadLetters(Map<String,ActorRef> shards){
+        super();
+        this.shards = shards;
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        getContext().getSystem().eventStream().subscribe(getSelf(),DeadLetter.class);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(DeadLetter.class,this::deadLetterHandler)
+                .build();
+    }
+
+    /**
+     * send the dead letter to the shard how is the parent of the recipient
+     * @param m: DeadLetter
+     */
+    private void deadLetterHandler(DeadLetter m){
+        ActorPath parent = m.recipient().path().parent();
+        ActorRef shard = shards.get(parent.name());
+        if(shard != null && parent.equals(shard.path()))
+            shard.tell(m,ActorRef.noSender());
+    }
+}
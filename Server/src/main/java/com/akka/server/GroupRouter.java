@@ -2,42 +2,127 @@ package com.akka.server;
 
 import akka.NotUsed;
 import akka.actor.*;
+import akka.japi.Pair;
 import akka.pattern.Patterns;
-import akka.routing.*;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
 import akka.stream.Materializer;
 import akka.stream.SourceRef;
-import akka.stream.javadsl.FileIO;
 import akka.stream.javadsl.Source;
 import akka.stream.javadsl.StreamRefs;
-import com.akka.server.protocols.Abstracts.AbstractNamedMessage;
+import akka.util.ByteString;
+import com.akka.server.journal.GroupEvent;
+import com.akka.server.journal.GroupJournal;
+import com.akka.server.journal.GroupState;
+import com.akka.server.metrics.ActorMetrics;
+import com.akka.protocols.Abstracts.AbstractNamedMessage;
+import com.akka.protocols.PreSerialized;
+import com.akka.protocols.UserToUserGroupProtocol.AdminRemoveMessage;
+import com.typesafe.config.Config;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletionStage;
-import com.akka.server.protocols.ClientServerGroupsProtocol.*;
+import com.akka.protocols.ClientServerGroupsProtocol.*;
 
 /**
- * manage one group and use router to send most of the updates and messages
+ * manage one group and broadcast most of the updates and messages
  * to the group.
+ * broadcast message is serialized once and the same bytes are sent to all the remote members,
+ * see broadcast and PreSerialized.
+ * each member has bounded outbound queue with flow control (see MemberOutbox), so slow member
+ * get the messages in his own pace and when too many messages wait to him the 'outbound.overflow'
+ * policy is applied, without holding unbounded remoting buffers for him.
+ * the texts and files are stamped with their journal seqNr and the seqNr of the previous text/file,
+ * the last 'catch-up-size' of them are kept in memory so member that missed some can ask them
+ * again with GroupCatchUpMessage.
  * file groups send in a different manner because the server use unique sourceRef
  * to each user to support parallelism and reliability.
+ * the file is relayed to the members while it is uploaded and saved in the group FileStore,
+ * the store keep one copy of each content, and the missed files are relayed from it on catch-up, see FileRelay.
+ * the group events (create, add, remove, leave, close, text) are written to the group journal
+ * with snapshot every 'snapshot-every' events, so the group can be recovered after restart and
+ * members can page through the group history.
+ * when the group is idle for 'passivate-after' the actor stop,
+ * the Connector restore it from the journal on the next message to the group.
  */
-public class GroupRouter extends AbstractActor {
-    static public Props props(ActorRef admin,String tmpFileRoot, Materializer mat) {
-        return Props.create(GroupRouter.class, () -> new GroupRouter(admin,tmpFileRoot,mat));
+public class GroupRouter extends AbstractLogActor {
+    static public Props props(ActorRef admin,String tmpFileRoot,String journalRoot, Materializer mat) {
+        return Props.create(GroupRouter.class, () -> new GroupRouter(admin,tmpFileRoot,journalRoot,mat)).withMailbox(ActorMetrics.MAILBOX);
     }
-    private Router router;
+
+    /**
+     * props of group that recovered from the journal
+     */
+    static public Props restoreProps(String tmpFileRoot,String journalRoot, Materializer mat) {
+        return Props.create(GroupRouter.class, () -> new GroupRouter(null,tmpFileRoot,journalRoot,mat)).withMailbox(ActorMetrics.MAILBOX);
+    }
+
     private final HashMap<ActorRef,String> members;
+    private final HashMap<ActorRef,MemberOutbox> outboxes; //of each member
+    private final int outboundWindow;
+    private final int outboundMarkEvery;
+    private final int outboundMaxQueue;
+    private final MemberOutbox.Overflow outboundOverflow;
+    private int outboundDepth; //the messages waiting in all the outboxes
+    private final Serialization serialization;
     private final Materializer mat;
-    private final String tmpFileDir; //save temp file in this path
+    private final String tmpFileDir; //the group files store directory
+    private final FileStore fileStore; //the group files by content hash
+    private final int fileChunkSize;
+    private final long fileChunkCache;
+    private final Duration fileSendTimeout;
+    private final String journalRoot;
+    private final GroupJournal journal;
+    private final GroupState state;
+    private final int snapshotEvery;
+    private final int historyPage;
+    private final Object[] recent; //the last stamped texts and files, see remember
+    private long recentCount; //texts and files added to recent
+    private long lastStamped; //the seqNr of the last text/file, 0 if not known
 
-    public GroupRouter(ActorRef admin,String tmpFileRoot, Materializer mat){
-        router = new Router(new BroadcastRoutingLogic());
+    /**
+     * @param admin: the admin ActorRef for new group, null when the group recovered from the journal
+     */
+    public GroupRouter(ActorRef admin,String tmpFileRoot,String journalRoot, Materializer mat) throws IOException {
+        Config conf = getContext().getSystem().settings().config().getConfig("whatsapp.groups");
+        this.serialization = SerializationExtension.get(getContext().getSystem());
         this.mat = mat;
-        members = new HashMap<>();
-        this.tmpFileDir = util.createdir(Paths.get(tmpFileRoot,getGroupName()));
-        admin.tell(new CreateGroupApproveMessage(),self());
-
+        this.members = new HashMap<>();
+        this.outboxes = new HashMap<>();
+        this.outboundWindow = conf.getInt("outbound.window");
+        this.outboundMarkEvery = conf.getInt("outbound.mark-every");
+        this.outboundMaxQueue = conf.getInt("outbound.max-queue");
+        this.outboundOverflow = MemberOutbox.Overflow.parse(conf.getString("outbound.overflow"));
+        this.tmpFileDir = Paths.get(tmpFileRoot,getGroupName()).toString();
+        this.fileStore = new FileStore(Paths.get(tmpFileDir),conf.getBytes("files.store-size"));
+        this.fileChunkSize = conf.getBytes("files.chunk-size").intValue();
+        this.fileChunkCache = conf.getBytes("files.chunk-cache");
+        this.fileSendTimeout = conf.getDuration("files.send-timeout");
+        this.snapshotEvery = conf.getInt("snapshot-every");
+        this.historyPage = conf.getInt("history-page");
+        this.recent = new Object[conf.getInt("catch-up-size")];
+        this.journalRoot = journalRoot;
+        this.journal = new GroupJournal(Paths.get(journalRoot,getGroupName()),
+                conf.getBytes("journal.segment-size"),conf.getInt("journal.index-interval"),conf.getBoolean("journal.sync-appends"));
+        this.state = journal.recover();
+        for(Map.Entry<String,String> e : state.members.entrySet())
+            addMember(resolve(e.getKey()), e.getValue());
+        restoreRecent();
+        if(admin != null) {
+            persist(GroupEvent.CREATE,"",admin);
+            admin.tell(new CreateGroupApproveMessage(), self());
+        }
+        else
+            for(ActorRef mem : members.keySet())
+                mem.tell(new GroupRestoredMessage(),getSelf()); //the members still have the ref of the previous incarnation
+        getContext().setReceiveTimeout(conf.getDuration("passivate-after"));
     }
 
     public Receive createReceive(){
@@ -46,11 +131,86 @@ public class GroupRouter extends AbstractActor {
                 .match(RemoveFromGroupMessage.class,this::removeHandler)
                 .match(LeaveGroupMessage.class,this::removeHandler)
                 .match(CloseGroupMessage.class,this::closeHandler)
-                .match(TextGroupMessage.class, m -> router.route(m,sender()))
+                .match(TextGroupMessage.class,this::textHandler)
+                .match(GroupAckMessage.class,this::ackHandler)
+                .match(GroupCatchUpMessage.class,this::catchUpHandler)
                 .match(FileGroupMessage.class,this::sendGroupFile)
+                .match(FileRelay.Rejected.class,this::fileRejectedHandler)
+                .match(HistoryRequestMessage.class,this::historyHandler)
+                .match(ReceiveTimeout.class,m -> passivate())
                 .build();
     }
 
+    /**
+     * snapshot the group state and stop, the journal closed in postStop.
+     * group with file transfer in progress (FileRelay child) is not passivated.
+     */
+    private void passivate(){
+        if(getContext().getChildren().iterator().hasNext())
+            return;
+        saveSnapshot();
+        getContext().stop(getSelf());
+    }
+
+    /**
+     * write event to the journal and update the group state.
+     * journal failure doesn't stop the group, the event only lost from the history
+     * @param type: GroupEvent type
+     * @param name: member/sender name
+     * @param data: text of text event
+     * @return the event seqNr, 0 if the write failed
+     */
+    private long persist(byte type,String name,String data){
+        try {
+            state.apply(journal.append(type,name,data));
+            if(state.seqNr % snapshotEvery == 0)
+                saveSnapshot();
+            return state.seqNr;
+        }catch (IOException e){
+            logError("group {} journal write failed: {}",getGroupName(),e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * write membership event to the journal and update the group state
+     * @param ref: the member ActorRef
+     */
+    private long persist(byte type,String name,ActorRef ref){
+        return persist(type,name,Serialization.serializedActorPath(ref));
+    }
+
+    private void saveSnapshot(){
+        try {
+            journal.saveSnapshot(state);
+        }catch (IOException e){
+            logError("group {} snapshot failed: {}",getGroupName(),e.getMessage());
+        }
+    }
+
+    /**
+     * send page of the group texts history to the member.
+     * the page is the texts from the 'history-page' events before m.before,
+     * the member use nextBefore of the answer to ask for the previous page.
+     * @param m: HistoryRequestMessage
+     */
+    private void historyHandler(HistoryRequestMessage m){
+        long before = Math.min(m.before,state.seqNr + 1);
+        long from = Math.max(1,before - historyPage);
+        List<TextGroupMessage> texts = new ArrayList<>();
+        try {
+            for(GroupEvent e : journal.read(from,before))
+                if(e.type == GroupEvent.TEXT)
+                    texts.add(new TextGroupMessage(e.name,e.data));
+        }catch (IOException e){
+            logError("group {} history read failed: {}",getGroupName(),e.getMessage());
+        }
+        long nextBefore = from > 1 ? from : 0;
+        CompletionStage<SourceRef<TextGroupMessage>> pageRef = Source.from(texts).runWith(StreamRefs.sourceRef(),mat);
+        Patterns.pipe(pageRef.thenApply(s -> new HistoryMessage(nextBefore,s)), context().dispatcher())
+                .to(getSender()).future();
+    }
+
     /**
      * add member to group.
      * if there is other member in the group, meaning this is not the admin,
@@ -58,45 +218,270 @@ public class GroupRouter extends AbstractActor {
      * @param m: AddToGroupMessage with member user name and group actorRef
      */
     private void addHandler(AddToGroupMessage m){
+        long seqNr = persist(GroupEvent.ADD,m.senderName,getSender());
         if(!members.isEmpty()) {
             sendMembersMessage();
             AddToGroupMessage addmsg = new AddToGroupMessage(m.senderName);
-            router.route(addmsg,getSender());
+            broadcast(addmsg,getSender(),false,seqNr);
         }
-        System.out.println("new routee");
+        System.out.println("new member");
         System.out.println(getSender().path().toString());
-        router = router.addRoutee(getSender());
-        members.put(getSender(),m.senderName);
-        router.routees().iterator().toStream().print(",");
-        System.out.println(router.logic().toString());
+        addMember(getSender(),m.senderName);
     }
 
     /**
-     * remove member from group and inform other members if exist
+     * remove member from group and inform other members if exist.
+     * member that already removed (evicted) is ignored.
      * @param m: Message extend AbstractNamedMessage with member user name
      */
     private void removeHandler(AbstractNamedMessage m){
-        router = router.removeRoutee(getSender());
-        members.remove(getSender());
-        router.route(m,sender());
+        if(!removeMember(getSender()))
+            return;
+        long seqNr = persist(m instanceof LeaveGroupMessage ? GroupEvent.LEAVE : GroupEvent.REMOVE,m.senderName,getSender());
+        broadcast(m,sender(),false,seqNr);
+    }
+
+    /**
+     * remove slow member that his outbox overflowed, like remove by admin:
+     * the member get AdminRemoveMessage and the other members RemoveFromGroupMessage
+     * @param mem: the member ActorRef
+     */
+    private void evict(ActorRef mem){
+        String name = members.get(mem);
+        if(!removeMember(mem))
+            return;
+        logWarn("group {} evict slow member {}",getGroupName(),name);
+        mem.tell(new AdminRemoveMessage("server"),getSelf());
+        long seqNr = persist(GroupEvent.REMOVE,name,mem);
+        broadcast(new RemoveFromGroupMessage(name),mem,false,seqNr);
+    }
+
+    private void addMember(ActorRef mem,String name){
+        members.put(mem,name);
+        MemberOutbox old = outboxes.put(mem,new MemberOutbox(mem,getSelf(),outboundWindow,outboundMarkEvery,outboundMaxQueue,outboundOverflow));
+        if(old != null)
+            outboundDepth -= old.depth();
+    }
+
+    /**
+     * @return false if mem is not a member
+     */
+    private boolean removeMember(ActorRef mem){
+        if(members.remove(mem) == null)
+            return false;
+        outboundDepth -= outboxes.remove(mem).depth();
+        reportOutbound();
+        return true;
+    }
+
+    /**
+     * the member got the messages up to the mark, send him more from his outbox
+     * @param m: GroupAckMessage
+     */
+    private void ackHandler(GroupAckMessage m){
+        MemberOutbox outbox = outboxes.get(getSender());
+        if(outbox == null)
+            return;
+        int before = outbox.depth();
+        outbox.ack(m.mark,this::replay);
+        outboundDepth += outbox.depth() - before;
+        reportOutbound();
+    }
+
+    /**
+     * read the messages that spilled from outbox from the journal
+     * @return the messages of the events fromSeqNr <= seqNr < toSeqNr and their senders, null if the read failed
+     */
+    private List<Pair<Object,ActorRef>> replay(long fromSeqNr,long toSeqNr){
+        List<Pair<Object,ActorRef>> res = new ArrayList<>();
+        long prev = 0; //the text/file before the range is not known
+        try {
+            for(GroupEvent e : journal.read(fromSeqNr,toSeqNr)) {
+                switch (e.type) {
+                    case GroupEvent.TEXT: res.add(Pair.create(new TextGroupMessage(e.name,e.data,e.seqNr,prev),getSelf())); prev = e.seqNr; break;
+                    case GroupEvent.FILE: prev = e.seqNr; break; //the files are not sent through the outbox
+                    case GroupEvent.ADD: res.add(Pair.create(new AddToGroupMessage(e.name),resolve(e.data))); break;
+                    case GroupEvent.REMOVE: res.add(Pair.create(new RemoveFromGroupMessage(e.name),getSelf())); break;
+                    case GroupEvent.LEAVE: res.add(Pair.create(new LeaveGroupMessage(e.name),getSelf())); break;
+                    default: break;
+                }
+            }
+        }catch (IOException e){
+            logError("group {} spilled messages read failed: {}",getGroupName(),e.getMessage());
+            return null;
+        }
+        return res;
+    }
+
+    /**
+     * stamp the text with the group seqNr and send it to the members
+     * @param m: TextGroupMessage from member
+     */
+    private void textHandler(TextGroupMessage m){
+        long seqNr = persist(GroupEvent.TEXT,m.sender,m.msg);
+        TextGroupMessage stamped = new TextGroupMessage(m.sender,m.msg,seqNr,seqNr == 0 ? 0 : lastStamped);
+        remember(stamped,seqNr);
+        broadcast(stamped,sender(),true,seqNr);
+    }
+
+    /**
+     * keep stamped text/file in recent, the oldest one is replaced when it is full.
+     * message that not in the journal (the write failed) is not stamped and not kept
+     * @param m: stamped TextGroupMessage or FileGroupMessage (without fileRef)
+     * @param seqNr: the message seqNr
+     */
+    private void remember(Object m,long seqNr){
+        if(seqNr == 0)
+            return;
+        recent[(int) (recentCount++ % recent.length)] = m;
+        lastStamped = seqNr;
+    }
+
+    /**
+     * fill recent with the texts and files from the journal tail, so group that recovered
+     * from the journal can answer catch-up requests and stamp the next text with the previous seqNr
+     */
+    private void restoreRecent(){
+        try {
+            for(GroupEvent e : journal.read(Math.max(1,state.seqNr - recent.length + 1),state.seqNr + 1)) {
+                if(e.type == GroupEvent.TEXT)
+                    remember(new TextGroupMessage(e.name,e.data,e.seqNr,lastStamped),e.seqNr);
+                else if(e.type == GroupEvent.FILE)
+                    remember(new FileGroupMessage(e.name,e.fileName(),e.fileHash(),null,e.seqNr,lastStamped),e.seqNr);
+                else if(e.type == GroupEvent.FILE_REJECTED)
+                    forgetHash(Long.parseLong(e.data));
+            }
+        }catch (IOException e){
+            logError("group {} recent messages read failed: {}",getGroupName(),e.getMessage());
+        }
+    }
+
+    /**
+     * send again to the member the texts and files he missed from recent.
+     * the texts are sent through the member outbox and the files are relayed from the group store.
+     * if some of them are not in recent anymore (or the file is not in the store) the member get
+     * GroupGapMessage first, the missing texts can be read in the group history.
+     * @param m: GroupCatchUpMessage
+     */
+    private void catchUpHandler(GroupCatchUpMessage m){
+        MemberOutbox outbox = outboxes.get(getSender());
+        if(outbox == null)
+            return;
+        List<Object> found = new ArrayList<>();
+        boolean complete = false;
+        for(long i = Math.max(0,recentCount - recent.length); i < recentCount; i++) {
+            Object r = recent[(int) (i % recent.length)];
+            long seqNr = r instanceof TextGroupMessage ? ((TextGroupMessage) r).seqNr : ((FileGroupMessage) r).seqNr;
+            long prev = r instanceof TextGroupMessage ? ((TextGroupMessage) r).prevSeqNr : ((FileGroupMessage) r).prevSeqNr;
+            if(seqNr <= m.afterSeqNr)
+                complete = true;
+            else if(seqNr < m.beforeSeqNr) {
+                complete |= found.isEmpty() && prev == m.afterSeqNr;
+                found.add(r);
+            }
+        }
+        List<Pair<FileGroupMessage,Path>> files = new ArrayList<>();
+        int recovered = 0;
+        for(Object r : found) {
+            if(r instanceof FileGroupMessage) {
+                Path stored = fileStore.find(((FileGroupMessage) r).contentHash);
+                if(stored == null) {
+                    complete = false;
+                    continue;
+                }
+                files.add(Pair.create((FileGroupMessage) r,stored));
+            }
+            recovered++;
+        }
+        ActorMetrics.catchUp(complete ? "complete" : "incomplete",recovered);
+        int before = outbox.depth();
+        boolean evict = !complete && outbox.offer(new GroupGapMessage(0),getSelf(),false,0);
+        for(Object r : found)
+            if(r instanceof TextGroupMessage)
+                evict |= outbox.offer(r,getSelf(),true,0);
+        outboundDepth += outbox.depth() - before;
+        reportOutbound();
+        if(evict) {
+            evict(getSender());
+            return;
+        }
+        for(Pair<FileGroupMessage,Path> f : files) {
+            ActorRef relay = getContext().actorOf(FileRelay.storedProps(f.second(),1,fileChunkSize,fileChunkCache,fileSendTimeout));
+            sendFileMessage(getSender(),f.first(),relay);
+        }
+    }
+
+    private ActorRef resolve(String path){
+        return ((ExtendedActorSystem) getContext().getSystem()).provider().resolveActorRef(path);
+    }
+
+    private void reportOutbound(){
+        ActorMetrics.Actor metrics = getMetrics();
+        if(metrics != null)
+            metrics.outbound(outboundDepth);
     }
 
     /**
      * close the group and inform other members if exist
-     * append only if the admin leave the group
+     * append only if the admin leave the group.
+     * the group journal is moved to the archive so the group name can be used again
      * @param m: CloseGroupMessage
      */
     private void closeHandler(CloseGroupMessage m){
         System.out.println("Close group");
-        router = router.removeRoutee(getSender());
         members.remove(getSender());
 
-        if(!members.isEmpty())
-            router.route(m,getSender());
+        for(ActorRef mem : members.keySet()) //not through the outboxes, the group is stopped
+            mem.tell(m,getSender());
 
+        persist(GroupEvent.CLOSE,"",getSender());
         getContext().stop(getSelf());
     }
 
+    /**
+     * send message to all the group members through their outboxes.
+     * the message is serialized once for all the remote members instead of once for each member,
+     * local members (same actor system) get the message itself.
+     * if the message can't be pre serialized it is sent as is and serialized for each member.
+     * members that their outbox overflowed with the evict policy are evicted after the broadcast.
+     * @param m: message without ActorRefs
+     * @param sender: the sender of the message
+     * @param text: text message, can be dropped by the overflow policy
+     * @param seqNr: the journal seqNr of the message event, 0 if it is not in the journal
+     */
+    private void broadcast(Object m,ActorRef sender,boolean text,long seqNr){
+        Object wire = null;
+        List<ActorRef> evicted = null;
+        for(MemberOutbox outbox : outboxes.values()) {
+            Object out = m;
+            if(!outbox.member.path().address().hasLocalScope()) {
+                if(wire == null)
+                    wire = preSerialize(m);
+                out = wire;
+            }
+            int before = outbox.depth();
+            if(outbox.offer(out,sender,text,seqNr)) {
+                if(evicted == null)
+                    evicted = new ArrayList<>();
+                evicted.add(outbox.member);
+            }
+            outboundDepth += outbox.depth() - before;
+        }
+        reportOutbound();
+        if(evicted != null)
+            for(ActorRef mem : evicted)
+                evict(mem);
+    }
+
+    private Object preSerialize(Object m){
+        try {
+            return PreSerialized.create(serialization,m);
+        }catch (Exception e){
+            logWarn("group {} can't pre serialize {}: {}",getGroupName(),m.getClass().getSimpleName(),e.getMessage());
+            return m;
+        }
+    }
+
     /**
      * send message to new group member with sourceRef of the other member in the group.
      */
@@ -111,31 +496,73 @@ public class GroupRouter extends AbstractActor {
     }
 
     /**
-     * download the file temporary from the sender sourceRef and send to each user
-     * unique sourceRef of the file and a common FileSendCounter actor to manage the cleanup
-     * of the tmp file.
+     * relay the file to each member with unique sourceRef of the file and a common FileRelay actor
+     * that manage the upload and the cleanup.
+     * the file is always uploaded, the store keep one copy of each content by the hash the relay compute,
+     * the hash that the sender sent is only checked against it (see fileRejectedHandler).
      * @param m: FileGroupMessage with sender name and  sourceRef of the file
      */
     private void sendGroupFile(FileGroupMessage m){
-        Path tmpPath = util.findUnusedName(tmpFileDir,m.fileName);
-        m.fileRef.getSource().runWith(FileIO.toPath(tmpPath),mat).thenRun(() -> {
-            final ActorRef countRef = getContext().actorOf(FileSendCounter.props(tmpPath,members.size(),300000));
-                Source.from(members.keySet()).runForeach(mem -> sendFileMessage(mem, m.senderName,tmpPath,m.fileName,countRef),mat);
-    });
+        long seqNr = persist(GroupEvent.FILE,m.senderName,GroupEvent.fileData(m.contentHash,m.fileName));
+        FileGroupMessage stamped = new FileGroupMessage(m.senderName,m.fileName,m.contentHash,null,seqNr,seqNr == 0 ? 0 : lastStamped);
+        remember(stamped,seqNr);
+        ActorRef relay = getContext().actorOf(FileRelay.uploadProps(fileStore,m.contentHash,seqNr,members.size(),fileChunkSize,fileChunkCache,fileSendTimeout));
+        m.fileRef.getSource().runWith(FileRelay.uploadSink(relay),mat);
+        for(ActorRef mem : members.keySet())
+            sendFileMessage(mem,stamped,relay);
+    }
+
+    /**
+     * the uploaded file didn't match the hash that the sender sent, the hash is dropped from recent
+     * and the journal, so catch-up never relay other stored file under this hash
+     * @param m: FileRelay.Rejected with the file seqNr
+     */
+    private void fileRejectedHandler(FileRelay.Rejected m){
+        if(m.seqNr == 0)
+            return;
+        persist(GroupEvent.FILE_REJECTED,"",String.valueOf(m.seqNr));
+        forgetHash(m.seqNr);
+    }
+
+    /**
+     * replace the file with seqNr in recent with the same file without hash
+     */
+    private void forgetHash(long seqNr){
+        for(int i = 0; i < recent.length; i++)
+            if(recent[i] instanceof FileGroupMessage && ((FileGroupMessage) recent[i]).seqNr == seqNr) {
+                FileGroupMessage f = (FileGroupMessage) recent[i];
+                recent[i] = new FileGroupMessage(f.senderName,f.fileName,null,null,f.seqNr,f.prevSeqNr);
+            }
     }
 
     /**
      * helper to sendGroupFile, weap the sender name, file name and sourceRef and pipe it to target group member
      * @param mem: target ActorRef
-     * @param senderName: user name of the original sender
-     * @param path: path of the tmp file in the server
-     * @param fileName: origin file name
-     * @param countRef: FileSendCounter actorRef
+     * @param f: the stamped FileGroupMessage without fileRef
+     * @param relay: FileRelay actorRef
      */
-    private void sendFileMessage(ActorRef mem,String senderName,Path path,String fileName,ActorRef countRef){
-        Patterns.pipe(util.createFSRef(path,mat).thenApply(s -> new FileGroupMessage(senderName, fileName, s)), context().dispatcher())
-                .to(mem,countRef).future();
+    private void sendFileMessage(ActorRef mem,FileGroupMessage f,ActorRef relay){
+        CompletionStage<SourceRef<ByteString>> fileRef = FileRelay.source(relay,fileSendTimeout)
+                .runWith(StreamRefs.sourceRef(),mat);
+        Patterns.pipe(fileRef.thenApply(s -> new FileGroupMessage(f.senderName, f.fileName, f.contentHash, s, f.seqNr, f.prevSeqNr)), context().dispatcher())
+                .to(mem,relay).future();
+
+    }
 
+    /**
+     * close the journal, journal of closed group is moved to '<journal root>-archive'
+     * and its files store is deleted
+     */
+    @Override
+    public void postStop() throws IOException {
+        journal.close();
+        if(state.closed) {
+            Path dir = Paths.get(journalRoot,getGroupName());
+            Path archive = Paths.get(journalRoot + "-archive",String.format("%s-%d",getGroupName(),System.currentTimeMillis()));
+            Files.createDirectories(archive.getParent());
+            Files.move(dir,archive);
+            util.deleteFileIfExsits(tmpFileDir);
+        }
     }
 
     private String getGroupName(){
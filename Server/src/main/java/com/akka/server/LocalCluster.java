@@ -0,0 +1,49 @@
+package com.akka.server;
+
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * start several server nodes in one JVM, each node is ActorSystem with its own port
+ * and the users registry is sharded between all of them.
+ * clients can connect to any of the nodes.
+ * the nodes use the transport of the config, classic or artery (-Dconfig.resource=artery.conf).
+ * usage: LocalCluster [nodes count (default 3)] [first port (default 3553)]
+ */
+public class LocalCluster {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int firstPort = args.length > 1 ? Integer.parseInt(args[1]) : 3553;
+        startNodes(count, firstPort);
+    }
+
+    /**
+     * @param count: number of nodes
+     * @param firstPort: the port of the first node, the other nodes use the following ports
+     * @return the nodes ActorSystems
+     */
+    static public List<ActorSystem> startNodes(int count, int firstPort){
+        Config base = ConfigFactory.load();
+        boolean artery = base.getBoolean("akka.remote.artery.enabled");
+        String transport = artery ? "akka.remote.artery.canonical" : "akka.remote.netty.tcp";
+        String host = base.getString(transport + ".hostname");
+        List<String> nodes = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            nodes.add(String.format("%s://systemServer@%s:%d", artery ? "akka" : "akka.tcp", host, firstPort + i));
+
+        List<ActorSystem> systems = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            Config conf = base
+                    .withValue(transport + ".port", ConfigValueFactory.fromAnyRef(firstPort + i))
+                    .withValue("whatsapp.registry.nodes", ConfigValueFactory.fromIterable(nodes));
+            ActorSystem system = ActorSystem.create("systemServer", conf);
+            Server.startNode(system);
+            systems.add(system);
+        }
+        return systems;
+    }
+}
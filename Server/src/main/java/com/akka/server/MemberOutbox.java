@@ -0,0 +1,215 @@
+package com.akka.server;
+
+import akka.actor.ActorRef;
+import akka.japi.Pair;
+import com.akka.protocols.ClientServerGroupsProtocol.GroupGapMessage;
+import com.akka.protocols.ClientServerGroupsProtocol.GroupMarkMessage;
+import com.akka.server.metrics.ActorMetrics;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * the bounded outbound queue of one group member, so member on congested link can't make
+ * the remoting buffers grow without limit while the group keep broadcasting.
+ * after every markEvery messages the member get GroupMarkMessage and answer GroupAckMessage with the mark,
+ * at most 'window' messages are sent after the last acked mark and the rest wait in the queue
+ * (window must be larger than markEvery, so there is always mark on the way when messages wait).
+ * member that never acked (client without flow control) get everything immediately like before.
+ * when maxQueue messages are queued the overflow policy is applied to the new message:
+ *  - DROP_OLDEST: the oldest queued text is dropped
+ *  - COALESCE: the queued texts are replaced by one GroupGapMessage
+ *  - SPILL: the new messages are not queued, they are read from the group journal (see Replay)
+ *    when the member catch up, so only the journal seqNr range is kept in memory
+ *  - EVICT: the member should be removed from the group
+ * membership messages are never dropped.
+ * not thread safe, used by GroupRouter only.
+ */
+class MemberOutbox {
+    enum Overflow {
+        DROP_OLDEST, COALESCE, SPILL, EVICT;
+
+        /**
+         * @param name: drop-oldest, coalesce, spill or evict
+         */
+        static Overflow parse(String name){
+            return valueOf(name.toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * read spilled messages from the group journal
+     */
+    interface Replay {
+        /**
+         * @return the messages of the events with fromSeqNr <= seqNr < toSeqNr and their senders,
+         *  null if the journal can't be read
+         */
+        List<Pair<Object, ActorRef>> read(long fromSeqNr, long toSeqNr);
+    }
+
+    static private class Entry {
+        public final Object m;
+        public final ActorRef sender;
+        public final boolean text;
+        public Entry(Object m, ActorRef sender, boolean text){
+            this.m = m;
+            this.sender = sender;
+            this.text = text;
+        }
+    }
+
+    final ActorRef member;
+    private final ActorRef group;
+    private final int window;
+    private final int markEvery;
+    private final int maxQueue;
+    private final Overflow overflow;
+    private final ArrayDeque<Entry> queue;
+    private long sent;
+    private long acked; //the last acked mark, -1 if the member never acked
+    private long spillFrom; //the spilled journal range, 0 if nothing is spilled
+    private long spillTo;
+
+    MemberOutbox(ActorRef member, ActorRef group, int window, int markEvery, int maxQueue, Overflow overflow){
+        this.member = member;
+        this.group = group;
+        this.window = window;
+        this.markEvery = markEvery;
+        this.maxQueue = maxQueue;
+        this.overflow = overflow;
+        this.queue = new ArrayDeque<>();
+        this.sent = 0;
+        this.acked = -1;
+        this.spillFrom = 0;
+        this.spillTo = 0;
+    }
+
+    /**
+     * send the message or queue it
+     * @param m: the message (or its PreSerialized wire form)
+     * @param text: text message, can be dropped on overflow
+     * @param seqNr: the journal seqNr of the message event, 0 if it is not in the journal
+     * @return true if the member should be evicted
+     */
+    boolean offer(Object m, ActorRef sender, boolean text, long seqNr){
+        if(spillFrom > 0) { //the journal has everything after the spill start
+            if(seqNr > 0) {
+                spillTo = seqNr;
+                ActorMetrics.overflow("spill", 1);
+            }
+            else //not in the journal (the write failed), the member miss it
+                ActorMetrics.overflow("spill-lost", 1);
+            return false;
+        }
+        if(queue.isEmpty() && canSend()) {
+            send(m, sender);
+            return false;
+        }
+        if(queue.size() >= maxQueue) {
+            switch (overflow) {
+                case DROP_OLDEST:
+                    dropOldestText();
+                    break;
+                case COALESCE:
+                    coalesce();
+                    break;
+                case SPILL:
+                    if(seqNr > 0) {
+                        spillFrom = spillTo = seqNr;
+                        ActorMetrics.overflow("spill", 1);
+                        return false;
+                    }
+                    break;
+                default:
+                    ActorMetrics.overflow("evict", 1);
+                    return true;
+            }
+        }
+        queue.add(new Entry(m, sender, text));
+        return false;
+    }
+
+    /**
+     * the member got the messages up to mark, send the queued messages that fit in the window
+     */
+    void ack(long mark, Replay replay){
+        if(mark > acked)
+            acked = mark;
+        while(canSend() && !queue.isEmpty()) {
+            Entry e = queue.poll();
+            send(e.m, e.sender);
+        }
+        while(canSend() && spillFrom > 0) {
+            long room = acked < 0 ? window : window - (sent - acked);
+            long to = Math.min(spillTo + 1, spillFrom + room);
+            List<Pair<Object, ActorRef>> replayed = replay.read(spillFrom, to);
+            if(replayed == null)
+                send(new GroupGapMessage((int) (to - spillFrom)), group);
+            else
+                for(Pair<Object, ActorRef> p : replayed)
+                    send(p.first(), p.second());
+            spillFrom = to > spillTo ? 0 : to;
+        }
+    }
+
+    /**
+     * @return the messages waiting to the member, queued and spilled
+     */
+    int depth(){
+        return queue.size() + (spillFrom > 0 ? (int) (spillTo - spillFrom + 1) : 0);
+    }
+
+    private boolean canSend(){
+        return acked < 0 || sent - acked < window;
+    }
+
+    private void send(Object m, ActorRef sender){
+        member.tell(m, sender);
+        if(++sent % markEvery == 0)
+            member.tell(new GroupMarkMessage(sent), group);
+    }
+
+    private void dropOldestText(){
+        Iterator<Entry> it = queue.iterator();
+        while(it.hasNext())
+            if(it.next().text) {
+                it.remove();
+                ActorMetrics.overflow("drop-oldest", 1);
+                return;
+            }
+    }
+
+    /**
+     * replace the queued texts (and gaps) with one GroupGapMessage in the place of the first one
+     */
+    private void coalesce(){
+        List<Entry> kept = new ArrayList<>(queue.size());
+        int gapIndex = -1;
+        int skipped = 0;
+        int dropped = 0;
+        for(Entry e : queue) {
+            if(e.m instanceof GroupGapMessage)
+                skipped += ((GroupGapMessage) e.m).skipped;
+            else if(e.text) {
+                skipped++;
+                dropped++;
+            }
+            else {
+                kept.add(e);
+                continue;
+            }
+            if(gapIndex < 0) {
+                gapIndex = kept.size();
+                kept.add(e);
+            }
+        }
+        if(dropped == 0)
+            return;
+        ActorMetrics.overflow("coalesce", dropped);
+        kept.set(gapIndex, new Entry(new GroupGapMessage(skipped), group, false));
+        queue.clear();
+        queue.addAll(kept);
+    }
+}
@@ -0,0 +1,594 @@
+package com.akka.server;
+
+import akka.actor.ActorRef;
+import akka.actor.Address;
+import akka.actor.ActorSelection;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.SourceRef;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamRefs;
+import com.akka.protocols.Abstracts.RemoteMessageInterface;
+import com.akka.protocols.ClientServerProtocol.*;
+import com.akka.server.metrics.ActorMetrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * this actor class keep the directory of all the active users in the server (all nodes)
+ * and in charge of informing the users that connected through this node about changes.
+ * the changes are accumulated and pushed to the users as one PresenceDeltaMessage per tick,
+ * instead of one message per change for each active user.
+ * a batch is sent when the tick time is up or when the batch reach maxBatch changes.
+ * changes made by the Connector shards of this node are replicated to the publishers of the other nodes
+ * (the peers), each node own the entries of its users and the peers keep replica of them:
+ *  - every change of the own users get the next own version and is sent to the peers,
+ *    peer that get change that is not the next version of the replica (missed change, or the node restarted
+ *    with new epoch) ask full sync (PeerSyncRequest) and replace the replica with the users of the PeerSync.
+ *  - peer that is seen first time (and all the peers on start) are asked for full sync.
+ *  - every 'anti-entropy-interval' the publisher send its epoch and own version to the peers (PeerStatus),
+ *    peer that has older replica ask full sync, so lost changes (and lost syncs) are repaired.
+ * every change get the next presence version and is kept in a log of the last logSize changes,
+ * so user that connect again with the version he has get only the changes since (see sendSync),
+ * and the full snapshot is sent only when the log no longer has them.
+ * the versions are of this publisher, the epoch is random per publisher instance, so version of other
+ * node or of previous run of the server is never taken as version of this one.
+ * user can declare the users he is interested in (PresenceInterestMessage or the interest of ConnectMessage),
+ * then he get only the changes of these users, the watchers index (watched user -> interested users)
+ * is used to find who should get each change.
+ */
+public class PresencePublisher extends AbstractLogActorWithTimers {
+    static public Props props(Duration tick, int maxBatch, int logSize, Duration antiEntropy, List<String> peerPaths) {
+        return Props.create(PresencePublisher.class, () -> new PresencePublisher(tick, maxBatch, logSize, antiEntropy, peerPaths)).withMailbox(ActorMetrics.MAILBOX);
+    }
+
+    /**
+     * message format that Connector send to this actor when user connected,
+     * the publisher answer to replyTo with ConnectedSuccessfullyMessage and the active users snapshot,
+     * or the changes since presenceVersion if the user has the active users of this epoch
+     */
+    static public class UserJoined {
+        public final String userName;
+        public final ActorRef mainRef;
+        public final ActorRef receiveRef;
+        public final ActorRef replyTo;
+        public final long presenceEpoch;
+        public final long presenceVersion;
+        public final String[] interest; //null for all the users
+        public UserJoined(String userName, ActorRef mainRef, ActorRef receiveRef, ActorRef replyTo, long presenceEpoch, long presenceVersion, String[] interest){
+            this.userName = userName;
+            this.mainRef = mainRef;
+            this.receiveRef = receiveRef;
+            this.replyTo = replyTo;
+            this.presenceEpoch = presenceEpoch;
+            this.presenceVersion = presenceVersion;
+            this.interest = interest;
+        }
+    }
+
+    /**
+     * message format that Connector send to this actor when user removed from the active users
+     */
+    static public class UserLeft {
+        public final String userName;
+        public UserLeft(String userName){this.userName = userName;}
+    }
+
+    /**
+     * message format that the publishers of the other nodes send when user connected to there node,
+     * version is the own version of the sender in its epoch
+     */
+    static public class PeerJoined implements RemoteMessageInterface {
+        public final String userName;
+        public final ActorRef receiveRef;
+        public final long epoch;
+        public final long version;
+        public PeerJoined(String userName, ActorRef receiveRef, long epoch, long version){
+            this.userName = userName;
+            this.receiveRef = receiveRef;
+            this.epoch = epoch;
+            this.version = version;
+        }
+    }
+
+    /**
+     * message format that the publishers of the other nodes send when user left there node
+     */
+    static public class PeerLeft implements RemoteMessageInterface {
+        public final String userName;
+        public final long epoch;
+        public final long version;
+        public PeerLeft(String userName, long epoch, long version){
+            this.userName = userName;
+            this.epoch = epoch;
+            this.version = version;
+        }
+    }
+
+    /**
+     * the epoch and own version of the sender, sent to the peers every anti-entropy interval
+     */
+    static public class PeerStatus implements RemoteMessageInterface {
+        public final long epoch;
+        public final long version;
+        public PeerStatus(long epoch, long version){
+            this.epoch = epoch;
+            this.version = version;
+        }
+    }
+
+    /**
+     * ask the peer for all its users, the answer is PeerSync
+     */
+    static public class PeerSyncRequest implements RemoteMessageInterface {}
+
+    /**
+     * all the users of the sender node (names[i] -> receiveRefs[i]) at own version of epoch
+     */
+    static public class PeerSync implements RemoteMessageInterface {
+        public final long epoch;
+        public final long version;
+        public final String[] names;
+        public final ActorRef[] receiveRefs;
+        public PeerSync(long epoch, long version, String[] names, ActorRef[] receiveRefs){
+            this.epoch = epoch;
+            this.version = version;
+            this.names = names;
+            this.receiveRefs = receiveRefs;
+        }
+    }
+
+    /**
+     * the users of one peer node as known here
+     */
+    static private class Replica {
+        public long epoch;
+        public long version;
+        public HashMap<String, ActorRef> users = new HashMap<>(); //user name -> receive actorRef
+    }
+
+    static private class Flush{}
+    static private class AntiEntropy{}
+
+    /**
+     * the part of the batch that one interested user get
+     */
+    static private class Interested {
+        public final List<AddUserMessage> added = new ArrayList<>();
+        public final List<String> removed = new ArrayList<>();
+    }
+
+    private final Duration tick;
+    private final int maxBatch;
+    private final Duration antiEntropy;
+    private final List<ActorSelection> peers;
+    private final HashMap<Address, Replica> replicas; //peer node -> its users
+    private final HashMap<Address, Long> syncRequested; //peer node -> nano time of the last PeerSyncRequest to it
+    private final HashMap<String, ActorRef> own; //users of this node: user name -> receive actorRef
+    private long ownVersion; //the version of the last change of the own users
+    private final Materializer mat;
+    private final HashMap<String, ActorRef> directory; //all active users: user name -> receive actorRef
+    private final HashMap<String, ActorRef> subscribers; //users of this node: user name -> main actorRef
+    private final HashMap<String, HashSet<String>> interests; //subscribers that want only some users -> the watched users
+    private final HashMap<String, HashSet<String>> watchers; //watched user -> the subscribers that watch him
+    private final LinkedHashMap<String, ActorRef> pendingAdded; //user name -> receive actorRef
+    private final LinkedHashSet<String> pendingRemoved;
+    private final long epoch;
+    private long version; //the version of the last change
+    private final String[] logNames; //the log of the last changes, the change of version v is at (v - 1) % logSize
+    private final ActorRef[] logRefs; //receive actorRef of added user, null for removed
+
+    public PresencePublisher(Duration tick, int maxBatch, int logSize, Duration antiEntropy, List<String> peerPaths){
+        this.tick = tick;
+        this.maxBatch = maxBatch;
+        this.antiEntropy = antiEntropy;
+        this.peers = new ArrayList<>();
+        for(String path : peerPaths)
+            peers.add(getContext().actorSelection(path));
+        replicas = new HashMap<>();
+        syncRequested = new HashMap<>();
+        own = new HashMap<>();
+        ownVersion = 0;
+        mat = ActorMaterializer.create(getContext());
+        directory = new HashMap<>();
+        subscribers = new HashMap<>();
+        interests = new HashMap<>();
+        watchers = new HashMap<>();
+        pendingAdded = new LinkedHashMap<>();
+        pendingRemoved = new LinkedHashSet<>();
+        epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        version = 0;
+        logNames = new String[logSize];
+        logRefs = new ActorRef[logSize];
+    }
+
+    /**
+     * ask all the peers for full sync and start the anti-entropy exchange
+     */
+    @Override
+    public void preStart() {
+        if(peers.isEmpty())
+            return;
+        for(ActorSelection peer : peers)
+            peer.tell(new PeerSyncRequest(), getSelf());
+        getTimers().startPeriodicTimer(AntiEntropy.class, new AntiEntropy(), antiEntropy);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(UserJoined.class, this::userJoinedHandler)
+                .match(UserLeft.class, this::userLeftHandler)
+                .match(PresenceInterestMessage.class, this::interestHandler)
+                .match(PeerJoined.class, this::peerJoinedHandler)
+                .match(PeerLeft.class, this::peerLeftHandler)
+                .match(PeerStatus.class, this::peerStatusHandler)
+                .match(PeerSyncRequest.class, m -> getSender().tell(peerSync(), getSelf()))
+                .match(PeerSync.class, this::peerSyncHandler)
+                .match(AntiEntropy.class, m -> {
+                    for(ActorSelection peer : peers)
+                        peer.tell(new PeerStatus(epoch, ownVersion), getSelf());
+                })
+                .match(Flush.class, m -> flush())
+                .build();
+    }
+
+    /**
+     * the new user is subscribed immediately and get the changes since his version or snapshot of the active users,
+     * the other users will get him in the next batch.
+     * the sender is the Connector shard how own the user and it will be the user server ref.
+     * user that already subscribed with the same mainRef (connect retry) only get the active users again.
+     * @param m: UserJoined
+     */
+    private void userJoinedHandler(UserJoined m){
+        boolean again = m.mainRef.equals(subscribers.get(m.userName));
+        if(m.interest != null && !again)
+            watch(m.userName, m.interest);
+        if(!sendSync(m, getSender()))
+            sendSnapshot(m.userName, getSender(), m.replyTo);
+        if(again)
+            return;
+        subscribers.put(m.userName, m.mainRef);
+        own.put(m.userName, m.receiveRef);
+        added(m.userName, m.receiveRef);
+        ownVersion++;
+        for(ActorSelection peer : peers)
+            peer.tell(new PeerJoined(m.userName, m.receiveRef, epoch, ownVersion), getSelf());
+    }
+
+    private void userLeftHandler(UserLeft m){
+        subscribers.remove(m.userName);
+        ActorRef ref = own.remove(m.userName);
+        HashSet<String> interest = interests.remove(m.userName);
+        if(interest != null)
+            for(String watched : interest)
+                unwatched(m.userName, watched);
+        if(ref == null || ref.equals(directory.get(m.userName))) //not if he already connected to other node
+            removed(m.userName);
+        ownVersion++;
+        for(ActorSelection peer : peers)
+            peer.tell(new PeerLeft(m.userName, epoch, ownVersion), getSelf());
+    }
+
+    ///////////////////////////////REPLICATION////////////////////////////////////
+    private void peerJoinedHandler(PeerJoined m){
+        Replica r = next(m.epoch, m.version);
+        if(r == null)
+            return;
+        ActorRef old = r.users.put(m.userName, m.receiveRef);
+        if(old != null)
+            peerRemoved(m.userName, old);
+        peerAdded(m.userName, m.receiveRef);
+    }
+
+    private void peerLeftHandler(PeerLeft m){
+        Replica r = next(m.epoch, m.version);
+        if(r == null)
+            return;
+        ActorRef old = r.users.remove(m.userName);
+        if(old != null)
+            peerRemoved(m.userName, old);
+    }
+
+    /**
+     * @return the replica of the sender if the change is its next version, null if the change should not be applied:
+     *  older change is ignored, and on missed change or new epoch full sync is asked
+     */
+    private Replica next(long epoch, long version){
+        Replica r = replicas.get(getSender().path().address());
+        if(r == null || r.epoch != epoch || version > r.version + 1) {
+            requestSync();
+            return null;
+        }
+        if(version <= r.version)
+            return null;
+        r.version = version;
+        return r;
+    }
+
+    /**
+     * ask full sync if the replica of the sender is older than its status
+     */
+    private void peerStatusHandler(PeerStatus m){
+        Replica r = replicas.get(getSender().path().address());
+        if(r == null || r.epoch != m.epoch || r.version < m.version)
+            requestSync();
+    }
+
+    /**
+     * ask the sender for full sync, at most once in anti-entropy interval (the status repeat it if it was lost)
+     */
+    private void requestSync(){
+        Address peer = getSender().path().address();
+        Long last = syncRequested.get(peer);
+        long now = System.nanoTime();
+        if(last != null && now - last < antiEntropy.toNanos())
+            return;
+        syncRequested.put(peer, now);
+        logDebug("presence sync from {}", peer);
+        getSender().tell(new PeerSyncRequest(), getSelf());
+    }
+
+    /**
+     * @return all the users of this node
+     */
+    private PeerSync peerSync(){
+        String[] names = new String[own.size()];
+        ActorRef[] refs = new ActorRef[own.size()];
+        int i = 0;
+        for(Map.Entry<String, ActorRef> e : own.entrySet()) {
+            names[i] = e.getKey();
+            refs[i++] = e.getValue();
+        }
+        return new PeerSync(epoch, ownVersion, names, refs);
+    }
+
+    /**
+     * replace the replica of the sender with its users, the differences are published as changes.
+     * sync older than the replica (the changes after it already arrived) is ignored
+     */
+    private void peerSyncHandler(PeerSync m){
+        Address peer = getSender().path().address();
+        syncRequested.remove(peer);
+        Replica r = replicas.computeIfAbsent(peer, k -> new Replica());
+        if(r.epoch == m.epoch && r.version > m.version)
+            return;
+        HashMap<String, ActorRef> users = new HashMap<>();
+        for(int i = 0; i < m.names.length; i++)
+            users.put(m.names[i], m.receiveRefs[i]);
+        for(Map.Entry<String, ActorRef> e : r.users.entrySet())
+            if(!e.getValue().equals(users.get(e.getKey())))
+                peerRemoved(e.getKey(), e.getValue());
+        for(Map.Entry<String, ActorRef> e : users.entrySet())
+            if(!e.getValue().equals(r.users.get(e.getKey())))
+                peerAdded(e.getKey(), e.getValue());
+        r.users = users;
+        r.epoch = m.epoch;
+        r.version = m.version;
+    }
+
+    private void peerAdded(String userName, ActorRef receiveRef){
+        if(!receiveRef.equals(directory.get(userName)))
+            added(userName, receiveRef);
+    }
+
+    /**
+     * the user is removed only if his entry is still the one of the peer,
+     * user that moved to other node (and the join arrived first) stay active
+     */
+    private void peerRemoved(String userName, ActorRef receiveRef){
+        if(receiveRef.equals(directory.get(userName)))
+            removed(userName);
+    }
+
+    /**
+     * change the watched users of the subscriber and send him the newly watched users that are active,
+     * with the current version (the changes in the current batch will come in the batch).
+     * @param m: PresenceInterestMessage from the Connector shard of the user
+     */
+    private void interestHandler(PresenceInterestMessage m){
+        ActorRef sub = subscribers.get(m.senderName);
+        if(sub == null)
+            return;
+        HashSet<String> interest = interests.computeIfAbsent(m.senderName, k -> new HashSet<>());
+        if(m.unwatch != null)
+            for(String userName : m.unwatch)
+                if(interest.remove(userName))
+                    unwatched(m.senderName, userName);
+        List<AddUserMessage> active = new ArrayList<>();
+        if(m.watch != null)
+            for(String userName : watch(m.senderName, m.watch)) {
+                ActorRef ref = directory.get(userName);
+                if(ref != null)
+                    active.add(new AddUserMessage(userName, ref));
+            }
+        sub.tell(new PresenceDeltaMessage(active.toArray(new AddUserMessage[0]), new String[0], version), getSelf());
+    }
+
+    /**
+     * add users to the watched users of the subscriber
+     * @return the users that were not watched before
+     */
+    private List<String> watch(String subscriber, String[] userNames){
+        HashSet<String> interest = interests.computeIfAbsent(subscriber, k -> new HashSet<>());
+        List<String> added = new ArrayList<>();
+        for(String userName : userNames)
+            if(interest.add(userName)) {
+                watchers.computeIfAbsent(userName, k -> new HashSet<>()).add(subscriber);
+                added.add(userName);
+            }
+        return added;
+    }
+
+    private void unwatched(String subscriber, String userName){
+        HashSet<String> subs = watchers.get(userName);
+        if(subs != null && subs.remove(subscriber) && subs.isEmpty())
+            watchers.remove(userName);
+    }
+
+    /**
+     * @return true if the subscriber get the changes of userName
+     */
+    private boolean wants(String subscriber, String userName){
+        HashSet<String> interest = interests.get(subscriber);
+        return interest == null || interest.contains(userName);
+    }
+
+    private void added(String userName, ActorRef receiveRef){
+        log(userName, receiveRef);
+        directory.put(userName, receiveRef);
+        pendingAdded.put(userName, receiveRef);
+        changed();
+    }
+
+    /**
+     * if the user added in the current batch he simply dropped from it,
+     * the removal still sent in case some user got him in the connect snapshot.
+     * @param userName: user that left
+     */
+    private void removed(String userName){
+        log(userName, null);
+        directory.remove(userName);
+        pendingAdded.remove(userName);
+        pendingRemoved.add(userName);
+        changed();
+    }
+
+    private void log(String userName, ActorRef receiveRef){
+        int i = (int) (version++ % logNames.length);
+        logNames[i] = userName;
+        logRefs[i] = receiveRef;
+    }
+
+    /**
+     * send the new user ConnectedSuccessfullyMessage with the changes since the version he has,
+     * the changes of each user are merged to his last change.
+     * @param m: UserJoined
+     * @param serverRef: the Connector shard of the user
+     * @return false if the user has no version of this epoch, the log no longer has the changes since his version,
+     *  or the changes are more than the active users, in these cases the user should get snapshot
+     */
+    private boolean sendSync(UserJoined m, ActorRef serverRef){
+        long from = m.presenceVersion;
+        if(m.presenceEpoch != epoch || from < 0 || from > version || version - from > logNames.length)
+            return false;
+        LinkedHashMap<String, ActorRef> changes = new LinkedHashMap<>(); //user name -> receive actorRef, null for removed
+        for(long v = from; v < version; v++) {
+            int i = (int) (v % logNames.length);
+            if(!logNames[i].equals(m.userName) && wants(m.userName, logNames[i]))
+                changes.put(logNames[i], logRefs[i]);
+        }
+        HashSet<String> interest = interests.get(m.userName);
+        if(changes.size() > (interest == null ? directory.size() : interest.size()))
+            return false;
+
+        List<AddUserMessage> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for(Map.Entry<String, ActorRef> e : changes.entrySet()) {
+            if(e.getValue() == null)
+                removed.add(e.getKey());
+            else
+                added.add(new AddUserMessage(e.getKey(), e.getValue()));
+        }
+        PresenceDeltaMessage sync = new PresenceDeltaMessage(added.toArray(new AddUserMessage[0]), removed.toArray(new String[0]), version);
+        m.replyTo.tell(new ConnectedSuccessfullyMessage(serverRef, null, epoch, version, sync), getSelf());
+        logDebug("presence sync of {}: {} changes since version {}", m.userName, changes.size(), from);
+        return true;
+    }
+
+    /**
+     * create sourceRef of the active users (without the new user, only the watched users if he has interest)
+     * and send it to the new user with ConnectedSuccessfullyMessage.
+     * the directory is copied because the stream run outside the actor.
+     * @param userName: the new user name
+     * @param serverRef: the Connector shard of the user
+     * @param replyTo: the user ActorRef how asked to connect
+     */
+    private void sendSnapshot(String userName, ActorRef serverRef, ActorRef replyTo){
+        HashSet<String> interest = interests.get(userName);
+        List<AddUserMessage> snapshot = new ArrayList<>(interest == null ? directory.size() : interest.size());
+        if(interest == null) {
+            for(Map.Entry<String, ActorRef> e : directory.entrySet())
+                if(!e.getKey().equals(userName))
+                    snapshot.add(new AddUserMessage(e.getKey(), e.getValue()));
+        }
+        else
+            for(String watched : interest) {
+                ActorRef ref = directory.get(watched);
+                if(ref != null && !watched.equals(userName))
+                    snapshot.add(new AddUserMessage(watched, ref));
+            }
+        CompletionStage<SourceRef<AddUserMessage>> usersRef = Source.from(snapshot).runWith(StreamRefs.sourceRef(), mat);
+        long snapshotVersion = version;
+        Patterns.pipe(usersRef.thenApply(s -> new ConnectedSuccessfullyMessage(serverRef, s, epoch, snapshotVersion, null)), context().dispatcher())
+                .to(replyTo).future();
+    }
+
+    /**
+     * flush the batch if it is full, otherwise make sure a flush is scheduled
+     */
+    private void changed(){
+        if(pendingAdded.size() + pendingRemoved.size() >= maxBatch)
+            flush();
+        else if(!getTimers().isTimerActive(Flush.class))
+            getTimers().startSingleTimer(Flush.class, new Flush(), tick);
+    }
+
+    /**
+     * send one delta message with all the pending changes to every subscriber without interest,
+     * and to each subscriber with interest delta of the changes of his watched users (if there are any).
+     * removes should be applied before adds by the receiver so user that left and
+     * connected again in the same batch stay active.
+     */
+    private void flush(){
+        getTimers().cancel(Flush.class);
+        if(pendingAdded.isEmpty() && pendingRemoved.isEmpty())
+            return;
+
+        AddUserMessage[] added = pendingAdded.entrySet().stream()
+                .map(e -> new AddUserMessage(e.getKey(), e.getValue()))
+                .toArray(AddUserMessage[]::new);
+        String[] removed = pendingRemoved.toArray(new String[0]);
+        pendingAdded.clear();
+        pendingRemoved.clear();
+
+        if(interests.size() < subscribers.size()) {
+            PresenceDeltaMessage delta = new PresenceDeltaMessage(added, removed, version);
+            for(Map.Entry<String, ActorRef> sub : subscribers.entrySet())
+                if(!interests.containsKey(sub.getKey()))
+                    sub.getValue().tell(delta, getSelf());
+        }
+        if(watchers.isEmpty())
+            return;
+
+        HashMap<String, Interested> interested = new HashMap<>();
+        for(AddUserMessage user : added) {
+            HashSet<String> subs = watchers.get(user.userName);
+            if(subs != null)
+                for(String sub : subs)
+                    interested.computeIfAbsent(sub, k -> new Interested()).added.add(user);
+        }
+        for(String userName : removed) {
+            HashSet<String> subs = watchers.get(userName);
+            if(subs != null)
+                for(String sub : subs)
+                    interested.computeIfAbsent(sub, k -> new Interested()).removed.add(userName);
+        }
+        for(Map.Entry<String, Interested> e : interested.entrySet()) {
+            ActorRef sub = subscribers.get(e.getKey());
+            if(sub != null)
+                sub.tell(new PresenceDeltaMessage(e.getValue().added.toArray(new AddUserMessage[0]),
+                        e.getValue().removed.toArray(new String[0]), version), getSelf());
+        }
+    }
+}
@@ -2,10 +2,61 @@ package com.akka.server;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.routing.ConsistentHashingGroup;
+import com.akka.server.metrics.MetricsEndpoint;
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Server {
     public static void main(String[] args) {
         final ActorSystem system = ActorSystem.create("systemServer");
-        final ActorRef conn = system.actorOf(Connector.props(),"conn");
+        final ActorRef conn = startNode(system);
+    }
+
+    /**
+     * start the server actors of one node: the PresencePublisher, the users registry router ("conn")
+     * and the Connector shards of this node with one dead letters subscriber for their groups (see GroupDeadLetters),
+     * and the metrics endpoint (see MetricsEndpoint).
+     * the registry route to the shards of all the nodes in 'whatsapp.registry.nodes' by name hash,
+     * the list must be the same (and in the same order) on every node, empty list mean single node server.
+     * @param system: the node ActorSystem
+     * @return the registry router
+     */
+    static public ActorRef startNode(ActorSystem system){
+        Config conf = system.settings().config().getConfig("whatsapp");
+        int shards = conf.getInt("registry.shards-per-node");
+        List<String> nodes = conf.getStringList("registry.nodes");
+        String selfAddress = ((ExtendedActorSystem) system).provider().getDefaultAddress().toString();
+
+        List<String> shardPaths = new ArrayList<>();
+        List<String> peerPaths = new ArrayList<>();
+        if(nodes.isEmpty())
+            for(int i = 0; i < shards; i++)
+                shardPaths.add(String.format("/user/shard-%d",i));
+        else
+            for(String node : nodes) {
+                for (int i = 0; i < shards; i++)
+                    shardPaths.add(String.format("%s/user/shard-%d", node, i));
+                if(!node.equals(selfAddress))
+                    peerPaths.add(String.format("%s/user/presence", node));
+            }
+
+        final ActorRef presence = system.actorOf(PresencePublisher.props(conf.getDuration("presence.tick"),
+                conf.getInt("presence.max-batch"), conf.getInt("presence.log-size"),
+                conf.getDuration("presence.anti-entropy-interval"), peerPaths),"presence");
+        final ActorRef registry = system.actorOf(new ConsistentHashingGroup(shardPaths)
+                .withHashMapper(Connector::hashKey).props(),"conn");
+        Map<String,ActorRef> localShards = new HashMap<>();
+        for(int i = 0; i < shards; i++) {
+            String name = String.format("shard-%d",i);
+            localShards.put(name,system.actorOf(Connector.props(presence,registry),name));
+        }
+        system.actorOf(GroupDeadLetters.props(localShards),"group-dead-letters");
+        MetricsEndpoint.start(system);
+        return registry;
     }
 }
@@ -0,0 +1,99 @@
+package com.akka.server.bench;
+
+import akka.util.ByteString;
+import com.akka.server.FileChunks;
+import com.akka.server.util;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * compare the allocations of group file fan-out:
+ * 'file per member' read the file for each member like FileIO.fromPath (8KB direct buffer copied to ByteString),
+ * 'shared chunks' read the file once through FileChunks and share the chunks between the members.
+ * the members read in lockstep, chunk by chunk, like members with similar download speed.
+ * print time and allocated bytes per member.
+ * usage: FileFanOutBench [members (default 100)] [file MB (default 64)]
+ */
+public class FileFanOutBench {
+    static private final int FILE_IO_CHUNK = 8192; //FileIO.fromPath default chunk size
+    static private final int CHUNK_SIZE = 256 * 1024;
+    static private final long CHUNK_CACHE = 8L << 20;
+
+    public static void main(String[] args) throws Exception {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int fileMb = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        Path dir = Files.createTempDirectory("fanout-bench");
+        try {
+            Path file = dir.resolve("file");
+            byte[] mb = new byte[1 << 20];
+            for(int i = 0; i < mb.length; i++)
+                mb[i] = (byte) i;
+            try(FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                for(int i = 0; i < fileMb; i++)
+                    ch.write(ByteBuffer.wrap(mb));
+            }
+            for(int round = 0; round < 3; round++) {
+                report("file per member", members, filePerMember(file, members));
+                report("shared chunks", members, sharedChunks(file, members));
+            }
+        } finally {
+            util.deleteFileIfExsits(dir.toString());
+        }
+    }
+
+    /**
+     * @return {nanos, allocated bytes}
+     */
+    static private long[] filePerMember(Path file, int members) throws Exception {
+        long[] start = mark();
+        long bytes = 0;
+        ByteBuffer buf = ByteBuffer.allocateDirect(FILE_IO_CHUNK);
+        for(int mem = 0; mem < members; mem++) {
+            try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                for(buf.clear(); ch.read(buf) > 0; buf.clear()) {
+                    buf.flip();
+                    bytes += ByteString.fromByteBuffer(buf).size();
+                }
+            }
+        }
+        return done(start, bytes);
+    }
+
+    static private long[] sharedChunks(Path file, int members) throws Exception {
+        long[] start = mark();
+        long bytes = 0;
+        try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            FileChunks chunks = new FileChunks(ch, CHUNK_SIZE, CHUNK_CACHE);
+            chunks.complete(size);
+            for(long offset = 0; offset < size; offset += CHUNK_SIZE)
+                for(int mem = 0; mem < members; mem++)
+                    bytes += chunks.chunk(offset, size).size();
+        }
+        return done(start, bytes);
+    }
+
+    static private long[] mark(){
+        return new long[]{System.nanoTime(), allocatedBytes()};
+    }
+
+    static private long[] done(long[] start, long bytes){
+        if(bytes == 0) //keep the results alive
+            System.out.println();
+        return new long[]{System.nanoTime() - start[0], allocatedBytes() - start[1]};
+    }
+
+    static private long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static private void report(String what, int members, long[] result){
+        System.out.println(String.format("%-16s %,5d members: %,8d ms %,14d bytes allocated/member",
+                what, members, result[0] / 1000000, result[1] / members));
+    }
+}
@@ -0,0 +1,87 @@
+package com.akka.server.bench;
+
+import akka.actor.ActorSystem;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import com.akka.protocols.ClientServerGroupsProtocol.TextGroupMessage;
+import com.akka.protocols.PreSerialized;
+import com.typesafe.config.ConfigFactory;
+import java.lang.management.ManagementFactory;
+
+/**
+ * compare the serialization cost of group text broadcast:
+ * 'per member' serialize the message for each member (what the remoting do for BroadcastRoutingLogic routees),
+ * 'pre serialized' serialize the message once and return the same bytes for each member (GroupRouter.broadcast).
+ * the cost of the network write itself is the same in both and not measured.
+ * print time and allocated bytes per broadcast message for groups of 10, 1k and 10k members.
+ * usage: GroupFanOutBench [text length (default 100)]
+ */
+public class GroupFanOutBench {
+    static private final int[] GROUP_SIZES = {10, 1000, 10000};
+    static private final long MEMBER_SENDS = 5000000; //serializations in each measure
+
+    public static void main(String[] args) {
+        int textLength = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        ActorSystem system = ActorSystem.create("bench", ConfigFactory
+                .parseString("akka.actor.provider = local")
+                .withFallback(ConfigFactory.load()));
+        try {
+            Serialization ser = SerializationExtension.get(system);
+            TextGroupMessage m = new TextGroupMessage("user1", "x".repeat(textLength));
+            for(int size : GROUP_SIZES) {
+                long messages = Math.max(1, MEMBER_SENDS / size);
+                perMember(ser, m, size, messages); //warmup
+                preSerialized(ser, m, size, messages);
+                report("per member", size, messages, perMember(ser, m, size, messages));
+                report("pre serialized", size, messages, preSerialized(ser, m, size, messages));
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+
+    /**
+     * @return {nanos, allocated bytes}
+     */
+    static private long[] perMember(Serialization ser, TextGroupMessage m, int size, long messages){
+        long[] start = mark();
+        long bytes = 0;
+        for(long i = 0; i < messages; i++)
+            for(int mem = 0; mem < size; mem++)
+                bytes += ser.serialize(m).get().length;
+        return done(start, bytes);
+    }
+
+    static private long[] preSerialized(Serialization ser, TextGroupMessage m, int size, long messages){
+        long[] start = mark();
+        long bytes = 0;
+        for(long i = 0; i < messages; i++) {
+            PreSerialized wire = PreSerialized.create(ser, m);
+            Serializer wireSer = ser.findSerializerFor(wire);
+            for(int mem = 0; mem < size; mem++)
+                bytes += wireSer.toBinary(wire).length;
+        }
+        return done(start, bytes);
+    }
+
+    static private long[] mark(){
+        return new long[]{System.nanoTime(), allocatedBytes()};
+    }
+
+    static private long[] done(long[] start, long bytes){
+        if(bytes == 0) //keep the results alive
+            System.out.println();
+        return new long[]{System.nanoTime() - start[0], allocatedBytes() - start[1]};
+    }
+
+    static private long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static private void report(String what, int size, long messages, long[] result){
+        System.out.println(String.format("%-15s group %,6d: %,12d ns/message %,12d bytes allocated/message",
+                what, size, result[0] / messages, result[1] / messages));
+    }
+}
@@ -0,0 +1,78 @@
+package com.akka.server.bench;
+
+import com.akka.server.journal.GroupEvent;
+import com.akka.server.journal.GroupJournal;
+import com.akka.server.journal.GroupState;
+import com.akka.server.util;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * measure the group journal write and recovery time.
+ * write group of members and then text events until there are 'events' events,
+ * and recover the group from the journal with and without snapshot.
+ * usage: JournalReplayBench [events (default 1000000)] [members (default 100)]
+ */
+public class JournalReplayBench {
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int members = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Path dir = Files.createTempDirectory("journal-bench");
+        try {
+            run(dir, events, members);
+        } finally {
+            util.deleteFileIfExsits(dir.toString());
+        }
+    }
+
+    static private void run(Path dir, int events, int members) throws Exception {
+        long start = System.nanoTime();
+        try(GroupJournal journal = new GroupJournal(dir, 64L << 20, 1024)) {
+            journal.append(GroupEvent.CREATE, "", "akka.tcp://sys0@127.0.0.1:40000/user/userActor/groups/bench");
+            for(int i = 0; i < members; i++)
+                journal.append(GroupEvent.ADD, "user" + i, "akka.tcp://sys" + i + "@127.0.0.1:40000/user/userActor/groups/bench");
+            for(int i = members + 1; i < events; i++)
+                journal.append(GroupEvent.TEXT, "user" + (i % members), "some group text message number " + i);
+        }
+        report("write", events, System.nanoTime() - start);
+
+        for(int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            GroupState state;
+            try(GroupJournal journal = new GroupJournal(dir, 64L << 20, 1024)) {
+                state = journal.recover();
+            }
+            report("full replay", events, System.nanoTime() - start);
+            check(state, events, members);
+        }
+
+        try(GroupJournal journal = new GroupJournal(dir, 64L << 20, 1024)) {
+            journal.saveSnapshot(journal.recover());
+        }
+        start = System.nanoTime();
+        GroupState state;
+        try(GroupJournal journal = new GroupJournal(dir, 64L << 20, 1024)) {
+            state = journal.recover();
+        }
+        report("snapshot recovery", events, System.nanoTime() - start);
+        check(state, events, members);
+
+        start = System.nanoTime();
+        int pages = 0;
+        try(GroupJournal journal = new GroupJournal(dir, 64L << 20, 1024)) {
+            for(long before = journal.lastSeqNr() + 1; before > 1 && pages < 1000; before -= 50, pages++)
+                journal.read(Math.max(1, before - 50), before);
+        }
+        report("history pages of 50", pages, System.nanoTime() - start);
+    }
+
+    static private void check(GroupState state, int events, int members){
+        if(state.seqNr != events || state.members.size() != members)
+            throw new IllegalStateException(String.format("bad recovery: seqNr %d, members %d", state.seqNr, state.members.size()));
+    }
+
+    static private void report(String what, long ops, long nanos){
+        System.out.println(String.format("%-20s %,10d ops in %,8d ms (%,d ops/s)",
+                what, ops, nanos / 1000000, nanos == 0 ? 0 : ops * 1000000000L / nanos));
+    }
+}
@@ -0,0 +1,114 @@
+package com.akka.server.bench;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Props;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serializer;
+import com.akka.protocols.ClientServerGroupsProtocol.TextGroupMessage;
+import com.akka.protocols.ClientServerProtocol.*;
+import com.akka.protocols.ProtocolSerializer;
+import com.akka.protocols.UserToUserProtocol.*;
+import com.romix.akka.serialization.kryo.KryoSerializer;
+import com.typesafe.config.ConfigFactory;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * compare the protocol serializer with the serializers it replaced:
+ * kryo for the protocol messages and java serialization for the plain strings.
+ * for each message print the serialized size, the time and the allocated bytes of serialize + deserialize.
+ * the actor refs are refs of this (remote) system, like the refs that the server send.
+ * usage: SerializerBench [iterations (default 200000)]
+ */
+public class SerializerBench {
+    static public class Nop extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().build();
+        }
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        ActorSystem system = ActorSystem.create("bench", ConfigFactory
+                .parseString("akka.remote.netty.tcp.port = 0\nakka.remote.artery.canonical.port = 0")
+                .withFallback(ConfigFactory.load()));
+        try {
+            ExtendedActorSystem ext = (ExtendedActorSystem) system;
+            Serializer kryo = new KryoSerializer(ext);
+            Serializer java = new JavaSerializer(ext);
+            ProtocolSerializer protocol = new ProtocolSerializer(ext);
+
+            ActorRef mainRef = system.actorOf(Props.create(Nop.class), "userActor");
+            ActorRef receiveRef = system.actorOf(Props.create(Nop.class), "messageReseiver");
+            AddUserMessage[] added = new AddUserMessage[100];
+            for(int i = 0; i < added.length; i++)
+                added[i] = new AddUserMessage("user" + i, receiveRef);
+            int[] checksums = new int[400]; //100 MB file in chunks of 256 KB
+            for(int i = 0; i < checksums.length; i++)
+                checksums[i] = ThreadLocalRandom.current().nextInt();
+
+            Map<String, Object> messages = new LinkedHashMap<>();
+            messages.put("text", new TextMessage("user1", "see you at 8, don't be late"));
+            messages.put("group text", new TextGroupMessage("user1", "see you at 8, don't be late"));
+            messages.put("connect", new ConnectMessage("user1", mainRef, receiveRef));
+            messages.put("presence 100", new PresenceDeltaMessage(added, new String[]{"user100", "user101"}, 12345));
+            messages.put("file offer", new ResumableFileMessage("user1", "3f2a9c1e-6b5d-4e8f-9a7b-1c2d3e4f5a6b",
+                    "video.mp4", 100L << 20, 256 << 10, checksums));
+            messages.put("chunk ack", new FileChunkAck("3f2a9c1e-6b5d-4e8f-9a7b-1c2d3e4f5a6b", 17));
+
+            for(int round = 0; round < 2; round++) { //the first round is warmup
+                boolean print = round == 1;
+                for(Map.Entry<String, Object> e : messages.entrySet()) {
+                    Object m = e.getValue();
+                    String manifest = protocol.manifest(m);
+                    report(print, e.getKey(), "kryo", iterations, measure(iterations, () -> kryo.fromBinary(kryo.toBinary(m), m.getClass())), kryo.toBinary(m).length);
+                    report(print, e.getKey(), "protocol", iterations, measure(iterations, () -> protocol.fromBinary(protocol.toBinary(m), manifest)), protocol.toBinary(m).length);
+                }
+                report(print, "\"yes\"", "java", iterations, measure(iterations, () -> java.fromBinary(java.toBinary("yes"), String.class)), java.toBinary("yes").length);
+                report(print, "\"yes\"", "protocol", iterations, measure(iterations, () -> protocol.fromBinary(protocol.toBinary("yes"), "S")), protocol.toBinary("yes").length);
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+
+    interface RoundTrip {
+        Object run() throws Exception;
+    }
+
+    /**
+     * @return {nanos, allocated bytes}
+     */
+    static private long[] measure(int iterations, RoundTrip roundTrip){
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        int check = 0;
+        try {
+            for(int i = 0; i < iterations; i++)
+                check += roundTrip.run() == null ? 1 : 0;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        long nanos = System.nanoTime() - start;
+        if(check != 0) //keep the results alive
+            System.out.println("null result");
+        return new long[]{nanos, allocatedBytes() - allocated};
+    }
+
+    static private long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static private void report(boolean print, String message, String serializer, int iterations, long[] result, int size){
+        if(print)
+            System.out.println(String.format("%-13s %-9s %6d bytes %,9d ns/op %,9d bytes allocated/op",
+                    message, serializer, size, result[0] / iterations, result[1] / iterations));
+    }
+}
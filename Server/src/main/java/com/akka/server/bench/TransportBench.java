@@ -0,0 +1,189 @@
+package com.akka.server.bench;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Props;
+import akka.util.ByteString;
+import com.akka.protocols.UserToUserProtocol.TextMessage;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compare text messaging over the classic (netty.tcp) and the artery transports,
+ * between two actor systems in this JVM over the loopback.
+ * each round send texts to echo actor with 'window' texts in flight and print the round trip
+ * latency (p50/p99/max) and the texts per second, once alone and once while file like
+ * bulk messages are sent to '/user/bulk/sink' (a large message destination in artery).
+ * with classic the texts wait behind the bulk messages in the same connection.
+ * usage: TransportBench [classic|artery] [texts (default 20000)] [bulk KB (default 256)]
+ */
+public class TransportBench {
+    static private final int BULK_WINDOW = 8; //bulk messages in flight
+
+    /**
+     * send the texts to the echo actor and complete the result with the round trip times
+     */
+    static public class Pinger extends AbstractActor {
+        private final ActorRef echo;
+        private final int window;
+        private final long[] sentAt;
+        private final long[] rtts;
+        private final CompletableFuture<long[]> result;
+        private int sent;
+        private int received;
+        private long start;
+
+        public Pinger(ActorRef echo, int texts, int window, CompletableFuture<long[]> result){
+            this.echo = echo;
+            this.window = window;
+            this.sentAt = new long[texts];
+            this.rtts = new long[texts];
+            this.result = result;
+        }
+
+        @Override
+        public void preStart() {
+            start = System.nanoTime();
+            for(int i = 0; i < window && sent < sentAt.length; i++)
+                send();
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().match(TextMessage.class, m -> {
+                int seq = Integer.parseInt(m.msg);
+                rtts[received++] = System.nanoTime() - sentAt[seq];
+                if(sent < sentAt.length)
+                    send();
+                if(received == rtts.length) {
+                    long[] res = Arrays.copyOf(rtts, rtts.length + 1);
+                    res[rtts.length] = System.nanoTime() - start;
+                    result.complete(res);
+                    getContext().stop(getSelf());
+                }
+            }).build();
+        }
+
+        private void send(){
+            sentAt[sent] = System.nanoTime();
+            echo.tell(new TextMessage("bench", Integer.toString(sent)), getSelf());
+            sent++;
+        }
+    }
+
+    static public class Echo extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().matchAny(m -> getSender().tell(m, getSelf())).build();
+        }
+    }
+
+    /**
+     * send bulk messages to the sink while there is ack, until stopped
+     */
+    static public class BulkSender extends AbstractActor {
+        private final ActorRef sink;
+        private final ByteString bulk;
+
+        public BulkSender(ActorRef sink, int bulkBytes){
+            this.sink = sink;
+            this.bulk = ByteString.fromArray(new byte[bulkBytes]);
+        }
+
+        @Override
+        public void preStart() {
+            for(int i = 0; i < BULK_WINDOW; i++)
+                sink.tell(bulk, getSelf());
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().matchEquals("ack", m -> sink.tell(bulk, getSelf())).build();
+        }
+    }
+
+    static public class Sink extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().match(ByteString.class, m -> getSender().tell("ack", getSelf())).build();
+        }
+    }
+
+    /**
+     * parent of the bulk sink, so the sink path (/user/bulk/sink) is one of the large message destinations
+     */
+    static public class Holder extends AbstractActor {
+        @Override
+        public void preStart() {
+            getContext().actorOf(Props.create(Sink.class), "sink");
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().build();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean artery = args.length > 0 && args[0].equals("artery");
+        int texts = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int bulkBytes = (args.length > 2 ? Integer.parseInt(args[2]) : 256) * 1024;
+        Config conf = ConfigFactory.parseString(String.format(
+                "akka.remote.artery.enabled = %s\n" +
+                "akka.remote.netty.tcp.port = 0\n" +
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.loglevel = WARNING", artery ? "on" : "off"))
+                .withFallback(ConfigFactory.load());
+        ActorSystem client = ActorSystem.create("benchClient", conf);
+        ActorSystem server = ActorSystem.create("benchServer", conf);
+        try {
+            server.actorOf(Props.create(Echo.class), "echo");
+            server.actorOf(Props.create(Holder.class), "bulk");
+            String address = ((ExtendedActorSystem) server).provider().getDefaultAddress().toString();
+            Duration timeout = Duration.ofSeconds(10);
+            ActorRef echo = client.actorSelection(address + "/user/echo").resolveOne(timeout).toCompletableFuture().get();
+            ActorRef sink = client.actorSelection(address + "/user/bulk/sink").resolveOne(timeout).toCompletableFuture().get();
+
+            run(client, echo, texts / 10, 1, null, 0); //warmup
+            for(int window : new int[]{1, 100}) {
+                report(artery, "alone", window, run(client, echo, texts, window, null, 0));
+                report(artery, "with bulk", window, run(client, echo, texts, window, sink, bulkBytes));
+            }
+        } finally {
+            client.terminate();
+            server.terminate();
+            client.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+            server.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return the round trip times, the last element is the total time
+     */
+    static private long[] run(ActorSystem client, ActorRef echo, int texts, int window, ActorRef sink, int bulkBytes) throws Exception {
+        ActorRef bulk = sink == null ? null : client.actorOf(Props.create(BulkSender.class, () -> new BulkSender(sink, bulkBytes)));
+        if(bulk != null)
+            Thread.sleep(500); //let the bulk fill the connection
+        CompletableFuture<long[]> result = new CompletableFuture<>();
+        client.actorOf(Props.create(Pinger.class, () -> new Pinger(echo, texts, window, result)));
+        long[] res = result.get(5, TimeUnit.MINUTES);
+        if(bulk != null)
+            client.stop(bulk);
+        return res;
+    }
+
+    static private void report(boolean artery, String what, int window, long[] res){
+        int texts = res.length - 1;
+        long[] rtts = Arrays.copyOf(res, texts);
+        Arrays.sort(rtts);
+        System.out.println(String.format("%-7s %-10s window %3d: p50 %7.2f ms, p99 %7.2f ms, max %7.2f ms, %,9.0f texts/s",
+                artery ? "artery" : "classic", what, window, rtts[texts / 2] / 1e6, rtts[texts * 99 / 100] / 1e6,
+                rtts[texts - 1] / 1e6, texts * 1e9 / res[texts]));
+    }
+}
@@ -0,0 +1,58 @@
+package com.akka.server.journal;
+
+/**
+ * one event in the group journal.
+ * name is the member/sender name, data is the member ActorRef path for
+ * membership events, the text for text events and the file content hash and name for file events
+ * ("hash/name", see fileData, events from before the hash was journaled has only the name).
+ * file rejected event mean the uploaded content of the file event with seqNr data didn't match
+ * the hash that the sender sent, so the hash of that file event should not be used.
+ */
+public class GroupEvent {
+    static public final byte CREATE = 1;
+    static public final byte ADD = 2;
+    static public final byte REMOVE = 3;
+    static public final byte LEAVE = 4;
+    static public final byte CLOSE = 5;
+    static public final byte TEXT = 6;
+    static public final byte FILE = 7;
+    static public final byte FILE_REJECTED = 8;
+
+    public final long seqNr;
+    public final long timestamp;
+    public final byte type;
+    public final String name;
+    public final String data;
+
+    public GroupEvent(long seqNr, long timestamp, byte type, String name, String data){
+        this.seqNr = seqNr;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.name = name;
+        this.data = data;
+    }
+
+    /**
+     * @param hash: the file content hash, null if not known
+     * @param fileName: the file name (without directory)
+     * @return data of file event
+     */
+    static public String fileData(String hash, String fileName){
+        return (hash == null ? "" : hash) + "/" + fileName;
+    }
+
+    /**
+     * @return the content hash of file event, null if not known
+     */
+    public String fileHash(){
+        int i = data.indexOf('/');
+        return i <= 0 ? null : data.substring(0, i);
+    }
+
+    /**
+     * @return the file name of file event
+     */
+    public String fileName(){
+        return data.substring(data.indexOf('/') + 1);
+    }
+}
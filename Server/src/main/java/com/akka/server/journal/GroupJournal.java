@@ -0,0 +1,434 @@
+package com.akka.server.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * append only journal of one group events.
+ * the events are written to segment files named by the first seqNr in them,
+ * a new segment is started when the current one reach segmentBytes.
+ * each segment has sparse index file (seqNr, position) with entry every indexInterval events
+ * so reading from some seqNr doesn't scan the whole journal.
+ * record format: [int body length][body][int crc32 of body],
+ * body: [long seqNr][long timestamp][byte type][int name length][name][int data length][data].
+ * torn record at the end of the last segment (crash in the middle of write) is truncated on open.
+ * the segment is forced to the disk when it is sealed, before snapshot and on close,
+ * and after every append if syncAppends is on (otherwise the last appends can be lost in OS crash).
+ * the snapshot is forced before it replace the previous one.
+ * not thread safe, used by the group actor only.
+ */
+public class GroupJournal implements Closeable {
+    static private final String LOG = ".log";
+    static private final String IDX = ".idx";
+    static private final String SNAPSHOT = "snapshot";
+
+    /**
+     * sparse index of one segment, seqNr -> position in the segment file
+     */
+    static private class SegmentIndex {
+        long[] seqNrs = new long[64];
+        long[] positions = new long[64];
+        int size = 0;
+
+        void add(long seqNr, long position){
+            if(size == seqNrs.length) {
+                seqNrs = Arrays.copyOf(seqNrs, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            seqNrs[size] = seqNr;
+            positions[size] = position;
+            size++;
+        }
+
+        /**
+         * @return position of the last indexed record with seqNr <= given seqNr, or 0
+         */
+        long floor(long seqNr){
+            int i = Arrays.binarySearch(seqNrs, 0, size, seqNr);
+            if(i >= 0)
+                return positions[i];
+            i = -i - 2;
+            return i < 0 ? 0 : positions[i];
+        }
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int indexInterval;
+    private final boolean syncAppends;
+    private final TreeMap<Long, Path> segments; //first seqNr -> segment file
+    private final HashMap<Long, SegmentIndex> indexes; //first seqNr -> segment index
+    private final CRC32 crc;
+    private ByteBuffer writeBuf;
+    private FileChannel log;
+    private FileChannel idx;
+    private SegmentIndex currIndex;
+    private long writePos;
+    private long segmentEvents;
+    private long lastSeqNr;
+
+    /**
+     * open the journal in dir without force after every append
+     */
+    public GroupJournal(Path dir, long segmentBytes, int indexInterval) throws IOException {
+        this(dir, segmentBytes, indexInterval, false);
+    }
+
+    /**
+     * open the journal in dir, the directory is created if not exists
+     * @param dir: journal directory
+     * @param segmentBytes: max size of segment file
+     * @param indexInterval: events between index entries
+     * @param syncAppends: force every append to the disk before it returns
+     * @throws IOException if the journal can't be opened
+     */
+    public GroupJournal(Path dir, long segmentBytes, int indexInterval, boolean syncAppends) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+        this.syncAppends = syncAppends;
+        this.segments = new TreeMap<>();
+        this.indexes = new HashMap<>();
+        this.crc = new CRC32();
+        this.writeBuf = ByteBuffer.allocate(1024);
+        this.lastSeqNr = 0;
+        Files.createDirectories(dir);
+        try(Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(LOG))
+                    .forEach(p -> segments.put(firstSeqNr(p), p));
+        }
+        if(!segments.isEmpty())
+            openLastSegment();
+    }
+
+    public long lastSeqNr(){
+        return lastSeqNr;
+    }
+
+    /**
+     * append new event to the journal
+     * @param type: event type, see GroupEvent
+     * @param name: member/sender name
+     * @param data: member ActorRef path or text
+     * @return the appended event
+     * @throws IOException if the write failed
+     */
+    public GroupEvent append(byte type, String name, String data) throws IOException {
+        long seqNr = lastSeqNr + 1;
+        if(log == null || writePos >= segmentBytes)
+            roll(seqNr);
+        GroupEvent e = new GroupEvent(seqNr, System.currentTimeMillis(), type, name, data);
+        ByteBuffer buf = encode(e);
+        if(segmentEvents % indexInterval == 0)
+            addIndexEntry(seqNr, writePos);
+        int len = buf.remaining();
+        while(buf.hasRemaining())
+            log.write(buf);
+        if(syncAppends)
+            log.force(false);
+        writePos += len;
+        segmentEvents++;
+        lastSeqNr = seqNr;
+        return e;
+    }
+
+    /**
+     * call f on all the events with fromSeqNr <= seqNr, in order
+     */
+    public void replay(long fromSeqNr, Consumer<GroupEvent> f) throws IOException {
+        replay(fromSeqNr, Long.MAX_VALUE, f);
+    }
+
+    /**
+     * call f on all the events with fromSeqNr <= seqNr < toSeqNr, in order
+     */
+    public void replay(long fromSeqNr, long toSeqNr, Consumer<GroupEvent> f) throws IOException {
+        if(fromSeqNr > lastSeqNr || fromSeqNr >= toSeqNr || segments.isEmpty())
+            return;
+        Long start = segments.floorKey(fromSeqNr);
+        if(start == null)
+            start = segments.firstKey();
+        for(Map.Entry<Long, Path> seg : segments.tailMap(start, true).entrySet()) {
+            if(seg.getKey() >= toSeqNr)
+                return;
+            long pos = seg.getKey().equals(start) ? index(seg.getKey()).floor(fromSeqNr) : 0;
+            if(!scan(seg.getValue(), pos, fromSeqNr, toSeqNr, f))
+                return;
+        }
+    }
+
+    /**
+     * @return the events with fromSeqNr <= seqNr < toSeqNr
+     */
+    public List<GroupEvent> read(long fromSeqNr, long toSeqNr) throws IOException {
+        List<GroupEvent> events = new ArrayList<>();
+        replay(fromSeqNr, toSeqNr, events::add);
+        return events;
+    }
+
+    /**
+     * load the last snapshot and replay the events after it.
+     * if the snapshot is newer than the log (the log tail was lost) the next appends continue after the snapshot
+     * @return the recovered group state
+     */
+    public GroupState recover() throws IOException {
+        GroupState state = loadSnapshot();
+        replay(state.seqNr + 1, state::apply);
+        if(state.seqNr > lastSeqNr)
+            lastSeqNr = state.seqNr;
+        return state;
+    }
+
+    /**
+     * write snapshot of the state, the snapshot replace the previous one atomically.
+     * the log is forced first, so the snapshot is not on the disk before the events it include
+     * @param state: group state
+     */
+    public void saveSnapshot(GroupState state) throws IOException {
+        if(log != null)
+            log.force(false);
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        try(FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeLong(state.seqNr);
+            out.writeBoolean(state.closed);
+            out.writeInt(state.members.size());
+            for(Map.Entry<String, String> e : state.members.entrySet()) {
+                out.writeUTF(e.getValue());
+                out.writeUTF(e.getKey());
+            }
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the last snapshot or empty state if there is no snapshot
+     */
+    public GroupState loadSnapshot() throws IOException {
+        GroupState state = new GroupState();
+        Path path = dir.resolve(SNAPSHOT);
+        if(!Files.exists(path))
+            return state;
+        try(DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            state.seqNr = in.readLong();
+            state.closed = in.readBoolean();
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                state.members.put(in.readUTF(), name);
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(log != null) {
+            log.force(false);
+            idx.force(false);
+            log.close();
+            idx.close();
+            log = null;
+        }
+    }
+
+    ///////////////////////////////SEGMENTS////////////////////////////////////
+    /**
+     * open the last segment for append.
+     * the segment is scanned to find the last valid record, torn tail is truncated
+     * and the segment index is rebuilt.
+     */
+    private void openLastSegment() throws IOException {
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        SegmentIndex index = new SegmentIndex();
+        long[] end = {0};
+        long[] count = {0};
+        lastSeqNr = last.getKey() - 1;
+        scanSegment(last.getValue(), 0, (e, pos) -> {
+            if(count[0] % indexInterval == 0)
+                index.add(e.seqNr, pos);
+            count[0]++;
+            lastSeqNr = e.seqNr;
+            return true;
+        }, end);
+
+        log = FileChannel.open(last.getValue(), StandardOpenOption.WRITE);
+        log.truncate(end[0]);
+        log.position(end[0]);
+        idx = FileChannel.open(idxPath(last.getKey()), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        currIndex = new SegmentIndex();
+        indexes.put(last.getKey(), currIndex);
+        for(int i = 0; i < index.size; i++)
+            addIndexEntry(index.seqNrs[i], index.positions[i]);
+        writePos = end[0];
+        segmentEvents = count[0];
+    }
+
+    private void roll(long seqNr) throws IOException {
+        close();
+        Path path = dir.resolve(String.format("%020d%s", seqNr, LOG));
+        log = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        idx = FileChannel.open(idxPath(seqNr), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segments.put(seqNr, path);
+        currIndex = new SegmentIndex();
+        indexes.put(seqNr, currIndex);
+        writePos = 0;
+        segmentEvents = 0;
+    }
+
+    private void addIndexEntry(long seqNr, long position) throws IOException {
+        currIndex.add(seqNr, position);
+        ByteBuffer entry = ByteBuffer.allocate(16).putLong(seqNr).putLong(position);
+        entry.flip();
+        while(entry.hasRemaining())
+            idx.write(entry);
+    }
+
+    /**
+     * @return the index of the segment, sealed segment index is loaded from his file once
+     */
+    private SegmentIndex index(long firstSeqNr) throws IOException {
+        SegmentIndex index = indexes.get(firstSeqNr);
+        if(index != null)
+            return index;
+        index = new SegmentIndex();
+        Path path = idxPath(firstSeqNr);
+        if(Files.exists(path))
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                for(long n = Files.size(path) / 16; n > 0; n--)
+                    index.add(in.readLong(), in.readLong());
+            }
+        indexes.put(firstSeqNr, index);
+        return index;
+    }
+
+    /**
+     * scan segment from position and call f on events in range
+     * @return false if toSeqNr reached
+     */
+    private boolean scan(Path segment, long position, long fromSeqNr, long toSeqNr, Consumer<GroupEvent> f) throws IOException {
+        boolean[] more = {true};
+        scanSegment(segment, position, (e, pos) -> {
+            if(e.seqNr >= toSeqNr)
+                return more[0] = false;
+            if(e.seqNr >= fromSeqNr)
+                f.accept(e);
+            return true;
+        }, new long[1]);
+        return more[0];
+    }
+
+    private interface RecordConsumer {
+        /**
+         * @return false to stop the scan
+         */
+        boolean accept(GroupEvent e, long position);
+    }
+
+    /**
+     * read the valid records of segment from position until the end, until torn/corrupted record
+     * or until f return false
+     * @param end: out parameter, the position after the last valid record
+     */
+    private void scanSegment(Path segment, long position, RecordConsumer f, long[] end) throws IOException {
+        try(FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = ch.size();
+            ch.position(position);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), 1 << 16));
+            byte[] body = new byte[256];
+            long pos = position;
+            while(pos + 8 <= size) {
+                int len;
+                try {
+                    len = in.readInt();
+                    if(len <= 0 || pos + 8 + len > size)
+                        break;
+                    if(body.length < len)
+                        body = new byte[Math.max(len, body.length * 2)];
+                    in.readFully(body, 0, len);
+                    crc.reset();
+                    crc.update(body, 0, len);
+                    if((int) crc.getValue() != in.readInt())
+                        break;
+                } catch (EOFException e) {
+                    break;
+                }
+                long recordPos = pos;
+                pos += 8 + len;
+                if(!f.accept(decode(body, len), recordPos))
+                    break;
+            }
+            end[0] = pos;
+        }
+    }
+
+    ///////////////////////////////CODEC////////////////////////////////////
+    private ByteBuffer encode(GroupEvent e){
+        byte[] name = e.name.getBytes(StandardCharsets.UTF_8);
+        byte[] data = e.data.getBytes(StandardCharsets.UTF_8);
+        int len = 8 + 8 + 1 + 4 + name.length + 4 + data.length;
+        if(writeBuf.capacity() < len + 8)
+            writeBuf = ByteBuffer.allocate(Math.max(len + 8, writeBuf.capacity() * 2));
+        writeBuf.clear();
+        writeBuf.putInt(len)
+                .putLong(e.seqNr)
+                .putLong(e.timestamp)
+                .put(e.type)
+                .putInt(name.length).put(name)
+                .putInt(data.length).put(data);
+        crc.reset();
+        crc.update(writeBuf.array(), 4, len);
+        writeBuf.putInt((int) crc.getValue());
+        writeBuf.flip();
+        return writeBuf;
+    }
+
+    static private GroupEvent decode(byte[] body, int len){
+        ByteBuffer buf = ByteBuffer.wrap(body, 0, len);
+        long seqNr = buf.getLong();
+        long timestamp = buf.getLong();
+        byte type = buf.get();
+        int nameLen = buf.getInt();
+        String name = new String(body, buf.position(), nameLen, StandardCharsets.UTF_8);
+        buf.position(buf.position() + nameLen);
+        int dataLen = buf.getInt();
+        String data = new String(body, buf.position(), dataLen, StandardCharsets.UTF_8);
+        return new GroupEvent(seqNr, timestamp, type, name, data);
+    }
+
+    ///////////////////////////////UTILS////////////////////////////////////
+    private Path idxPath(long firstSeqNr){
+        return dir.resolve(String.format("%020d%s", firstSeqNr, IDX));
+    }
+
+    static private long firstSeqNr(Path segment){
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - LOG.length()));
+    }
+}
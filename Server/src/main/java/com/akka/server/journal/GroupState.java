@@ -0,0 +1,42 @@
+package com.akka.server.journal;
+
+import java.util.HashMap;
+
+/**
+ * the group membership that recovered from snapshot and events.
+ * the members are kept by ActorRef path so the state can be recovered without ActorSystem.
+ */
+public class GroupState {
+    public long seqNr;
+    public boolean closed;
+    public final HashMap<String, String> members; //member ActorRef path -> member name
+
+    public GroupState(){
+        this.seqNr = 0;
+        this.closed = false;
+        this.members = new HashMap<>();
+    }
+
+    /**
+     * update the state with event, text and file events change only the seqNr
+     * @param e: GroupEvent
+     */
+    public void apply(GroupEvent e){
+        switch (e.type) {
+            case GroupEvent.ADD:
+                members.put(e.data, e.name);
+                break;
+            case GroupEvent.REMOVE:
+            case GroupEvent.LEAVE:
+                members.remove(e.data);
+                break;
+            case GroupEvent.CLOSE:
+                members.clear();
+                closed = true;
+                break;
+            default:
+                break;
+        }
+        seqNr = e.seqNr;
+    }
+}
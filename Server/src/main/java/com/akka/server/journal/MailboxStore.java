@@ -0,0 +1,325 @@
+package com.akka.server.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * store of text messages to offline users, one store for each Connector shard.
+ * the messages are appended to memory mapped segment files, the location of the
+ * pending messages of each user kept in memory.
+ * when the messages of user delivered a 'drained' record is appended, so the pending
+ * messages can be rebuilt by scanning the segments after restart.
+ * segment is deleted when it and all the older segments have no pending messages.
+ * the records are written to the mapped memory, so they survive crash of the server process,
+ * but they reach the disk only on force (called periodically by the owner), on segment roll and on close,
+ * the records written since the last force can be lost in OS crash or power loss.
+ * record format: [byte type][int length][body], type 0 mark the end of the written data.
+ * message body: [long seqNr][long timestamp][to][from][text], drained body: [long seqNr][to],
+ * strings are [int length][utf-8 bytes].
+ * not thread safe, used by the Connector only.
+ */
+public class MailboxStore implements Closeable {
+    static private final byte END = 0;
+    static private final byte MESSAGE = 1;
+    static private final byte DRAINED = 2;
+    static private final String SEGMENT = ".seg";
+
+    /**
+     * stored message to offline user
+     */
+    static public class StoredMessage {
+        public final long seqNr;
+        public final long timestamp;
+        public final String to;
+        public final String from;
+        public final String text;
+
+        public StoredMessage(long seqNr, long timestamp, String to, String from, String text){
+            this.seqNr = seqNr;
+            this.timestamp = timestamp;
+            this.to = to;
+            this.from = from;
+            this.text = text;
+        }
+    }
+
+    static private class Segment {
+        final Path path;
+        final FileChannel ch;
+        final MappedByteBuffer buf;
+        int live; //pending messages in this segment
+
+        Segment(Path path, long size) throws IOException {
+            this.path = path;
+            this.ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, ch.size()));
+            this.live = 0;
+        }
+    }
+
+    /**
+     * location of pending message
+     */
+    static private class Loc {
+        final long seqNr;
+        final int segment;
+        final int position;
+        Loc(long seqNr, int segment, int position){
+            this.seqNr = seqNr;
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxPerUser;
+    private final TreeMap<Integer, Segment> segments; //segment id -> segment
+    private final HashMap<String, ArrayDeque<Loc>> pending; //user name -> pending messages locations
+    private Segment curr;
+    private int currId;
+    private int writePos; //position of the next record in the current segment
+    private long lastSeqNr;
+    private boolean dirty; //the current segment has records that not forced yet
+
+    /**
+     * open the store in dir and rebuild the pending messages
+     * @param dir: store directory, created if not exists
+     * @param segmentBytes: size of segment file
+     * @param maxPerUser: max pending messages to one user
+     * @throws IOException if the store can't be opened
+     */
+    public MailboxStore(Path dir, int segmentBytes, int maxPerUser) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxPerUser = maxPerUser;
+        this.segments = new TreeMap<>();
+        this.pending = new HashMap<>();
+        this.lastSeqNr = 0;
+        Files.createDirectories(dir);
+        List<Integer> ids = new ArrayList<>();
+        try(Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SEGMENT))
+                    .forEach(n -> ids.add(Integer.parseInt(n.substring(0, n.length() - SEGMENT.length()))));
+        }
+        ids.sort(Integer::compare);
+        for(int id : ids) {
+            Segment seg = new Segment(segmentPath(id), segmentBytes);
+            segments.put(id, seg);
+            rebuild(id, seg);
+        }
+        if(segments.isEmpty())
+            roll(0);
+        else {
+            currId = segments.lastKey();
+            curr = segments.get(currId);
+        }
+        deleteDrainedSegments();
+    }
+
+    /**
+     * store message to offline user
+     * @return false if the user has maxPerUser pending messages
+     */
+    public boolean store(String to, String from, String text) throws IOException {
+        ArrayDeque<Loc> locs = pending.computeIfAbsent(to, k -> new ArrayDeque<>());
+        if(locs.size() >= maxPerUser)
+            return false;
+        long seqNr = lastSeqNr + 1;
+        byte[] toB = to.getBytes(StandardCharsets.UTF_8);
+        byte[] fromB = from.getBytes(StandardCharsets.UTF_8);
+        byte[] textB = text.getBytes(StandardCharsets.UTF_8);
+        int len = 8 + 8 + 4 + toB.length + 4 + fromB.length + 4 + textB.length;
+        int position = reserve(len);
+        curr.buf.position(position + 5);
+        curr.buf.putLong(seqNr).putLong(System.currentTimeMillis());
+        putString(curr.buf, toB);
+        putString(curr.buf, fromB);
+        putString(curr.buf, textB);
+        commit(position, MESSAGE, len);
+        dirty = true;
+        locs.add(new Loc(seqNr, currId, position));
+        curr.live++;
+        lastSeqNr = seqNr;
+        return true;
+    }
+
+    /**
+     * @return the pending messages of the user in the order they stored, without removing them
+     */
+    public List<StoredMessage> pending(String user){
+        ArrayDeque<Loc> locs = pending.get(user);
+        List<StoredMessage> messages = new ArrayList<>();
+        if(locs != null)
+            for(Loc loc : locs)
+                messages.add(read(segments.get(loc.segment).buf, loc.position));
+        return messages;
+    }
+
+    /**
+     * mark the messages of the user up to seqNr as delivered
+     * @param user: user name
+     * @param seqNr: seqNr of the last delivered message
+     */
+    public void drained(String user, long seqNr) throws IOException {
+        ArrayDeque<Loc> locs = pending.get(user);
+        if(locs == null || locs.isEmpty() || locs.peek().seqNr > seqNr)
+            return;
+        byte[] userB = user.getBytes(StandardCharsets.UTF_8);
+        int len = 8 + 4 + userB.length;
+        int position = reserve(len);
+        curr.buf.position(position + 5);
+        curr.buf.putLong(seqNr);
+        putString(curr.buf, userB);
+        commit(position, DRAINED, len);
+        dirty = true;
+        removePending(user, seqNr);
+        deleteDrainedSegments();
+    }
+
+    /**
+     * write the records of the current segment to the disk, the older segments are forced on roll
+     */
+    public void force(){
+        if(!dirty)
+            return;
+        curr.buf.force();
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(Segment seg : segments.values()) {
+            seg.buf.force();
+            seg.ch.close();
+        }
+    }
+
+    ///////////////////////////////SEGMENTS////////////////////////////////////
+    /**
+     * reserve space for record in the current segment, start new segment if there is no room
+     * @return the record position
+     */
+    private int reserve(int len) throws IOException {
+        int needed = 5 + len + 1; //header, body and END of the next record
+        if(curr.buf.limit() - writePos < needed)
+            roll(currId + 1, Math.max(segmentBytes, needed));
+        return writePos;
+    }
+
+    /**
+     * write the record header after the body, so a crash in the middle of write leave END in the header
+     */
+    private void commit(int position, byte type, int len){
+        curr.buf.putInt(position + 1, len);
+        curr.buf.put(position, type);
+        writePos = position + 5 + len;
+    }
+
+    private void roll(int id) throws IOException {
+        roll(id, segmentBytes);
+    }
+
+    private void roll(int id, int size) throws IOException {
+        if(curr != null)
+            force();
+        curr = new Segment(segmentPath(id), size);
+        currId = id;
+        segments.put(id, curr);
+        writePos = 0;
+    }
+
+    /**
+     * scan segment records and update the pending messages
+     */
+    private void rebuild(int id, Segment seg){
+        ByteBuffer buf = seg.buf.duplicate();
+        int pos = 0;
+        while(pos + 5 <= buf.limit()) {
+            byte type = buf.get(pos);
+            if(type == END)
+                break;
+            int len = buf.getInt(pos + 1);
+            if(type == MESSAGE) {
+                StoredMessage m = read(buf, pos);
+                pending.computeIfAbsent(m.to, k -> new ArrayDeque<>()).add(new Loc(m.seqNr, id, pos));
+                seg.live++;
+                lastSeqNr = Math.max(lastSeqNr, m.seqNr);
+            }
+            else if(type == DRAINED) {
+                buf.position(pos + 5);
+                long seqNr = buf.getLong();
+                removePending(getString(buf), seqNr);
+            }
+            pos += 5 + len;
+        }
+        writePos = pos;
+    }
+
+    private void removePending(String user, long seqNr){
+        ArrayDeque<Loc> locs = pending.get(user);
+        if(locs == null)
+            return;
+        while(!locs.isEmpty() && locs.peek().seqNr <= seqNr)
+            segments.get(locs.poll().segment).live--;
+        if(locs.isEmpty())
+            pending.remove(user);
+    }
+
+    /**
+     * delete the oldest segments while they have no pending messages, the current segment is kept
+     */
+    private void deleteDrainedSegments() throws IOException {
+        Iterator<Map.Entry<Integer, Segment>> it = segments.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Integer, Segment> e = it.next();
+            if(e.getKey() == currId || e.getValue().live > 0)
+                return;
+            e.getValue().ch.close();
+            Files.deleteIfExists(e.getValue().path);
+            it.remove();
+        }
+    }
+
+    ///////////////////////////////CODEC////////////////////////////////////
+    static private StoredMessage read(ByteBuffer segment, int position){
+        ByteBuffer buf = segment.duplicate();
+        buf.position(position + 5);
+        long seqNr = buf.getLong();
+        long timestamp = buf.getLong();
+        String to = getString(buf);
+        String from = getString(buf);
+        String text = getString(buf);
+        return new StoredMessage(seqNr, timestamp, to, from, text);
+    }
+
+    static private void putString(ByteBuffer buf, byte[] bytes){
+        buf.putInt(bytes.length).put(bytes);
+    }
+
+    static private String getString(ByteBuffer buf){
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path segmentPath(int id){
+        return dir.resolve(String.format("%010d%s", id, SEGMENT));
+    }
+}
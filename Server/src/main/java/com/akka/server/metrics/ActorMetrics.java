@@ -0,0 +1,292 @@
+package com.akka.server.metrics;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * the metrics of the server actors (AbstractLogActor and AbstractLogActorWithTimers) of all the nodes in this JVM:
+ *  - for each actor: messages count, busy time (time in receive) and mailbox depth (actors with MeteredMailbox)
+ *  - for each actor type and message type: count and histogram of the processing time
+ *  - the outbound queues depth of the groups (see MemberOutbox) and the count of their overflows by policy
+ *  - the messages that the groups sent again to members that missed them, by catch-up result
+ * the actors record from their own threads with lock free counters and HDR Recorders,
+ * the reports are taken by MetricsEndpoint.
+ * the processing time histogram is kept per type and not per actor so thousands of groups don't cost
+ * thousands of histograms, the hot group is found by its busy time.
+ */
+public class ActorMetrics {
+    /**
+     * the config path of the metered mailbox, see MeteredMailbox
+     */
+    static public final String MAILBOX = "whatsapp.metrics.mailbox";
+
+    /**
+     * metrics of one actor
+     */
+    static public class Actor {
+        public final String path; //full path with the node address
+        private final LongAdder messages;
+        private final LongAdder busyNanos;
+        private volatile Class<?> actorClass;
+        private volatile ConcurrentHashMap<Class<?>, MessageType> types; //of the actor class
+        private volatile MeteredMailbox.MeteredQueue mailbox;
+        private volatile int outboundDepth; //messages waiting in the outbound queues of the actor, -1 if it has none
+        private long lastMessages; //at the last top report
+        private long lastBusyNanos;
+
+        Actor(String path){
+            this.path = path;
+            this.messages = new LongAdder();
+            this.busyNanos = new LongAdder();
+            this.outboundDepth = -1;
+        }
+
+        /**
+         * @param m: the processed message
+         * @param nanos: the processing time
+         */
+        public void record(Object m, long nanos){
+            messages.increment();
+            busyNanos.add(nanos);
+            ConcurrentHashMap<Class<?>, MessageType> t = types;
+            if(t == null)
+                return;
+            MessageType type = t.get(m.getClass());
+            if(type == null)
+                type = t.computeIfAbsent(m.getClass(), c -> new MessageType(actorType(), c.getSimpleName()));
+            type.record(nanos);
+        }
+
+        public long messages(){
+            return messages.sum();
+        }
+
+        public long busyNanos(){
+            return busyNanos.sum();
+        }
+
+        /**
+         * @return the messages in the mailbox, -1 if the actor doesn't use the metered mailbox
+         */
+        public int mailboxDepth(){
+            MeteredMailbox.MeteredQueue q = mailbox;
+            return q == null ? -1 : q.numberOfMessages();
+        }
+
+        /**
+         * @param depth: the messages waiting in the outbound queues of the actor
+         */
+        public void outbound(int depth){
+            outboundDepth = depth;
+        }
+
+        /**
+         * @return the messages in the outbound queues, -1 if the actor doesn't have outbound queues
+         */
+        public int outboundDepth(){
+            return outboundDepth;
+        }
+
+        public String actorType(){
+            Class<?> c = actorClass;
+            return c == null ? "unknown" : c.getSimpleName();
+        }
+    }
+
+    /**
+     * processing time of one message type in one actor type.
+     * the Recorder interval is drained only here (into the cumulative histogram and the histogram since
+     * the last top), so the prometheus scrape, the JMX report and the top don't take data from each other.
+     */
+    static public class MessageType {
+        public final String actorType;
+        public final String message;
+        private final LongAdder count;
+        private final LongAdder sumNanos;
+        private final Recorder recorder;
+        private final Histogram total; //all the processing times, for the report
+        private final Histogram sinceTop; //the processing times since the last top
+        private Histogram recycled; //the last interval, reused by the recorder
+
+        MessageType(String actorType, String message){
+            this.actorType = actorType;
+            this.message = message;
+            this.count = new LongAdder();
+            this.sumNanos = new LongAdder();
+            this.recorder = new Recorder(3);
+            this.total = new Histogram(3);
+            this.sinceTop = new Histogram(3);
+        }
+
+        void record(long nanos){
+            count.increment();
+            sumNanos.add(nanos);
+            recorder.recordValue(nanos);
+        }
+
+        public long count(){
+            return count.sum();
+        }
+
+        /**
+         * @return the total processing time of all the messages
+         */
+        public long sumNanos(){
+            return sumNanos.sum();
+        }
+
+        /**
+         * @return the processing times since the actor type started
+         */
+        synchronized public Histogram cumulative(){
+            drain();
+            return total.copy();
+        }
+
+        /**
+         * @return the processing times since the last call, used by the top only
+         */
+        synchronized public Histogram sinceTop(){
+            drain();
+            Histogram h = sinceTop.copy();
+            sinceTop.reset();
+            return h;
+        }
+
+        private void drain(){
+            recycled = recorder.getIntervalHistogram(recycled);
+            total.add(recycled);
+            sinceTop.add(recycled);
+        }
+    }
+
+    static private final ConcurrentHashMap<String, Actor> actors = new ConcurrentHashMap<>();
+    static private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, MessageType>> byActorClass = new ConcurrentHashMap<>();
+    static private final ConcurrentHashMap<String, LongAdder> overflows = new ConcurrentHashMap<>(); //policy -> messages
+    static private final ConcurrentHashMap<String, LongAdder> catchUps = new ConcurrentHashMap<>(); //result -> messages
+
+    /**
+     * called from the actor constructor, the metrics of restarted actor are kept
+     * @return the actor metrics, null if the metrics are disabled ('whatsapp.metrics.enabled')
+     */
+    static public Actor register(ActorSystem system, ActorRef self, Class<?> actorClass){
+        if(!system.settings().config().getBoolean("whatsapp.metrics.enabled"))
+            return null;
+        Actor a = actor(system, self);
+        a.actorClass = actorClass;
+        a.types = byActorClass.computeIfAbsent(actorClass, c -> new ConcurrentHashMap<>());
+        return a;
+    }
+
+    /**
+     * called when the actor stopped, the message type metrics are kept
+     */
+    static public void unregister(Actor a){
+        actors.remove(a.path, a);
+    }
+
+    static void mailboxCreated(ActorSystem system, ActorRef owner, MeteredMailbox.MeteredQueue q){
+        actor(system, owner).mailbox = q;
+    }
+
+    static void mailboxCleaned(ActorSystem system, ActorRef owner){
+        actors.remove(key(system, owner));
+    }
+
+    static private Actor actor(ActorSystem system, ActorRef ref){
+        return actors.computeIfAbsent(key(system, ref), Actor::new);
+    }
+
+    static private String key(ActorSystem system, ActorRef ref){
+        return ref.path().toStringWithAddress(((ExtendedActorSystem) system).provider().getDefaultAddress());
+    }
+
+    /**
+     * count messages that the overflow policy of outbound queue applied to
+     * @param policy: the policy name
+     * @param messages: number of messages
+     */
+    static public void overflow(String policy, long messages){
+        overflows.computeIfAbsent(policy, p -> new LongAdder()).add(messages);
+    }
+
+    /**
+     * @return policy name -> messages
+     */
+    static public Map<String, Long> overflows(){
+        return sums(overflows);
+    }
+
+    /**
+     * count messages that group sent again to member that missed them
+     * @param result: complete if all the missed messages are sent, incomplete if some are not kept anymore
+     * @param messages: number of messages sent again
+     */
+    static public void catchUp(String result, long messages){
+        catchUps.computeIfAbsent(result, r -> new LongAdder()).add(messages);
+    }
+
+    /**
+     * @return catch-up result -> messages
+     */
+    static public Map<String, Long> catchUps(){
+        return sums(catchUps);
+    }
+
+    static private Map<String, Long> sums(ConcurrentHashMap<String, LongAdder> counters){
+        Map<String, Long> res = new TreeMap<>();
+        for(Map.Entry<String, LongAdder> e : counters.entrySet())
+            res.put(e.getKey(), e.getValue().sum());
+        return res;
+    }
+
+    static public List<Actor> actors(){
+        return new ArrayList<>(actors.values());
+    }
+
+    static public List<MessageType> messageTypes(){
+        List<MessageType> res = new ArrayList<>();
+        for(ConcurrentHashMap<Class<?>, MessageType> t : byActorClass.values())
+            res.addAll(t.values());
+        res.sort(Comparator.comparing((MessageType t) -> t.actorType).thenComparing(t -> t.message));
+        return res;
+    }
+
+    /**
+     * the n actors with the most busy time since the last call, with their message rate and busy percent
+     * @param n: max actors
+     * @param elapsedNanos: time since the last call
+     */
+    static synchronized public List<String> top(int n, long elapsedNanos){
+        List<long[]> deltas = new ArrayList<>(); //{busy delta, messages delta, index}
+        List<Actor> all = actors();
+        for(int i = 0; i < all.size(); i++) {
+            Actor a = all.get(i);
+            long busy = a.busyNanos();
+            long msgs = a.messages();
+            deltas.add(new long[]{busy - a.lastBusyNanos, msgs - a.lastMessages, i});
+            a.lastBusyNanos = busy;
+            a.lastMessages = msgs;
+        }
+        deltas.sort((x, y) -> Long.compare(y[0], x[0]));
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        List<String> lines = new ArrayList<>();
+        for(long[] d : deltas.subList(0, Math.min(n, deltas.size()))) {
+            Actor a = all.get((int) d[2]);
+            lines.add(String.format("%-60s %-18s %,10.0f msg/s %6.1f%% busy  mailbox %d%s",
+                    a.path, a.actorType(), d[1] / seconds, d[0] / 1e7 / seconds, a.mailboxDepth(),
+                    a.outboundDepth() < 0 ? "" : String.format("  outbound %d", a.outboundDepth())));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,75 @@
+package com.akka.server.metrics;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.typesafe.config.Config;
+import scala.Option;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * unbounded mailbox (like the default one) that count its messages, so the mailbox depth is O(1)
+ * and can be read by the metrics report while the actor run.
+ * used with Props.withMailbox(ActorMetrics.MAILBOX).
+ */
+public class MeteredMailbox implements MailboxType, ProducesMessageQueue<MeteredMailbox.MeteredQueue> {
+    static public class MeteredQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+        private final ConcurrentLinkedQueue<Envelope> queue;
+        private final AtomicInteger depth;
+        private final ActorSystem system;
+
+        public MeteredQueue(ActorSystem system){
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.depth = new AtomicInteger();
+            this.system = system;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            depth.incrementAndGet();
+            queue.offer(handle);
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope e = queue.poll();
+            if(e != null)
+                depth.decrementAndGet();
+            return e;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return depth.get();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            if(system != null)
+                ActorMetrics.mailboxCleaned(system, owner);
+            for(Envelope e = dequeue(); e != null; e = dequeue())
+                deadLetters.enqueue(owner, e);
+        }
+    }
+
+    public MeteredMailbox(ActorSystem.Settings settings, Config config) {
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        MeteredQueue q = new MeteredQueue(system.isDefined() ? system.get() : null);
+        if(owner.isDefined() && system.isDefined() && system.get().settings().config().getBoolean("whatsapp.metrics.enabled"))
+            ActorMetrics.mailboxCreated(system.get(), owner.get(), q);
+        return q;
+    }
+}
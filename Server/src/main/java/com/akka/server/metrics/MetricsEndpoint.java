@@ -0,0 +1,176 @@
+package com.akka.server.metrics;
+
+import akka.actor.ActorSystem;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.Config;
+import org.HdrHistogram.Histogram;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import javax.management.ObjectName;
+
+/**
+ * local endpoint of the ActorMetrics, one for the JVM (all the nodes of LocalCluster share it):
+ *  - http://<whatsapp.metrics.http-hostname>:<whatsapp.metrics.http-port>/metrics in prometheus text format
+ *  - http://.../top?n=20 the busiest actors since the last top and the message types processing times
+ *  - JMX MBean com.akka.server:type=ActorMetrics with the same reports
+ * the processing time quantiles of /metrics and JMX report are since the start, the ones of the top since the last top.
+ * the endpoint is stopped when all the node systems that started it are terminated.
+ */
+public class MetricsEndpoint implements MetricsEndpointMBean {
+    static private final String OBJECT_NAME = "com.akka.server:type=ActorMetrics";
+    static private MetricsEndpoint endpoint;
+    static private int nodes; //running nodes that use the endpoint
+
+    private final HttpServer http;
+    private final boolean jmx;
+    private long lastTop;
+
+    private MetricsEndpoint(HttpServer http, boolean jmx){
+        this.http = http;
+        this.jmx = jmx;
+        this.lastTop = System.nanoTime();
+    }
+
+    /**
+     * start the endpoint if it is not running, called by Server.startNode
+     * @param system: the node ActorSystem
+     */
+    static synchronized public void start(ActorSystem system){
+        Config conf = system.settings().config().getConfig("whatsapp.metrics");
+        if(!conf.getBoolean("enabled"))
+            return;
+        if(endpoint == null) {
+            endpoint = new MetricsEndpoint(startHttp(conf), conf.getBoolean("jmx"));
+            if(endpoint.jmx)
+                endpoint.registerMBean();
+        }
+        nodes++;
+        system.registerOnTermination(MetricsEndpoint::nodeTerminated);
+    }
+
+    static synchronized private void nodeTerminated(){
+        if(--nodes > 0 || endpoint == null)
+            return;
+        if(endpoint.http != null)
+            endpoint.http.stop(0);
+        if(endpoint.jmx)
+            endpoint.unregisterMBean();
+        endpoint = null;
+    }
+
+    static private HttpServer startHttp(Config conf){
+        int port = conf.getInt("http-port");
+        if(port == 0)
+            return null;
+        try {
+            HttpServer http = HttpServer.create(new InetSocketAddress(conf.getString("http-hostname"), port), 0);
+            http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            http.createContext("/metrics", ex -> respond(ex, endpoint.getReport()));
+            http.createContext("/top", ex -> respond(ex, endpoint.top(topParam(ex))));
+            http.start();
+            System.out.println(String.format("metrics endpoint: http://%s:%d/metrics", conf.getString("http-hostname"), port));
+            return http;
+        } catch (IOException e) {
+            System.out.println(String.format("metrics endpoint failed to start on port %d: %s", port, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void registerMBean(){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            System.out.println("metrics MBean registration failed: " + e.getMessage());
+        }
+    }
+
+    private void unregisterMBean(){
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {}
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# TYPE whatsapp_actor_messages_total counter\n");
+        sb.append("# TYPE whatsapp_actor_busy_seconds_total counter\n");
+        sb.append("# TYPE whatsapp_actor_mailbox_depth gauge\n");
+        sb.append("# TYPE whatsapp_actor_outbound_depth gauge\n");
+        for(ActorMetrics.Actor a : ActorMetrics.actors()) {
+            String labels = String.format("{actor=\"%s\",type=\"%s\"}", a.path, a.actorType());
+            sb.append("whatsapp_actor_messages_total").append(labels).append(' ').append(a.messages()).append('\n');
+            sb.append("whatsapp_actor_busy_seconds_total").append(labels).append(' ').append(a.busyNanos() / 1e9).append('\n');
+            int depth = a.mailboxDepth();
+            if(depth >= 0)
+                sb.append("whatsapp_actor_mailbox_depth").append(labels).append(' ').append(depth).append('\n');
+            int outbound = a.outboundDepth();
+            if(outbound >= 0)
+                sb.append("whatsapp_actor_outbound_depth").append(labels).append(' ').append(outbound).append('\n');
+        }
+        sb.append("# TYPE whatsapp_outbound_overflow_total counter\n");
+        for(Map.Entry<String, Long> e : ActorMetrics.overflows().entrySet())
+            sb.append(String.format("whatsapp_outbound_overflow_total{policy=\"%s\"} %d\n", e.getKey(), e.getValue()));
+        sb.append("# TYPE whatsapp_group_catchup_messages_total counter\n");
+        for(Map.Entry<String, Long> e : ActorMetrics.catchUps().entrySet())
+            sb.append(String.format("whatsapp_group_catchup_messages_total{result=\"%s\"} %d\n", e.getKey(), e.getValue()));
+        sb.append("# TYPE whatsapp_message_processing_seconds summary\n");
+        for(ActorMetrics.MessageType t : ActorMetrics.messageTypes()) {
+            String labels = String.format("type=\"%s\",message=\"%s\"", t.actorType, t.message);
+            Histogram h = t.cumulative();
+            for(double q : new double[]{0.5, 0.9, 0.99, 0.999})
+                sb.append(String.format("whatsapp_message_processing_seconds{%s,quantile=\"%s\"} %s\n", labels, q,
+                        h.getTotalCount() == 0 ? "NaN" : Double.toString(h.getValueAtPercentile(q * 100) / 1e9)));
+            sb.append(String.format("whatsapp_message_processing_seconds_sum{%s} %s\n", labels, t.sumNanos() / 1e9));
+            sb.append(String.format("whatsapp_message_processing_seconds_count{%s} %d\n", labels, t.count()));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    synchronized public String top(int n) {
+        long now = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("busiest actors in the last %.1f s:%n", (now - lastTop) / 1e9));
+        for(String line : ActorMetrics.top(n, now - lastTop))
+            sb.append(line).append('\n');
+        lastTop = now;
+        sb.append("\nprocessing time (ms):\n");
+        for(ActorMetrics.MessageType t : ActorMetrics.messageTypes()) {
+            Histogram h = t.sinceTop();
+            if(h.getTotalCount() == 0)
+                continue;
+            sb.append(String.format("%-18s %-32s %,10d  p50 %8.3f  p99 %8.3f  max %8.3f%n", t.actorType, t.message,
+                    h.getTotalCount(), h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6, h.getMaxValue() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    static private int topParam(HttpExchange ex){
+        String query = ex.getRequestURI().getQuery();
+        if(query != null && query.startsWith("n="))
+            try {
+                return Integer.parseInt(query.substring(2));
+            } catch (NumberFormatException e) {}
+        return 20;
+    }
+
+    static private void respond(HttpExchange ex, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        ex.sendResponseHeaders(200, bytes.length);
+        try(OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
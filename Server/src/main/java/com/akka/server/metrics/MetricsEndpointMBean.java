@@ -0,0 +1,17 @@
+package com.akka.server.metrics;
+
+/**
+ * the JMX interface of MetricsEndpoint (com.akka.server:type=ActorMetrics)
+ */
+public interface MetricsEndpointMBean {
+    /**
+     * @return the metrics of all the actors in prometheus text format
+     */
+    String getReport();
+
+    /**
+     * @param n: max actors
+     * @return the n busiest actors since the last top, and the processing times of the message types
+     */
+    String top(int n);
+}
@@ -1,4 +0,0 @@
-package com.akka.server.protocols.Abstracts;
-
-public interface RemoteMessageInterface {
-}
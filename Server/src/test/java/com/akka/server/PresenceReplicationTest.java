@@ -0,0 +1,153 @@
+package com.akka.server;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.SourceRef;
+import akka.stream.javadsl.Sink;
+import akka.testkit.javadsl.TestKit;
+import com.akka.protocols.ClientServerProtocol.AddUserMessage;
+import com.akka.protocols.ClientServerProtocol.ConnectedSuccessfullyMessage;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * presence replication between the publishers of several nodes (ActorSystems with there own port in this JVM)
+ */
+public class PresenceReplicationTest {
+    static private final int NODES = 2;
+    static private final int FIRST_PORT = 25551;
+    static private final Duration MAX = Duration.ofSeconds(15);
+
+    private final ActorSystem[] nodes = new ActorSystem[NODES];
+    private final ActorRef[] publishers = new ActorRef[NODES];
+    private int queries = 0;
+
+    @After
+    public void shutdown() {
+        for(ActorSystem node : nodes)
+            if(node != null)
+                TestKit.shutdownActorSystem(node);
+    }
+
+    /**
+     * the changes of node 0 are sent while node 1 is down and lost,
+     * node 1 get them in the full sync when it start
+     */
+    @Test
+    public void nodeThatStartAfterItsPeersGetTheirUsers() {
+        start(0);
+        join(0, "alice");
+        join(0, "bob");
+        start(1);
+        join(1, "carol");
+
+        awaitActive(1, "alice", "bob", "carol");
+        awaitActive(0, "alice", "bob", "carol");
+    }
+
+    @Test
+    public void changesAreReplicated() {
+        start(0);
+        start(1);
+        TestKit alice = join(0, "alice");
+        join(1, "carol");
+        awaitActive(1, "alice", "carol");
+
+        publishers[0].tell(new PresencePublisher.UserLeft("alice"), alice.getRef());
+        awaitActive(1, "carol");
+    }
+
+    /**
+     * node that restarted has new epoch, its peers replace the users of the previous run with the new ones
+     */
+    @Test
+    public void restartedNodeReplaceItsUsers() {
+        start(0);
+        start(1);
+        join(0, "alice");
+        join(1, "carol");
+        awaitActive(0, "alice", "carol");
+
+        TestKit.shutdownActorSystem(nodes[1]);
+        start(1);
+        join(1, "dave");
+
+        awaitActive(0, "alice", "dave");
+        awaitActive(1, "alice", "dave");
+    }
+
+    ///////////////////////////////HELPERS////////////////////////////////////
+    private void start(int i) {
+        Config conf = ConfigFactory.parseString(String.format(
+                "akka.remote.netty.tcp.port = %d%n" +
+                "akka.remote.retry-gate-closed-for = 200ms%n" +
+                "akka.loglevel = WARNING%n" +
+                "whatsapp.metrics.http-port = 0", FIRST_PORT + i))
+                .withFallback(ConfigFactory.load());
+        List<String> peers = new ArrayList<>();
+        for(int j = 0; j < NODES; j++)
+            if(j != i)
+                peers.add(String.format("akka.tcp://systemServer@127.0.0.1:%d/user/presence", FIRST_PORT + j));
+        nodes[i] = ActorSystem.create("systemServer", conf);
+        publishers[i] = nodes[i].actorOf(PresencePublisher.props(Duration.ofMillis(20), 1000, 1000,
+                Duration.ofMillis(200), peers), "presence");
+    }
+
+    /**
+     * connect user to node i like the Connector does, the probe is the user main and receive actorRef
+     */
+    private TestKit join(int i, String userName) {
+        TestKit user = new TestKit(nodes[i]);
+        publishers[i].tell(new PresencePublisher.UserJoined(userName, user.getRef(), user.getRef(), user.getRef(),
+                0, -1, null), user.getRef());
+        user.fishForMessage(MAX, "connected", m -> m instanceof ConnectedSuccessfullyMessage);
+        return user;
+    }
+
+    private void awaitActive(int i, String... userNames) {
+        Set<String> expected = new HashSet<>(Arrays.asList(userNames));
+        new TestKit(nodes[i]).awaitAssert(MAX, Duration.ofMillis(100), () -> {
+            assertEquals(expected, active(i));
+            return null;
+        });
+    }
+
+    /**
+     * @return the active users in the snapshot that new user of node i get, without the query users
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> active(int i) {
+        String query = "query-" + queries++;
+        TestKit user = new TestKit(nodes[i]);
+        publishers[i].tell(new PresencePublisher.UserJoined(query, user.getRef(), user.getRef(), user.getRef(),
+                0, -1, null), user.getRef());
+        ConnectedSuccessfullyMessage connected = (ConnectedSuccessfullyMessage)
+                user.fishForMessage(MAX, "connected", m -> m instanceof ConnectedSuccessfullyMessage);
+        publishers[i].tell(new PresencePublisher.UserLeft(query), user.getRef());
+        try {
+            List<AddUserMessage> users = ((SourceRef<AddUserMessage>) connected.sorceSupp).getSource()
+                    .runWith(Sink.seq(), ActorMaterializer.create(nodes[i]))
+                    .toCompletableFuture().get(MAX.getSeconds(), TimeUnit.SECONDS);
+            return users.stream()
+                    .map(u -> u.userName)
+                    .filter(name -> !name.startsWith("query-"))
+                    .collect(Collectors.toSet());
+        }catch (Exception e){
+            throw new AssertionError(e);
+        }
+    }
+}